@@ -30,12 +30,13 @@ from wlauto.common.resources import Executable
 from wlauto.core.resource import NO_ONE
 from wlauto.common.linux.device import BaseLinuxDevice, PsEntry
 from wlauto.exceptions import DeviceError, WorkerThreadError, TimeoutError, DeviceNotRespondingError
-from wlauto.utils.misc import convert_new_lines, ABI_MAP, commonprefix
+from wlauto.utils.misc import convert_new_lines, ABI_MAP, commonprefix, escape_single_quotes
 from wlauto.utils.types import boolean, regex
 from wlauto.utils.android import (adb_shell, adb_background_shell, adb_list_devices,
                                   adb_command, AndroidProperties, ANDROID_VERSION_MAP)
 
 
+MEDIA_SCAN_FILE_COMMAND = 'am broadcast -a android.intent.action.MEDIA_SCANNER_SCAN_FILE -d file://'
 SCREEN_STATE_REGEX = re.compile('(?:mPowerState|mScreenOn|Display Power: state)=([0-9]+|true|false|ON|OFF)', re.I)
 SCREEN_SIZE_REGEX = re.compile(r'mUnrestrictedScreen=\(\d+,\d+\)\s+(?P<width>\d+)x(?P<height>\d+)')
 
@@ -383,6 +384,44 @@ class AndroidDevice(BaseLinuxDevice):  # pylint: disable=W0223
                            timeout=self.default_timeout)
         return bool(int(output))
 
+    def get_file_hashes(self, directory, paths, as_root=False, timeout=default_timeout):
+        """
+        Returns a dict mapping the files on the device at ``paths``, or under them if
+        they are directories, to their SHA256 hashes. ``paths`` are relative to
+        ``directory``, as are the keys of the dict; paths that do not exist are
+        ignored. The hashes are computed with a single command.
+
+        """
+        # "." would hash everything under directory
+        paths = [p for p in paths if self.path.normpath(p) != '.']
+        if not paths:
+            return {}
+        quoted = ' '.join("'{}'".format(escape_single_quotes(p)) for p in paths)
+        command = "cd '{0}' && {1} find {2} -type f -exec {1} sha256sum {{}} \\; 2>/dev/null; true"
+        output = self.execute(command.format(escape_single_quotes(directory), self.busybox, quoted),
+                              as_root=as_root, timeout=timeout)
+        hashes = {}
+        for line in convert_new_lines(output).split('\n'):
+            parts = line.split(None, 1)
+            if len(parts) == 2 and len(parts[0]) == 64:
+                hashes[self.path.normpath(parts[1].strip())] = parts[0]
+        return hashes
+
+    def extract_archive(self, archive, directory, as_root=False, timeout=default_timeout):
+        """
+        Pushes the (uncompressed) tar ``archive`` on the host to the device and
+        extracts it into ``directory``, in a single transfer.
+
+        """
+        on_device_archive = self.path.join(self.working_directory, os.path.basename(archive))
+        self.push_file(archive, on_device_archive, timeout=timeout)
+        try:
+            self.execute("mkdir -p '{0}' && cd '{0}' && {1} tar -xmf '{2}'".format(directory, self.busybox,
+                                                                                   on_device_archive),
+                         as_root=as_root, timeout=timeout)
+        finally:
+            self.delete_file(on_device_archive)
+
     def install(self, filepath, timeout=default_timeout, with_name=None, replace=False):  # pylint: disable=W0221
         ext = os.path.splitext(filepath)[1].lower()
         if ext == '.apk':
@@ -592,6 +631,26 @@ class AndroidDevice(BaseLinuxDevice):  # pylint: disable=W0223
         """
         adb_command(self.adb_name, 'forward {} {}'.format(from_port, to_port), timeout=self.default_timeout)
 
+    def reverse_port(self, device_port, host_port):
+        """
+        Reverse a port on the device to a port on localhost, so that connections
+        made on the device reach a server running on the host.
+
+        :param device_port: Port on the device which to reverse.
+        :param host_port: Port on the localhost to which connections will be made.
+
+        Ports should be specified using adb spec. See the "adb reverse" section in
+        "adb help". This requires Android 5.0 (API 21) or later.
+
+        """
+        if self.get_sdk_version() < 21:
+            raise DeviceError('adb reverse requires Android 5.0 (API 21) or later.')
+        adb_command(self.adb_name, 'reverse {} {}'.format(device_port, host_port), timeout=self.default_timeout)
+
+    def remove_reverse_port(self, device_port):
+        """Remove a port reversal set up with ``reverse_port()``."""
+        adb_command(self.adb_name, 'reverse --remove {}'.format(device_port), timeout=self.default_timeout)
+
     def dump_logcat(self, outfile, filter_spec=None):
         """
         Dump the contents of logcat, for the specified filter spec to the
@@ -722,19 +781,20 @@ class AndroidDevice(BaseLinuxDevice):  # pylint: disable=W0223
         appropriate method of forcing a re-index of the mediaserver cache for a given
         list of files.
         """
-        if self.device.is_rooted or self.device.get_sdk_version() < 24:  # MM and below
-            common_path = commonprefix(file_list, sep=self.device.path.sep)
-            self.broadcast_media_mounted(common_path, self.device.is_rooted)
+        if self.is_rooted or self.get_sdk_version() < 24:  # MM and below
+            common_path = commonprefix(file_list, sep=self.path.sep)
+            self.broadcast_media_mounted(common_path, self.is_rooted)
         else:
-            for f in file_list:
-                self.broadcast_media_scan_file(f)
+            # Files are scanned in batches to avoid a round trip over adb for
+            # each one, which dominates when refreshing large numbers of files
+            for i in xrange(0, len(file_list), 50):
+                self.execute('; '.join(MEDIA_SCAN_FILE_COMMAND + f for f in file_list[i:i + 50]))
 
     def broadcast_media_scan_file(self, filepath):
         """
         Force a re-index of the mediaserver cache for the specified file.
         """
-        command = 'am broadcast -a android.intent.action.MEDIA_SCANNER_SCAN_FILE -d file://'
-        self.execute(command + filepath)
+        self.execute(MEDIA_SCAN_FILE_COMMAND + filepath)
 
     def broadcast_media_mounted(self, dirpath, as_root=False):
         """
@@ -743,6 +803,32 @@ class AndroidDevice(BaseLinuxDevice):  # pylint: disable=W0223
         command = 'am broadcast -a  android.intent.action.MEDIA_MOUNTED -d file://'
         self.execute(command + dirpath, as_root=as_root)
 
+    def get_media_image_count(self, folder):
+        """
+        Return the number of images in folders named ``folder`` that have been
+        indexed by the media provider.
+
+        """
+        output = self.execute('content query --uri content://media/external/images/media '
+                              '--projection _id --where "bucket_display_name=\'{}\'"'.format(folder))
+        return output.count('Row:')
+
+    def wait_for_media_scan(self, folder, count, timeout=600, poll_period=5):
+        """
+        Wait until at least ``count`` images in folders named ``folder`` have
+        been indexed by the media provider, so that they are all visible to
+        applications once this returns.
+
+        """
+        start = time.time()
+        indexed = self.get_media_image_count(folder)
+        while indexed < count:
+            if time.time() - start > timeout:
+                raise DeviceError('Only {} of {} images in {} were indexed after {} seconds'.format(
+                    indexed, count, folder, timeout))
+            time.sleep(poll_period)
+            indexed = self.get_media_image_count(folder)
+
     # Internal methods: do not use outside of the class.
     def _update_build_properties(self, props):
         try:
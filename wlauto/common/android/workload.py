@@ -15,7 +15,12 @@
 
 import os
 import sys
+import copy
 import time
+import hashlib
+import tarfile
+import tempfile
+import posixpath
 
 from distutils.version import LooseVersion
 
@@ -24,15 +29,20 @@ from wlauto.core.workload import Workload
 from wlauto.common.android.resources import ApkFile
 from wlauto.common.resources import ExtensionAsset, File
 from wlauto.exceptions import WorkloadError, ResourceError, DeviceError
-from wlauto.utils.android import (ApkInfo, ANDROID_NORMAL_PERMISSIONS,
-                                  ANDROID_UNCHANGEABLE_PERMISSIONS, UNSUPPORTED_PACKAGES)
-from wlauto.utils.types import boolean, ParameterDict
+from wlauto.utils.android import (ApkInfo, ApkInstallLedger, ANDROID_NORMAL_PERMISSIONS,
+                                  ANDROID_UNCHANGEABLE_PERMISSIONS, UNSUPPORTED_PACKAGES,
+                                  parse_instrumentation_status)
+from wlauto.utils.misc import sha256
+from wlauto.utils.types import boolean, numeric, ParameterDict
 import wlauto.utils.statedetect as state_detector
 from wlauto.common.linux.workload import ReventWorkload
 
 
 DELAY = 5
 
+# Must match BaseUiAutomation.RESULT_STATUS_CODE in the uiauto library.
+UIAUTO_RESULT_STATUS_CODE = 100
+
 
 # Due to the way `super` works you have to call it at every level but WA executes some
 # methods conditionally and so has to call them directly via the class, this breaks super
@@ -40,6 +50,94 @@ DELAY = 5
 # are reworked everything that subclasses workload calls parent methods explicitly
 
 
+def _is_last_iteration(context):
+    spec = context.spec
+    if spec is None or not spec.number_of_iterations:
+        return True
+    return context.current_iteration >= spec.number_of_iterations
+
+
+# Hashes of host files, and of the files in host tarballs, keyed on the
+# file's path, size and modification time so that each is only hashed once
+# per run.
+_host_hashes = {}
+
+
+def _get_member_name(name):
+    """
+    Returns the name of a tarball member relative to the directory it is extracted
+    into, without any leading ``./`` or ``/``, e.g. ``com.example/obb/main.obb``
+    for ``./com.example/obb/main.obb``.
+
+    """
+    return posixpath.normpath('/' + name).lstrip('/')
+
+
+def _get_host_hashes(path, tarball=False):
+    """
+    Returns the SHA256 of the file at ``path``, or, if ``tarball`` is ``True``, a
+    dict mapping the names (see ``_get_member_name()``) of the files in the tarball
+    at ``path`` to their SHA256 hashes. Hard links are hashed as the file they
+    link to, as that is what they are on the device.
+
+    """
+    stat = os.stat(path)
+    key = (os.path.abspath(path), stat.st_size, stat.st_mtime, tarball)
+    if key not in _host_hashes:
+        if tarball:
+            hashes = {}
+            with tarfile.open(path) as tar:
+                for member in tar:
+                    name = _get_member_name(member.name)
+                    if name and (member.isfile() or member.islnk()):
+                        data = tar.extractfile(member)
+                        digest = hashlib.sha256()
+                        chunk = data.read(1024 * 1024)
+                        while chunk:
+                            digest.update(chunk)
+                            chunk = data.read(1024 * 1024)
+                        hashes[name] = digest.hexdigest()
+            _host_hashes[key] = hashes
+        else:
+            _host_hashes[key] = sha256(path, chunk=1024 * 1024)
+    return _host_hashes[key]
+
+
+def _get_common_directory(paths):
+    """Returns the deepest directory on the device that holds all of ``paths``."""
+    return posixpath.dirname(posixpath.commonprefix([posixpath.dirname(p) + '/' for p in paths]))
+
+
+def _write_tarball_delta(path, delta, changed):
+    """
+    Writes the files of the tarball at ``path`` whose names are in ``changed`` to the
+    tarball ``delta``, along with all of its directories and symbolic links, as they
+    cost nothing. A hard link whose target is not also written is written as a copy
+    of it, as the link could not be extracted otherwise.
+
+    """
+    with tarfile.open(path) as source:
+        with tarfile.open(delta, 'w') as tar:
+            sizes = {}
+            for member in source:
+                if member.isfile():
+                    sizes[_get_member_name(member.name)] = member.size
+                if not (member.isfile() or member.islnk()):
+                    tar.addfile(member)
+                elif _get_member_name(member.name) not in changed:
+                    continue
+                elif member.islnk() and _get_member_name(member.linkname) in changed:
+                    tar.addfile(member)
+                elif member.islnk():
+                    copied = copy.copy(member)
+                    copied.type = tarfile.REGTYPE
+                    copied.linkname = ''
+                    copied.size = sizes[_get_member_name(member.linkname)]
+                    tar.addfile(copied, source.extractfile(member))
+                else:
+                    tar.addfile(member, source.extractfile(member))
+
+
 class UiAutomatorWorkload(Workload):
     """
     Base class for all workloads that rely on a UI Automator APK file.
@@ -62,6 +160,20 @@ class UiAutomatorWorkload(Workload):
     You can also pass parameters to the APK file. To do this add the parameters to
     ``self.uiauto_params`` dict inside your class's ``__init__`` or ``setup`` methods.
 
+    Results reported by the UI automation via ``BaseUiAutomation.reportResult()``
+    are streamed back as instrumentation status bundles and are added to the
+    iteration's metrics automatically, so there is no need to parse them from logcat.
+    The names of the metrics added this way are kept in ``uiauto_results``. UI Automator
+    APKs built before ``reportResult()`` was introduced only log their results, so
+    workloads that used to parse them from logcat should still do so when
+    ``uiauto_results`` is empty.
+
+    The UI Automator APK is only installed if the same APK is not already installed
+    on the device (see ``ApkInstallLedger``), and, if ``uninstall_uiauto_apk`` is set,
+    is uninstalled after the last iteration of the workload spec, so that it is
+    normally installed once per spec. The installation time that is saved is reported
+    as the ``uiauto_install_time_saved`` metric.
+
     """
 
     supported_platforms = ['android']
@@ -79,7 +191,10 @@ class UiAutomatorWorkload(Workload):
             Workload.__init__(self, device, **kwargs)
         self.uiauto_file = None
         self.command = None
+        self.run_output = None
+        self.uiauto_results = []
         self.uiauto_params = ParameterDict()
+        self.uiauto_install_time_saved = 0
 
     def init_resources(self, context):
         self.uiauto_file = context.resolver.get(ApkFile(self, uiauto=True))
@@ -91,15 +206,15 @@ class UiAutomatorWorkload(Workload):
 
     def setup(self, context):
         Workload.setup(self, context)
+        self.run_output = None
+        self.uiauto_results = []
         params_dict = self.uiauto_params
         params_dict['workdir'] = self.device.working_directory
         params = ''
         for k, v in self.uiauto_params.iter_encoded_items():
             params += ' -e {} "{}"'.format(k, v)
 
-        if self.device.package_is_installed(self.uiauto_package):
-            self.device.uninstall(self.uiauto_package)
-        self.device.install_apk(self.uiauto_file)
+        self.install_uiauto_apk()
 
         instrumention_string = 'am instrument -w -r {}  -e class {}.{} {}/{}'
         self.command = instrumention_string.format(params, self.uiauto_package,
@@ -107,19 +222,44 @@ class UiAutomatorWorkload(Workload):
                                                    self.uiauto_method)
         self.device.killall('uiautomator')
 
+    def install_uiauto_apk(self):
+        self.uiauto_install_time_saved = 0
+        ledger = ApkInstallLedger(self.device)
+        entry = ledger.lookup(self.uiauto_package, self.uiauto_file)
+        if entry:
+            self.logger.debug('UI automation APK {} is already installed.'.format(self.uiauto_package))
+            self.uiauto_install_time_saved = entry['install_time']
+            return
+        start = time.time()
+        if ledger.is_installed(self.uiauto_package):
+            self.device.uninstall(self.uiauto_package)
+        self.device.install_apk(self.uiauto_file)
+        ledger.record(self.uiauto_package, self.uiauto_file, time.time() - start)
+
     def run(self, context):
         result = self.device.execute(self.command, self.run_timeout)
         if 'FAILURE' in result:
             raise WorkloadError(result)
         else:
             self.logger.debug(result)
+        self.run_output = result
         time.sleep(DELAY)
 
     def update_result(self, context):
-        pass
+        if not self.run_output:
+            return
+        for status_code, values in parse_instrumentation_status(self.run_output):
+            if status_code != UIAUTO_RESULT_STATUS_CODE:
+                continue
+            context.result.add_metric(values['metric'], numeric(values['value']),
+                                      values.get('units'),
+                                      lower_is_better=boolean(values.get('lower_is_better', False)))
+            self.uiauto_results.append(values['metric'])
+        if self.uiauto_install_time_saved:
+            context.result.add_metric('uiauto_install_time_saved', self.uiauto_install_time_saved, 'seconds')
 
     def teardown(self, context):
-        if self.uninstall_uiauto_apk:
+        if self.uninstall_uiauto_apk and _is_last_iteration(context):
             self.device.uninstall(self.uiauto_package)
 
     def validate(self):
@@ -186,7 +326,9 @@ class ApkWorkload(Workload):
                   description='''
                   Always re-install the APK, even if matching version is found already installed
                   on the device. Runs ``adb install -r`` to ensure existing APK is replaced. When
-                  this is set, check_apk is ignored.
+                  this is set, check_apk is ignored, and the APK is re-installed even if WA's
+                  install ledger shows that the same APK file is still installed (see
+                  ``ApkInstallLedger``).
                   '''),
         Parameter('uninstall_apk', kind=boolean, default=False,
                   description='If ``True``, will uninstall workload\'s APK as part of teardown.'),
@@ -209,6 +351,8 @@ class ApkWorkload(Workload):
         self.apk_version = None
         self.logcat_log = None
         self.exact_apk_version = None
+        self.install_ledger = None
+        self.apk_install_time_saved = 0
 
     def setup(self, context):  # pylint: disable=too-many-branches
         Workload.setup(self, context)
@@ -218,6 +362,9 @@ class ApkWorkload(Workload):
         self.device.clear_logcat()
 
     def setup_workload_apk(self, context):
+        self.install_ledger = ApkInstallLedger(self.device)
+        self.apk_install_time_saved = 0
+
         # Get target version
         target_version = self.device.get_installed_package_version(self.package)
         if target_version:
@@ -303,7 +450,7 @@ class ApkWorkload(Workload):
         except ResourceError as e:
             msg = "force_install is 'True' but the host version is invalid:\n\t{}"
             raise ResourceError(msg.format(str(e)))
-        self.install_apk(context, replace=True)
+        self.install_apk(context, replace=True, force=True)
 
     def prefer_host_apk(self, context, host_version, target_version):
         msg = "check_apk is 'True' "
@@ -334,8 +481,16 @@ class ApkWorkload(Workload):
                 self.logger.debug(msg.format(str(e1)))
         else:  # Host version is valid
             if target_version is not None and target_version == host_version:
-                msg += " and a matching version is alread on the device, doing nothing"
+                # Unless WA knows that a different build of the same version was
+                # installed
+                if self.install_ledger.get_entry(self.package) is None or \
+                        self.install_ledger.lookup(self.package, self.apk_file):
+                    msg += " and a matching version is alread on the device, doing nothing"
+                    self.logger.debug(msg)
+                    return
+                msg += " and a different APK of the same version is on the target, installing APK"
                 self.logger.debug(msg)
+                self.install_apk(context, replace=True)
                 return
             msg += " and the host version is not on the target, installing APK"
             self.logger.debug(msg)
@@ -418,9 +573,18 @@ class ApkWorkload(Workload):
         if self.device.get_sdk_version() >= 23:
             self._grant_requested_permissions()
 
-    def install_apk(self, context, replace=False):
+    def install_apk(self, context, replace=False, force=False):
         success = False
-        if replace and self.device.package_is_installed(self.package):
+        ledger = self.install_ledger or ApkInstallLedger(self.device)
+        # Unless forced, skip installing an APK the ledger shows is still installed
+        entry = None if force else ledger.lookup(self.package, self.apk_file)
+        if entry:
+            self.logger.debug('{} is already installed from {}'.format(self.package, self.apk_file))
+            self.apk_install_time_saved = entry['install_time']
+            self.do_post_install(context)
+            return True
+        start = time.time()
+        if replace and ledger.is_installed(self.package):
             self.device.uninstall(self.package)
         output = self.device.install_apk(self.apk_file, timeout=self.install_timeout,
                                          replace=replace, allow_downgrade=True)
@@ -433,6 +597,7 @@ class ApkWorkload(Workload):
         else:
             self.logger.debug(output)
             success = True
+            ledger.record(self.package, self.apk_file, time.time() - start)
         self.do_post_install(context)
         return success
 
@@ -482,6 +647,8 @@ class ApkWorkload(Workload):
                                        path='logcat.log',
                                        kind='log',
                                        description='Logact dump for the run.')
+        if self.apk_install_time_saved:
+            context.result.add_metric('apk_install_time_saved', self.apk_install_time_saved, 'seconds')
 
     def teardown(self, context):
         self.device.execute('am force-stop {}'.format(self.package))
@@ -552,14 +719,39 @@ class AndroidUxPerfWorkload(AndroidUiAutoBenchmark):
                   If ``True``, UX_PERF action markers will be emitted to logcat during
                   the test run.
                   """),
+        Parameter('sampler_period', kind=int, default=0,
+                  constraint=lambda x: 0 <= x <= 10,
+                  description="""
+                  If set to a value between 1 and 10, CPU frequency, CPU utilisation and
+                  thermal zones are sampled on the device, from within the workload's uiauto
+                  process, with this period in milliseconds. For each action, the mean
+                  frequency and busy percentage of each frequency domain, the overall CPU
+                  busy percentage and the peak temperature are then reported as
+                  ``<action>_cpu<N>_frequency``, ``<action>_cpu<N>_busy``,
+                  ``<action>_cpu_busy`` and ``<action>_peak_temperature`` metrics. This
+                  resolves short actions that host-side pollers cannot. ``0`` disables sampling.
+                  """),
+        Parameter('memory_metrics', kind=bool, default=False,
+                  description="""
+                  If ``True``, the PSS and RSS of the application under test are measured
+                  around each action, along with the number, total pause time and total
+                  duration of the garbage collections ART logs for it during the action.
+                  These are reported as ``<action>_pss``, ``<action>_pss_delta``,
+                  ``<action>_rss``, ``<action>_gc_count``, ``<action>_gc_pause`` and
+                  ``<action>_gc_duration`` metrics. Measuring the footprint takes a few
+                  hundred milliseconds per action, which is not included in the action's
+                  duration but does lengthen the run. So that it is not included in the
+                  duration of an enclosing action either, actions nested inside another
+                  one (e.g. each slide or page of a longer action) are not measured.
+                  """),
         Parameter('clean_assets', kind=bool, default=False,
                   description="""
                   If ``True`` pushed assets will be deleted at the end of each iteration
                   """),
         Parameter('force_push_assets', kind=bool, default=False,
                   description="""
-                  If ``True`` always push assets on each iteration, even if the
-                  assets already exists in the device path
+                  If ``True`` always push assets on each iteration, even if
+                  identical assets already exist in the device path
                   """),
     ]
 
@@ -569,27 +761,82 @@ class AndroidUxPerfWorkload(AndroidUiAutoBenchmark):
         fname = os.path.basename(fpath)
         return self.device.path.join(dirname, fname)
 
+    def get_asset_path(self, asset):
+        """
+        Returns the path on the device ``asset`` is pushed to. Assets are pushed to
+        the working directory unless this is overridden, e.g. to put them where the
+        application looks for them, as moving them there for each iteration would
+        defeat the check for assets that are already on the device.
+
+        """
+        return self._path_on_device(asset)
+
+    def get_changed_files(self, files, directory=None):
+        """
+        Returns the device paths in ``files``, a dict mapping device paths to host
+        paths, of the files that are missing from the device or differ from the host
+        file. The hashes of the device files are read with a single command; if
+        ``directory`` is specified, they are read for everything under it, rather than
+        for each file, which keeps the command short for large numbers of files.
+
+        """
+        paths = sorted(files)
+        if not paths:
+            return []
+        if directory:
+            base = posixpath.dirname(directory)
+            device_hashes = self.device.get_file_hashes(base, [posixpath.basename(directory)])
+        else:
+            base = _get_common_directory(paths)
+            device_hashes = self.device.get_file_hashes(base, [posixpath.relpath(p, base) for p in paths])
+        return [p for p in paths if device_hashes.get(posixpath.relpath(p, base)) != _get_host_hashes(files[p])]
+
+    def sync_files(self, files, force=False):
+        """
+        Pushes the host files in ``files``, a dict mapping device paths to host paths,
+        to the device, skipping those the device already holds with the same content
+        unless ``force`` is ``True``. Returns the device paths that were pushed, which
+        have been re-indexed by the media server.
+
+        """
+        changed = sorted(files) if force else self.get_changed_files(files)
+        if not changed:
+            return []
+
+        timeout = 300 * len(changed)
+        if len(changed) == 1:
+            self.device.execute('mkdir -p {}'.format(posixpath.dirname(changed[0])))
+            self.device.push_file(files[changed[0]], changed[0], timeout=timeout)
+        else:
+            # Several files are sent as a single archive, relative to the deepest
+            # directory holding all of them, to save a round trip each
+            base = _get_common_directory(changed)
+            fd, archive = tempfile.mkstemp(suffix='.tar')
+            os.close(fd)
+            try:
+                with tarfile.open(archive, 'w') as tar:
+                    for path in changed:
+                        tar.add(files[path], arcname=posixpath.relpath(path, base))
+                self.device.extract_archive(archive, base, timeout=timeout)
+            finally:
+                os.remove(archive)
+        self.device.refresh_device_files(changed)
+        return changed
+
     def push_assets(self, context):
-        pushed = False
-        file_list = []
+        files = {}
         for f in self.deployable_assets:
-            fpath = context.resolver.get(File(self, f))
-            device_path = self._path_on_device(fpath)
-            if self.force_push_assets or not self.device.file_exists(device_path):
-                self.device.push_file(fpath, device_path, timeout=300)
-                file_list.append(device_path)
-                pushed = True
-        if pushed:
-            self.device.refresh_device_files(file_list)
+            files[self.get_asset_path(f)] = context.resolver.get(File(self, f))
+        if not self.sync_files(files, force=self.force_push_assets):
+            self.logger.debug('Assets are already on the device.')
 
     def delete_assets(self):
         if self.deployable_assets:
             file_list = []
             for f in self.deployable_assets:
-                f = self._path_on_device(f)
+                f = self.get_asset_path(f)
                 self.device.delete_file(f)
                 file_list.append(f)
-                self.device.delete_file(f)
             self.device.refresh_device_files(file_list)
 
     def __init__(self, device, **kwargs):
@@ -601,6 +848,8 @@ class AndroidUxPerfWorkload(AndroidUiAutoBenchmark):
         super(AndroidUxPerfWorkload, self).validate()
         self.uiauto_params['package_name'] = self.package
         self.uiauto_params['markers_enabled'] = self.markers_enabled
+        self.uiauto_params['sampler_period'] = self.sampler_period
+        self.uiauto_params['memory_metrics'] = self.memory_metrics
 
     def setup(self, context):
         super(AndroidUxPerfWorkload, self).setup(context)
@@ -719,21 +968,32 @@ class GameWorkload(ApkWorkload, ReventWorkload):
         kind = 'data'
         if ':' in resource_file:
             kind, resource_file = resource_file.split(':', 1)
-        ondevice_cache = self.device.path.join(self.device.resource_cache, self.name, resource_file)
-        if not self.device.file_exists(ondevice_cache):
-            asset_tarball = context.resolver.get(ExtensionAsset(self, resource_file))
-            if not asset_tarball:
-                message = 'Could not find resource {} for workload {}.'
-                raise WorkloadError(message.format(resource_file, self.name))
-            # adb push will create intermediate directories if they don't
-            # exist.
-            self.device.push_file(asset_tarball, ondevice_cache, timeout=timeout)
-
+        asset_tarball = context.resolver.get(ExtensionAsset(self, resource_file))
+        if not asset_tarball:
+            message = 'Could not find resource {} for workload {}.'
+            raise WorkloadError(message.format(resource_file, self.name))
         device_asset_directory = self.device.path.join(self.device.external_storage_directory, 'Android', kind)
-        deploy_command = 'cd {} && {} tar -xzf {}'.format(device_asset_directory,
-                                                          self.device.busybox,
-                                                          ondevice_cache)
-        self.device.execute(deploy_command, timeout=timeout, as_root=True)
+
+        # Only the files in the tarball that are missing from the device, or
+        # differ from it, are deployed, so that re-deploying a tarball after
+        # the previous iteration only restores the files the app has changed
+        host_hashes = _get_host_hashes(asset_tarball, tarball=True)
+        top_level = sorted(set(name.split('/')[0] for name in host_hashes))
+        device_hashes = self.device.get_file_hashes(device_asset_directory, top_level,
+                                                    as_root=True, timeout=timeout)
+        changed = set(name for name, digest in host_hashes.iteritems() if device_hashes.get(name) != digest)
+        if not changed:
+            self.logger.debug('{} is already deployed.'.format(resource_file))
+            return
+        self.logger.debug('Deploying {} of {} files from {}'.format(len(changed), len(host_hashes), resource_file))
+
+        fd, delta = tempfile.mkstemp(suffix='.tar')
+        os.close(fd)
+        try:
+            _write_tarball_delta(asset_tarball, delta, changed)
+            self.device.extract_archive(delta, device_asset_directory, as_root=True, timeout=timeout)
+        finally:
+            os.remove(delta)
 
     def _check_statedetection_files(self, context):
         try:
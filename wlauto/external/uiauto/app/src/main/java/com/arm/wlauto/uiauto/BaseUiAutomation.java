@@ -16,6 +16,7 @@
 package com.arm.wlauto.uiauto;
 
 import android.app.Instrumentation;
+import android.app.UiAutomation;
 import android.content.Context;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.uiautomator.UiDevice;
@@ -30,6 +31,8 @@ import android.support.test.uiautomator.UiObjectNotFoundException;
 import android.support.test.uiautomator.UiScrollable;
 import android.support.test.uiautomator.UiWatcher;
 import android.util.Log;
+import android.view.InputDevice;
+import android.view.MotionEvent;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -38,6 +41,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,6 +58,7 @@ public class BaseUiAutomation {
 
     public static final int CLICK_REPEAT_INTERVAL_MINIMUM = 5;
     public static final int CLICK_REPEAT_INTERVAL_DEFAULT = 50;
+    public static final int TAP_PRESS_DURATION_MAXIMUM = 50;
 
     public Bundle parameters;
 
@@ -65,6 +70,12 @@ public class BaseUiAutomation {
         mInstrumentation = InstrumentationRegistry.getInstrumentation();
         mDevice = UiDevice.getInstance(mInstrumentation);
         mContext = mInstrumentation.getTargetContext();
+
+        // Start sampling before the first action so that it is fully covered
+        int samplerPeriod = getParams().getInt("sampler_period", 0);
+        if (samplerPeriod > 0) {
+            SystemSampler.start(samplerPeriod);
+        }
     }
 
     /*
@@ -72,6 +83,12 @@ public class BaseUiAutomation {
      */
     public enum FindByCriteria { BY_ID, BY_TEXT, BY_DESC; }
 
+    private static AtomicInteger nextCookie = new AtomicInteger();
+
+    private MemoryProbe memoryProbe;
+    // Number of ActionLoggers started and not yet stopped
+    private int openActionLoggers;
+
     /**
      * Basic marker API for workloads to generate start and end markers for
      * deliminating and timing actions. Markers are output to logcat with debug
@@ -84,6 +101,19 @@ public class BaseUiAutomation {
      * message consists of a name for the action and a timestamp. The timestamp
      * is separated by a single space from the name of the action.
      *
+     * The same actions are also written to the kernel trace buffer as atrace
+     * async sections (see TraceMarker) so that they can be lined up with
+     * trace-cmd and systrace captures.
+     *
+     * If the in-process SystemSampler is running (see the sampler_period
+     * workload parameter), a summary of CPU frequency, utilisation and
+     * temperature during the action is reported as metrics when it stops.
+     * Likewise, if memory_metrics is set, the memory footprint of the
+     * application under test and the garbage collections it performed during
+     * the action are reported (see MemoryProbe). The footprint is measured with
+     * shell commands, so it is not measured for actions started while another
+     * action is being logged, whose duration it would otherwise lengthen.
+     *
      * Typical usage:
      *
      * ActionLogger logger = ActionLogger("testTag", parameters);
@@ -95,23 +125,175 @@ public class BaseUiAutomation {
 
         private String testTag;
         private boolean enabled;
+        private int cookie;
+        private long startTime;
+        private long endTime;
+        private SystemSampler sampler;
+        private MemoryProbe memory;
+        private MemoryProbe.Footprint startFootprint;
+        private long startWallTime;
+        private boolean probing;
+        private boolean open;
 
         public ActionLogger(String testTag, Bundle parameters) {
             this.testTag = testTag;
             this.enabled = parameters.getBoolean("markers_enabled");
+            this.cookie = nextCookie.incrementAndGet();
+            this.sampler = SystemSampler.getInstance();
+            if (parameters.getBoolean("memory_metrics")) {
+                if (memoryProbe == null) {
+                    memoryProbe = new MemoryProbe(mInstrumentation,
+                                                  parameters.getString("package_name"));
+                }
+                this.memory = memoryProbe;
+            }
         }
 
         public void start() {
+            // Measured before the action starts so as not to add to its duration,
+            // and not at all inside another action
+            probing = memory != null && openActionLoggers == 0;
+            if (probing) {
+                startFootprint = memory.readFootprint();
+                startWallTime = System.currentTimeMillis();
+            }
+            if (!open) {
+                open = true;
+                openActionLoggers++;
+            }
+            startTime = System.nanoTime();
             if (enabled) {
-                Log.d("UX_PERF", testTag + "_start " + System.nanoTime());
+                TraceMarker.beginAsyncSection(testTag, cookie);
+                Log.d("UX_PERF", testTag + "_start " + startTime);
             }
         }
 
         public void stop() throws Exception {
+            endTime = System.nanoTime();
             if (enabled) {
-                Log.d("UX_PERF", testTag + "_end " + System.nanoTime());
+                TraceMarker.endAsyncSection(testTag, cookie);
+                Log.d("UX_PERF", testTag + "_end " + endTime);
+            }
+            if (open) {
+                open = false;
+                openActionLoggers--;
+            }
+            if (sampler != null) {
+                reportSamples(sampler.summarize(startTime, endTime));
+            }
+            if (probing) {
+                reportMemory(memory.readFootprint(),
+                             memory.readGcStats(startWallTime, System.currentTimeMillis()));
+            }
+        }
+
+        private void reportMemory(MemoryProbe.Footprint footprint, MemoryProbe.GcStats gc) {
+            if (footprint.pss >= 0) {
+                reportResult(testTag + "_pss", footprint.pss, "kB", true);
+                if (startFootprint.pss >= 0) {
+                    reportResult(testTag + "_pss_delta", footprint.pss - startFootprint.pss, "kB", true);
+                }
+            }
+            if (footprint.rss >= 0) {
+                reportResult(testTag + "_rss", footprint.rss, "kB", true);
+            }
+            reportResult(testTag + "_gc_count", gc.count, null, true);
+            reportResult(testTag + "_gc_pause", gc.pauseMillis, "ms", true);
+            reportResult(testTag + "_gc_duration", gc.durationMillis, "ms", true);
+        }
+
+        private void reportSamples(SystemSampler.Summary summary) {
+            if (summary.sampleCount == 0) {
+                return;
             }
+            for (int i = 0; i < summary.cpus.length; i++) {
+                reportResult(testTag + "_cpu" + summary.cpus[i] + "_frequency",
+                             summary.meanFrequencies[i] / 1000, "MHz");
+                if (!Double.isNaN(summary.busyPercents[i])) {
+                    reportResult(testTag + "_cpu" + summary.cpus[i] + "_busy", summary.busyPercents[i], "%");
+                }
+            }
+            if (!Double.isNaN(summary.busyPercent)) {
+                reportResult(testTag + "_cpu_busy", summary.busyPercent, "%");
+            }
+            if (!Double.isNaN(summary.peakTemperature)) {
+                reportResult(testTag + "_peak_temperature", summary.peakTemperature, "C", true);
+            }
+        }
+
+        // Duration of the action, available whether or not markers are enabled
+        public long getDurationMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(endTime - startTime);
+        }
+    }
+
+    // Must match UIAUTO_RESULT_STATUS_CODE in wlauto/common/android/workload.py
+    public static final int RESULT_STATUS_CODE = 100;
+
+    /**
+     * Typed results API for reporting benchmark scores to the host.
+     *
+     * Each result is sent immediately as an instrumentation status bundle with
+     * status code RESULT_STATUS_CODE. The host collects these from the raw
+     * output of 'am instrument -r' and adds them as metrics to the iteration's
+     * results, so workloads no longer need to log results to logcat for them
+     * to be parsed back out on the host.
+     *
+     * Typical usage:
+     *
+     * reportResult("Linpack ST", 123.4, "MFLOPS");
+     */
+    public void reportResult(String metric, double value, String units, boolean lowerIsBetter) {
+        Bundle result = new Bundle();
+        result.putString("metric", metric);
+        result.putDouble("value", value);
+        if (units != null) {
+            result.putString("units", units);
+        }
+        result.putBoolean("lower_is_better", lowerIsBetter);
+        mInstrumentation.sendStatus(RESULT_STATUS_CODE, result);
+    }
+
+    public void reportResult(String metric, double value, String units) {
+        reportResult(metric, value, units, false);
+    }
+
+    public void reportResult(String metric, double value) {
+        reportResult(metric, value, null, false);
+    }
+
+    /**
+     * Report the distribution of a series of lower-is-better measurements as
+     * <name>_50percentile, <name>_95percentile, <name>_99percentile and
+     * <name>_max metrics. Percentiles use the nearest-rank method, so every
+     * reported value is one that was actually measured.
+     */
+    public void reportDistribution(String name, double[] values, String units) {
+        if (values.length == 0) {
+            return;
         }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        reportResult(name + "_50percentile", percentile(sorted, 50), units, true);
+        reportResult(name + "_95percentile", percentile(sorted, 95), units, true);
+        reportResult(name + "_99percentile", percentile(sorted, 99), units, true);
+        reportResult(name + "_max", sorted[sorted.length - 1], units, true);
+    }
+
+    /**
+     * Report how long a benchmark ran for, up to the event that signalled its
+     * completion, as <name>_duration, and how long it took to detect that
+     * event, as <name>_detection_latency (see CompletionDetector).
+     */
+    public void reportCompletion(String name, CompletionDetector.Completion completion) {
+        reportResult(name + "_duration", completion.getDurationMillis() / 1000.0, "s", true);
+        reportResult(name + "_detection_latency", completion.getDetectionLatencyMillis(), "ms", true);
+    }
+
+    // Nearest-rank percentile of an already sorted, non-empty array
+    public static double percentile(double[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(rank, sorted.length) - 1)];
     }
 
     public void sleep(int second) {
@@ -473,16 +655,126 @@ public class BaseUiAutomation {
     }
 
     public void repeatClickUiObject(UiObject view, int repeatCount, int intervalInMillis) throws Exception {
-        int repeatInterval = intervalInMillis > CLICK_REPEAT_INTERVAL_MINIMUM
-                           ? intervalInMillis : CLICK_REPEAT_INTERVAL_DEFAULT;
+        repeatClickUiObject(view, repeatCount, intervalInMillis, null);
+    }
+
+    // As above, and if name is not null, report the requested and achieved
+    // tap rates as metrics (see reportTapBurst())
+    public void repeatClickUiObject(UiObject view, int repeatCount, int intervalInMillis,
+                                    String name) throws Exception {
         if (repeatCount < 1 || !view.isClickable()) {
             return;
         }
 
-        for (int i = 0; i < repeatCount; ++i) {
-            view.click();
-            SystemClock.sleep(repeatInterval); // in order to register as separate click
+        TapBurstResult result = tapBurst(view, repeatCount, intervalInMillis);
+        Log.d("TapBurst", String.format("Requested %.2f taps/s, achieved %.2f taps/s",
+                                        result.getRequestedRate(), result.getAchievedRate()));
+        if (name != null) {
+            reportTapBurst(name, result);
+        }
+    }
+
+    /**
+     * Timing information for a burst of taps produced by tapBurst().
+     */
+    public static class TapBurstResult {
+        private int requestedIntervalMillis;
+        private long[] tapTimesNanos;
+
+        public TapBurstResult(int requestedIntervalMillis, long[] tapTimesNanos) {
+            this.requestedIntervalMillis = requestedIntervalMillis;
+            this.tapTimesNanos = tapTimesNanos;
+        }
+
+        public int getTapCount() {
+            return tapTimesNanos.length;
+        }
+
+        // Taps per second
+        public double getRequestedRate() {
+            return 1000.0 / requestedIntervalMillis;
+        }
+
+        // Taps per second, measured from the first to the last tap
+        public double getAchievedRate() {
+            if (tapTimesNanos.length < 2) {
+                return 0;
+            }
+            long elapsed = tapTimesNanos[tapTimesNanos.length - 1] - tapTimesNanos[0];
+            return (tapTimesNanos.length - 1) * 1e9 / elapsed;
         }
+
+        public double getMaxIntervalMillis() {
+            long max = 0;
+            for (int i = 1; i < tapTimesNanos.length; i++) {
+                max = Math.max(max, tapTimesNanos[i] - tapTimesNanos[i - 1]);
+            }
+            return max / 1e6;
+        }
+    }
+
+    /**
+     * Tap the centre of view repeatCount times, intervalInMillis apart.
+     *
+     * Unlike calling UiObject.click() in a loop, the view's bounds are only
+     * resolved once and the down/up events are injected directly from a
+     * dedicated timing thread. Each tap is scheduled against an absolute
+     * deadline so that injection latency does not accumulate, making the tap
+     * rate reproducible across devices. The achieved timing is returned so
+     * that it can be compared against what was requested.
+     */
+    public TapBurstResult tapBurst(UiObject view, final int repeatCount,
+                                   int intervalInMillis) throws Exception {
+        final int repeatInterval = intervalInMillis > CLICK_REPEAT_INTERVAL_MINIMUM
+                                 ? intervalInMillis : CLICK_REPEAT_INTERVAL_DEFAULT;
+        // Release the touch half way through the interval so that each tap
+        // registers separately.
+        final int pressDuration = Math.min(repeatInterval / 2, TAP_PRESS_DURATION_MAXIMUM);
+        final long[] tapTimes = new long[repeatCount];
+
+        Rect bounds = view.getVisibleBounds();
+        final int x = bounds.centerX();
+        final int y = bounds.centerY();
+        final UiAutomation uiAutomation = mInstrumentation.getUiAutomation();
+
+        Thread timer = new Thread(new Runnable() {
+            public void run() {
+                long start = SystemClock.uptimeMillis();
+                for (int i = 0; i < repeatCount; i++) {
+                    long delay = start + (long) i * repeatInterval - SystemClock.uptimeMillis();
+                    if (delay > 0) {
+                        SystemClock.sleep(delay);
+                    }
+                    tapTimes[i] = System.nanoTime();
+                    long downTime = SystemClock.uptimeMillis();
+                    injectTouch(uiAutomation, MotionEvent.ACTION_DOWN, x, y, downTime, downTime);
+                    SystemClock.sleep(pressDuration);
+                    injectTouch(uiAutomation, MotionEvent.ACTION_UP, x, y, downTime,
+                                SystemClock.uptimeMillis());
+                }
+            }
+        }, "TapBurst");
+        timer.setPriority(Thread.MAX_PRIORITY);
+        timer.start();
+        timer.join();
+
+        return new TapBurstResult(repeatInterval, tapTimes);
+    }
+
+    // Report the timing of a tap burst to the host as <name>_requested_rate,
+    // <name>_achieved_rate and <name>_max_interval metrics.
+    public void reportTapBurst(String name, TapBurstResult result) {
+        reportResult(name + "_requested_rate", result.getRequestedRate(), "taps/s");
+        reportResult(name + "_achieved_rate", result.getAchievedRate(), "taps/s");
+        reportResult(name + "_max_interval", result.getMaxIntervalMillis(), "ms", true);
+    }
+
+    private static void injectTouch(UiAutomation uiAutomation, int action, int x, int y,
+                                    long downTime, long eventTime) {
+        MotionEvent event = MotionEvent.obtain(downTime, eventTime, action, x, y, 0);
+        event.setSource(InputDevice.SOURCE_TOUCHSCREEN);
+        uiAutomation.injectInputEvent(event, true);
+        event.recycle();
     }
 
     public UiObject clickUiObject(FindByCriteria criteria, String matching) throws Exception {
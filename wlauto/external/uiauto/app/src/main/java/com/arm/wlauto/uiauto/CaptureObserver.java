@@ -0,0 +1,132 @@
+/*    Copyright 2013-2016 ARM Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.arm.wlauto.uiauto;
+
+import android.os.Environment;
+import android.os.FileObserver;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the directory a camera application saves to, and records when
+ * each new capture has been completely written, so that the latency of a
+ * capture can be measured from the moment it was triggered.
+ *
+ * A capture is complete when a file with one of the given extensions is
+ * closed after writing, or is moved into the directory, as applications
+ * that write to a temporary file first rename it once it is complete. The
+ * first write to each new file, whatever its name, is recorded as well, to
+ * time how long a recording takes to start. Files whose name starts with a
+ * '.' are ignored.
+ *
+ * Times are System.nanoTime() values. The uiauto APK needs
+ * READ_EXTERNAL_STORAGE to watch shared storage.
+ */
+public class CaptureObserver {
+
+    /** A completed capture. */
+    public static class Capture {
+        public String name;
+        public long time;
+
+        public Capture(String name, long time) {
+            this.name = name;
+            this.time = time;
+        }
+    }
+
+    public static File getDefaultCameraDirectory() {
+        return new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM),
+                        "Camera");
+    }
+
+    private final LinkedBlockingQueue<Capture> captures = new LinkedBlockingQueue<Capture>();
+    private final LinkedBlockingQueue<Capture> firstWrites = new LinkedBlockingQueue<Capture>();
+    private final Set<String> written = Collections.synchronizedSet(new HashSet<String>());
+    private final String[] extensions;
+    // Held so that the observer is not garbage collected, which would stop it
+    private final FileObserver observer;
+
+    public CaptureObserver(File directory, String... extensions) {
+        this.extensions = extensions;
+        // The directory must exist to be watched; applications create it on
+        // their first capture otherwise
+        directory.mkdirs();
+        int mask = FileObserver.MODIFY | FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO;
+        observer = new FileObserver(directory.getPath(), mask) {
+            @Override
+            public void onEvent(int event, String path) {
+                long time = System.nanoTime();
+                if (path == null || path.startsWith(".")) {
+                    return;
+                }
+                if ((event & FileObserver.ALL_EVENTS) == FileObserver.MODIFY) {
+                    if (written.add(path)) {
+                        firstWrites.offer(new Capture(path, time));
+                    }
+                } else if (isCapture(path)) {
+                    captures.offer(new Capture(path, time));
+                }
+            }
+        };
+    }
+
+    public void startWatching() {
+        observer.startWatching();
+    }
+
+    public void stopWatching() {
+        observer.stopWatching();
+    }
+
+    // Forget captures completed so far, e.g. ones written for an earlier trigger
+    public void clear() {
+        captures.clear();
+        firstWrites.clear();
+    }
+
+    /**
+     * Wait for the next capture to complete, returning null if none has
+     * after timeoutMillis.
+     */
+    public Capture waitForCapture(long timeoutMillis) throws InterruptedException {
+        return captures.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Wait for the next write to a file that had not been written to since
+     * watching started, returning null if there is none after timeoutMillis.
+     */
+    public Capture waitForFirstWrite(long timeoutMillis) throws InterruptedException {
+        return firstWrites.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isCapture(String name) {
+        String lowerName = name.toLowerCase(Locale.US);
+        for (String extension : extensions) {
+            if (lowerName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
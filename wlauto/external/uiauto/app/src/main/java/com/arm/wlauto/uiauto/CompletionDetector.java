@@ -0,0 +1,334 @@
+/*    Copyright 2013-2016 ARM Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.arm.wlauto.uiauto;
+
+import android.app.Instrumentation;
+import android.app.UiAutomation;
+import android.os.FileObserver;
+import android.os.SystemClock;
+import android.support.test.uiautomator.Configurator;
+import android.support.test.uiautomator.UiObject;
+import android.util.Log;
+import android.view.accessibility.AccessibilityEvent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Detects when a long-running benchmark finishes, without polling the UI
+ * of the application while it runs.
+ *
+ * Completion is signalled by whichever of the registered triggers fires
+ * first:
+ *
+ *  - a UI trigger, when an object appears (or disappears) on screen. The
+ *    screen is only inspected after a window changes state (e.g. a new
+ *    activity or dialog is shown), as reported by accessibility events, and
+ *    at most every UI_CHECK_INTERVAL_MILLIS. Content changes within a window
+ *    are too frequent while a benchmark renders to wake on, so objects that
+ *    appear without a window change are found by the check made every
+ *    UI_FALLBACK_MILLIS.
+ *  - a logcat trigger, when a line matching a regular expression is logged.
+ *  - a file trigger, when a file whose name matches a regular expression is
+ *    written to, or moved into, a directory. The directory must be readable
+ *    by the uiauto package.
+ *
+ * Each completion records the time the benchmark finished, i.e. the time of
+ * the event that fired the trigger, separately from the time it was
+ * detected, so that the benchmark's run time can be reported without the
+ * latency of detecting it. Times are SystemClock.uptimeMillis() values.
+ *
+ * UI triggers wait for accessibility events with
+ * UiAutomation.executeAndWaitForEvent(), so while the detector is started
+ * the test should not use methods that do so as well, such as
+ * UiObject.clickAndWaitForNewWindow().
+ *
+ * Typical usage:
+ *
+ * CompletionDetector detector = new CompletionDetector(mInstrumentation);
+ * detector.addUiTrigger(resultsButton);
+ * detector.addLogcatTrigger("benchmark finished");
+ * detector.start();
+ * // start the benchmark
+ * Completion completion = detector.waitForCompletion(timeout);
+ * detector.stop();
+ */
+public class CompletionDetector {
+
+    public static final long UI_CHECK_INTERVAL_MILLIS = 1000;
+    public static final long UI_FALLBACK_MILLIS = 10000;
+
+    private static final String TAG = "CompletionDetector";
+
+    /** A fired trigger. */
+    public static class Completion {
+        // "ui", "logcat" or "file"
+        public String source;
+        // What fired the trigger: the selector, the logged line or the file name
+        public String detail;
+        // The groups captured by a logcat trigger's expression
+        public String[] groups = new String[0];
+        public long startTime;
+        public long eventTime;
+        public long detectedTime;
+
+        public Completion(String source, String detail, long eventTime) {
+            this.source = source;
+            this.detail = detail;
+            this.eventTime = eventTime;
+            this.detectedTime = SystemClock.uptimeMillis();
+        }
+
+        // From start() to the event that fired the trigger
+        public long getDurationMillis() {
+            return eventTime - startTime;
+        }
+
+        // From the event that fired the trigger to its detection
+        public long getDetectionLatencyMillis() {
+            return detectedTime - eventTime;
+        }
+    }
+
+    private static class UiTrigger {
+        UiObject object;
+        boolean gone;
+        boolean armed;
+
+        UiTrigger(UiObject object, boolean gone, boolean armed) {
+            this.object = object;
+            this.gone = gone;
+            this.armed = armed;
+        }
+
+        boolean fired() {
+            boolean exists = object.exists();
+            if (!armed) {
+                armed = !exists;
+                return false;
+            }
+            return gone ? !exists : exists;
+        }
+    }
+
+    private final Instrumentation instrumentation;
+    private final List<UiTrigger> uiTriggers = new ArrayList<UiTrigger>();
+    private final List<Pattern> logcatTriggers = new ArrayList<Pattern>();
+    private final List<FileObserver> fileTriggers = new ArrayList<FileObserver>();
+    private final LinkedBlockingQueue<Completion> completions = new LinkedBlockingQueue<Completion>();
+    private InputStream logcat;
+    private long startTime;
+    private volatile boolean running;
+
+    public CompletionDetector(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /** Complete when object appears on screen. */
+    public void addUiTrigger(UiObject object) {
+        uiTriggers.add(new UiTrigger(object, false, true));
+    }
+
+    /**
+     * Complete when object appears on screen after having been seen absent,
+     * so that one left on screen by an earlier run does not fire the trigger.
+     */
+    public void addUiReappearTrigger(UiObject object) {
+        uiTriggers.add(new UiTrigger(object, false, false));
+    }
+
+    /** Complete when object is no longer on screen. */
+    public void addUiGoneTrigger(UiObject object) {
+        uiTriggers.add(new UiTrigger(object, true, true));
+    }
+
+    /** Complete when a line matching regex is logged by any process. */
+    public void addLogcatTrigger(String regex) {
+        logcatTriggers.add(Pattern.compile(regex));
+    }
+
+    /** Complete when a file matching nameRegex is written to, or moved into, directory. */
+    public void addFileTrigger(File directory, String nameRegex) {
+        final Pattern name = Pattern.compile(nameRegex);
+        int mask = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO;
+        fileTriggers.add(new FileObserver(directory.getPath(), mask) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (path != null && name.matcher(path).matches()) {
+                    post(new Completion("file", path, SystemClock.uptimeMillis()));
+                }
+            }
+        });
+    }
+
+    /** Start watching the triggers; call before starting the benchmark. */
+    public void start() throws IOException {
+        startTime = SystemClock.uptimeMillis();
+        completions.clear();
+        running = true;
+
+        for (FileObserver observer : fileTriggers) {
+            observer.startWatching();
+        }
+        if (!logcatTriggers.isEmpty()) {
+            startLogcatThread();
+        }
+        if (!uiTriggers.isEmpty()) {
+            startUiThread();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (FileObserver observer : fileTriggers) {
+            observer.stopWatching();
+        }
+        if (logcat != null) {
+            try {
+                logcat.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            logcat = null;
+        }
+        // The detector's threads are not waited for, as they may be blocked
+        // reading logcat or waiting for an event; they exit once they see
+        // that the detector has stopped
+    }
+
+    /**
+     * Wait for the first trigger to fire, returning null if none has after
+     * timeoutMillis.
+     */
+    public Completion waitForCompletion(long timeoutMillis) throws InterruptedException {
+        // While the test's thread waits, UI triggers are checked without
+        // waiting for the application to become idle, which a running
+        // benchmark may not be
+        Configurator configurator = Configurator.getInstance();
+        long idleTimeout = configurator.getWaitForIdleTimeout();
+        configurator.setWaitForIdleTimeout(0);
+        try {
+            return completions.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            configurator.setWaitForIdleTimeout(idleTimeout);
+        }
+    }
+
+    private void post(Completion completion) {
+        completion.startTime = startTime;
+        completions.offer(completion);
+    }
+
+    private void startLogcatThread() throws IOException {
+        // Lines logged before start() are skipped by their timestamp
+        final long since = System.currentTimeMillis();
+        logcat = UiAutoUtils.openShellCommand(instrumentation, UiAutoUtils.createLogcatCommand(since, false));
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(logcat));
+        startThread(new Runnable() {
+            public void run() {
+                try {
+                    String line;
+                    while (running && (line = reader.readLine()) != null) {
+                        long logged = UiAutoUtils.getLogcatTime(line);
+                        if (logged >= 0 && logged < since) {
+                            // Before Android 7 the whole buffer is printed first
+                            continue;
+                        }
+                        for (Pattern trigger : logcatTriggers) {
+                            Matcher match = trigger.matcher(line);
+                            if (match.find()) {
+                                Completion completion = new Completion("logcat", line, getLineTime(logged));
+                                completion.groups = new String[match.groupCount()];
+                                for (int i = 0; i < match.groupCount(); i++) {
+                                    completion.groups[i] = match.group(i + 1);
+                                }
+                                post(completion);
+                                return;
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    // The stream was closed by stop()
+                }
+            }
+        });
+    }
+
+    // The uptime a line was logged at, from its System.currentTimeMillis() time
+    private static long getLineTime(long logged) {
+        long now = SystemClock.uptimeMillis();
+        if (logged < 0) {
+            return now;
+        }
+        return now - Math.max(0, System.currentTimeMillis() - logged);
+    }
+
+    private void startUiThread() {
+        final UiAutomation uiAutomation = instrumentation.getUiAutomation();
+        final Runnable noop = new Runnable() {
+            public void run() {
+            }
+        };
+        final UiAutomation.AccessibilityEventFilter windowChanged = new UiAutomation.AccessibilityEventFilter() {
+            public boolean accept(AccessibilityEvent event) {
+                return event.getEventType() == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+            }
+        };
+        startThread(new Runnable() {
+            public void run() {
+                long eventTime = SystemClock.uptimeMillis();
+                while (running) {
+                    for (UiTrigger trigger : uiTriggers) {
+                        if (trigger.fired()) {
+                            post(new Completion("ui", trigger.object.getSelector().toString(), eventTime));
+                            return;
+                        }
+                    }
+                    // Changes that follow one another closely are checked once
+                    long nextCheck = SystemClock.uptimeMillis() + UI_CHECK_INTERVAL_MILLIS;
+                    try {
+                        AccessibilityEvent event =
+                            uiAutomation.executeAndWaitForEvent(noop, windowChanged, UI_FALLBACK_MILLIS);
+                        eventTime = event.getEventTime();
+                        SystemClock.sleep(Math.max(0, nextCheck - SystemClock.uptimeMillis()));
+                    } catch (TimeoutException e) {
+                        eventTime = SystemClock.uptimeMillis();
+                    } catch (IllegalStateException e) {
+                        // UiAutomation was disconnected
+                        Log.w(TAG, "Stopped waiting for window changes", e);
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    private void startThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
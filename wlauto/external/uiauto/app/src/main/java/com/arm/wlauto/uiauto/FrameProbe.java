@@ -0,0 +1,80 @@
+/*    Copyright 2013-2016 ARM Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.arm.wlauto.uiauto;
+
+import android.app.Instrumentation;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the frame statistics "dumpsys gfxinfo" keeps for the application
+ * under test.
+ *
+ * Only frames drawn by the application's UI renderer are counted; content
+ * composited directly from a SurfaceView (e.g. camera previews and video
+ * decoded straight to a surface) is not.
+ */
+public class FrameProbe {
+
+    /** Frames rendered since the last reset; -1 if unavailable. */
+    public static class FrameStats {
+        public long totalFrames = -1;
+        public long jankyFrames = -1;
+        // Frame times in milliseconds
+        public long percentile90 = -1;
+        public long percentile95 = -1;
+        public long percentile99 = -1;
+    }
+
+    private static final Pattern TOTAL_FRAMES = Pattern.compile("Total frames rendered:\\s+(\\d+)");
+    private static final Pattern JANKY_FRAMES = Pattern.compile("Janky frames:\\s+(\\d+)");
+    private static final Pattern PERCENTILE_90 = Pattern.compile("90th percentile:\\s+(\\d+)ms");
+    private static final Pattern PERCENTILE_95 = Pattern.compile("95th percentile:\\s+(\\d+)ms");
+    private static final Pattern PERCENTILE_99 = Pattern.compile("99th percentile:\\s+(\\d+)ms");
+
+    private Instrumentation instrumentation;
+    private String packageName;
+
+    public FrameProbe(Instrumentation instrumentation, String packageName) {
+        this.instrumentation = instrumentation;
+        this.packageName = packageName;
+    }
+
+    // Discard the statistics gathered so far
+    public void reset() {
+        UiAutoUtils.executeShellCommand(instrumentation, "dumpsys gfxinfo " + packageName + " reset");
+    }
+
+    public FrameStats read() {
+        String output = UiAutoUtils.executeShellCommand(instrumentation, "dumpsys gfxinfo " + packageName);
+        FrameStats stats = new FrameStats();
+        stats.totalFrames = findLong(TOTAL_FRAMES, output);
+        stats.jankyFrames = findLong(JANKY_FRAMES, output);
+        stats.percentile90 = findLong(PERCENTILE_90, output);
+        stats.percentile95 = findLong(PERCENTILE_95, output);
+        stats.percentile99 = findLong(PERCENTILE_99, output);
+        return stats;
+    }
+
+    private static long findLong(Pattern pattern, String text) {
+        Matcher match = pattern.matcher(text);
+        if (match.find()) {
+            return Long.parseLong(match.group(1));
+        }
+        return -1;
+    }
+}
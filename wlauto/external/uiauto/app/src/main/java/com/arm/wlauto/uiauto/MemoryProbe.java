@@ -0,0 +1,165 @@
+/*    Copyright 2013-2016 ARM Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.arm.wlauto.uiauto;
+
+import android.app.Instrumentation;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the memory footprint and garbage collection activity of the
+ * application under test.
+ *
+ * Commands are run with UiAutoUtils.executeShellCommand(), so that they have
+ * shell privileges on API 21+.
+ *
+ * PSS and RSS are read from /proc/<pid>/smaps_rollup where it is readable,
+ * falling back to "dumpsys meminfo". GC statistics are taken from the
+ * "GC freed" lines ART logs for the application's process.
+ */
+public class MemoryProbe {
+
+    /** Memory footprint in kB; -1 if unavailable. */
+    public static class Footprint {
+        public long pss = -1;
+        public long rss = -1;
+    }
+
+    /** Garbage collections logged by ART during an interval. */
+    public static class GcStats {
+        public int count;
+        public double pauseMillis;
+        public double durationMillis;
+    }
+
+    private static final Pattern SMAPS_PSS = Pattern.compile("^Pss:\\s+(\\d+) kB", Pattern.MULTILINE);
+    private static final Pattern SMAPS_RSS = Pattern.compile("^Rss:\\s+(\\d+) kB", Pattern.MULTILINE);
+    // "TOTAL PSS:" in the app summary of recent releases, the first column
+    // of the "TOTAL" row of the table on older ones
+    private static final Pattern MEMINFO_PSS =
+        Pattern.compile("TOTAL PSS:\\s+(\\d+)|^\\s*TOTAL:?\\s+(\\d+)", Pattern.MULTILINE);
+    private static final Pattern MEMINFO_RSS = Pattern.compile("TOTAL RSS:\\s+(\\d+)");
+    private static final Pattern GC_LINE = Pattern.compile("GC freed .* paused (\\S+) total (\\S+)");
+    private static final Pattern DURATION = Pattern.compile("([\\d.]+)(ns|us|ms|s)");
+
+    private Instrumentation instrumentation;
+    private String packageName;
+
+    public MemoryProbe(Instrumentation instrumentation, String packageName) {
+        this.instrumentation = instrumentation;
+        this.packageName = packageName;
+    }
+
+    public Footprint readFootprint() {
+        Footprint footprint = new Footprint();
+        String pid = getPid();
+        if (pid == null) {
+            return footprint;
+        }
+
+        String smaps = executeShellCommand("cat /proc/" + pid + "/smaps_rollup");
+        footprint.pss = findLong(SMAPS_PSS, smaps);
+        footprint.rss = findLong(SMAPS_RSS, smaps);
+        if (footprint.pss < 0) {
+            String meminfo = executeShellCommand("dumpsys meminfo " + pid);
+            footprint.pss = findLong(MEMINFO_PSS, meminfo);
+            footprint.rss = findLong(MEMINFO_RSS, meminfo);
+        }
+        return footprint;
+    }
+
+    /**
+     * Collect the garbage collections logged by the application between the
+     * given System.currentTimeMillis() timestamps.
+     */
+    public GcStats readGcStats(long startTime, long endTime) {
+        GcStats stats = new GcStats();
+        String pid = getPid();
+        if (pid == null) {
+            return stats;
+        }
+
+        String log = executeShellCommand(UiAutoUtils.createLogcatCommand(startTime, true));
+
+        for (String line : log.split("\n")) {
+            if (!pid.equals(UiAutoUtils.getLogcatPid(line))) {
+                continue;
+            }
+            long time = UiAutoUtils.getLogcatTime(line);
+            if (time < startTime) {
+                // Before Android 7 the whole buffer is read
+                continue;
+            }
+            if (time > endTime) {
+                break;
+            }
+            Matcher match = GC_LINE.matcher(line);
+            if (match.find()) {
+                stats.count++;
+                // Concurrent collectors may report several pauses, e.g. "1.2ms,340us"
+                Matcher pause = DURATION.matcher(match.group(1));
+                while (pause.find()) {
+                    stats.pauseMillis += toMillis(pause);
+                }
+                Matcher duration = DURATION.matcher(match.group(2));
+                if (duration.find()) {
+                    stats.durationMillis += toMillis(duration);
+                }
+            }
+        }
+        return stats;
+    }
+
+    public String getPid() {
+        String output = executeShellCommand("pidof " + packageName).trim();
+        if (output.isEmpty()) {
+            return null;
+        }
+        // Only the main process is measured
+        return output.split("\\s+")[0];
+    }
+
+    public String executeShellCommand(String command) {
+        return UiAutoUtils.executeShellCommand(instrumentation, command);
+    }
+
+    private static long findLong(Pattern pattern, String text) {
+        Matcher match = pattern.matcher(text);
+        if (!match.find()) {
+            return -1;
+        }
+        for (int i = 1; i <= match.groupCount(); i++) {
+            if (match.group(i) != null) {
+                return Long.parseLong(match.group(i));
+            }
+        }
+        return -1;
+    }
+
+    private static double toMillis(Matcher duration) {
+        double value = Double.parseDouble(duration.group(1));
+        String units = duration.group(2);
+        if (units.equals("ns")) {
+            return value / 1000000;
+        } else if (units.equals("us")) {
+            return value / 1000;
+        } else if (units.equals("s")) {
+            return value * 1000;
+        }
+        return value;
+    }
+}
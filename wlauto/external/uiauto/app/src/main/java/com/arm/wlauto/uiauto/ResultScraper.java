@@ -0,0 +1,331 @@
+/*    Copyright 2013-2016 ARM Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.arm.wlauto.uiauto;
+
+import android.support.test.uiautomator.UiDevice;
+import android.support.test.uiautomator.UiScrollable;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts label/value pairs from a benchmark results screen in bulk.
+ *
+ * Rather than resolving a UiSelector (and doing an accessibility round trip)
+ * for every field, the window hierarchy is dumped once per screen, parsed
+ * into a lightweight tree of Nodes and a list of declarative Rules is
+ * applied to it. If a scrollable container is supplied the scraper scrolls
+ * it forward and dumps again until the end of the list is reached, so long
+ * results lists are collected in a single deterministic pass.
+ *
+ * Results are returned in the order they were first seen. If the same metric
+ * appears on more than one screen (e.g. because of overlap between scrolls)
+ * the first value is kept.
+ *
+ * Typical usage:
+ *
+ * ResultScraper scraper = new ResultScraper(mDevice);
+ * scraper.addRule(ResultScraper.siblingPairs("android.widget.TableRow"));
+ * scraper.addRule(ResultScraper.resourceId("Overall", ".*test_result.*"));
+ * Map<String, String> results = scraper.scrape(resultsList, 10);
+ */
+public class ResultScraper {
+
+    /** A single element of the dumped window hierarchy. */
+    public static class Node {
+        public String className;
+        public String resourceId;
+        public String text;
+        public String description;
+        public Node parent;
+        public List<Node> children = new ArrayList<Node>();
+
+        public boolean hasText() {
+            return text != null && !text.isEmpty();
+        }
+
+        // All descendants of this node in document order
+        public List<Node> descendants() {
+            List<Node> result = new ArrayList<Node>();
+            for (Node child : children) {
+                result.add(child);
+                result.addAll(child.descendants());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A declarative extraction rule. Implementations add any metrics they
+     * find under root to results; metrics already present must not be
+     * overwritten.
+     */
+    public interface Rule {
+        public void extract(Node root, Map<String, String> results);
+    }
+
+    private UiDevice mDevice;
+    private List<Rule> rules = new ArrayList<Rule>();
+
+    public ResultScraper(UiDevice device) {
+        this.mDevice = device;
+    }
+
+    public ResultScraper addRule(Rule rule) {
+        rules.add(rule);
+        return this;
+    }
+
+    public Map<String, String> scrape() throws Exception {
+        return scrape(null, 0);
+    }
+
+    public Map<String, String> scrape(UiScrollable scrollable, int maxScrolls) throws Exception {
+        Map<String, String> results = new LinkedHashMap<String, String>();
+        applyRules(dumpHierarchy(), results);
+
+        if (scrollable != null && scrollable.exists()) {
+            for (int i = 0; i < maxScrolls; i++) {
+                // scrollForward() waits for the UI to settle and returns
+                // false once the end of the list has been reached.
+                boolean moved = scrollable.scrollForward();
+                applyRules(dumpHierarchy(), results);
+                if (!moved) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    public Node dumpHierarchy() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        mDevice.waitForIdle();
+        mDevice.dumpWindowHierarchy(stream);
+        return parseHierarchy(stream.toByteArray());
+    }
+
+    private void applyRules(Node root, Map<String, String> results) {
+        for (Rule rule : rules) {
+            rule.extract(root, results);
+        }
+    }
+
+    private static Node parseHierarchy(byte[] xml) throws Exception {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(new ByteArrayInputStream(xml), "UTF-8");
+
+        Node root = new Node();
+        Node current = root;
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            if (event == XmlPullParser.START_TAG && parser.getName().equals("node")) {
+                Node node = new Node();
+                node.className = parser.getAttributeValue(null, "class");
+                node.resourceId = parser.getAttributeValue(null, "resource-id");
+                node.text = parser.getAttributeValue(null, "text");
+                node.description = parser.getAttributeValue(null, "content-desc");
+                node.parent = current;
+                current.children.add(node);
+                current = node;
+            } else if (event == XmlPullParser.END_TAG && parser.getName().equals("node")) {
+                current = current.parent;
+            }
+            event = parser.next();
+        }
+        return root;
+    }
+
+    private static String clean(String text) {
+        return text.replace('\n', ' ').trim();
+    }
+
+    private static void putResult(Map<String, String> results, String metric, String value) {
+        metric = clean(metric);
+        if (!metric.isEmpty() && !results.containsKey(metric)) {
+            results.put(metric, clean(value));
+        }
+    }
+
+    /**
+     * For each node of class parentClass (or any node if parentClass is null)
+     * whose first two children both carry text, use the first child as the
+     * metric name and the second as its value.
+     */
+    public static Rule siblingPairs(final String parentClass) {
+        return new Rule() {
+            public void extract(Node root, Map<String, String> results) {
+                for (Node node : root.descendants()) {
+                    if (parentClass != null && !parentClass.equals(node.className)) {
+                        continue;
+                    }
+                    if (node.children.size() >= 2 && node.children.get(0).hasText()
+                        && node.children.get(1).hasText()) {
+                        putResult(results, node.children.get(0).text, node.children.get(1).text);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Like siblingPairs(), but only for the rows of class rowClass in the
+     * lists directly held by nodes of class scrollClass, so that other text
+     * pairs in the window (e.g. toolbars and button rows) are ignored. Rows
+     * that hold a node whose resource id matches excludeIdRegex are skipped.
+     */
+    public static Rule listRowPairs(final String scrollClass, final String rowClass,
+                                    String excludeIdRegex) {
+        final Pattern exclude = Pattern.compile(excludeIdRegex);
+        return new Rule() {
+            public void extract(Node root, Map<String, String> results) {
+                for (Node node : root.descendants()) {
+                    if (!scrollClass.equals(node.className)) {
+                        continue;
+                    }
+                    for (Node list : node.children) {
+                        for (Node row : list.children) {
+                            if (rowClass.equals(row.className) && !holdsResourceId(row, exclude)
+                                && row.children.size() >= 2 && row.children.get(0).hasText()
+                                && row.children.get(1).hasText()) {
+                                putResult(results, row.children.get(0).text, row.children.get(1).text);
+                            }
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    private static boolean holdsResourceId(Node node, Pattern pattern) {
+        for (Node descendant : node.descendants()) {
+            if (descendant.resourceId != null && pattern.matcher(descendant.resourceId).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Report the text of the first node whose resource id matches idRegex
+     * as metric.
+     */
+    public static Rule resourceId(final String metric, String idRegex) {
+        final Pattern pattern = Pattern.compile(idRegex);
+        return new Rule() {
+            public void extract(Node root, Map<String, String> results) {
+                for (Node node : root.descendants()) {
+                    if (node.resourceId != null && node.hasText()
+                        && pattern.matcher(node.resourceId).matches()) {
+                        putResult(results, metric, node.text);
+                        return;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Report the text of the first node whose resource id matches valueIdRegex
+     * and that lives underneath a node whose resource id matches
+     * containerIdRegex.
+     */
+    public static Rule resourceIdWithin(final String metric, String containerIdRegex,
+                                        String valueIdRegex) {
+        final Pattern containerPattern = Pattern.compile(containerIdRegex);
+        final Rule valueRule = resourceId(metric, valueIdRegex);
+        return new Rule() {
+            public void extract(Node root, Map<String, String> results) {
+                for (Node node : root.descendants()) {
+                    if (node.resourceId != null
+                        && containerPattern.matcher(node.resourceId).matches()) {
+                        valueRule.extract(node, results);
+                        return;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Find the first node whose text matches textRegex and report the text
+     * of its siblingIndex-th sibling (or of the node itself if siblingIndex
+     * is negative) as metric.
+     */
+    public static Rule textMatching(final String metric, String textRegex, final int siblingIndex) {
+        final Pattern pattern = Pattern.compile(textRegex);
+        return new Rule() {
+            public void extract(Node root, Map<String, String> results) {
+                for (Node node : root.descendants()) {
+                    if (!node.hasText() || !pattern.matcher(node.text).matches()) {
+                        continue;
+                    }
+                    if (siblingIndex < 0) {
+                        putResult(results, metric, node.text);
+                    } else if (siblingIndex < node.parent.children.size()
+                               && node.parent.children.get(siblingIndex).hasText()) {
+                        putResult(results, metric, node.parent.children.get(siblingIndex).text);
+                    }
+                    return;
+                }
+            }
+        };
+    }
+
+    /**
+     * Report metrics that are identified by position rather than by a label
+     * on screen. The n-th container of class containerClass (counting from
+     * firstContainer) provides the value for metrics[n], taken from the
+     * valueIndex-th node of class valueClass within that container.
+     */
+    public static Rule indexed(final String[] metrics, final String containerClass,
+                               final int firstContainer, final String valueClass,
+                               final int valueIndex) {
+        return new Rule() {
+            public void extract(Node root, Map<String, String> results) {
+                List<Node> containers = new ArrayList<Node>();
+                for (Node node : root.descendants()) {
+                    if (containerClass.equals(node.className)) {
+                        containers.add(node);
+                    }
+                }
+                for (int i = 0; i < metrics.length; i++) {
+                    int index = firstContainer + i;
+                    if (index >= containers.size()) {
+                        break;
+                    }
+                    List<Node> values = new ArrayList<Node>();
+                    for (Node node : containers.get(index).descendants()) {
+                        if (valueClass.equals(node.className)) {
+                            values.add(node);
+                        }
+                    }
+                    if (valueIndex < values.size() && values.get(valueIndex).hasText()) {
+                        putResult(results, metrics[i], values.get(valueIndex).text);
+                    }
+                }
+            }
+        };
+    }
+}
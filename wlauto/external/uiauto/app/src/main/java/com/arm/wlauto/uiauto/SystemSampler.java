@@ -0,0 +1,460 @@
+/*    Copyright 2013-2016 ARM Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.arm.wlauto.uiauto;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Samples CPU frequency, CPU utilisation and temperature from within the
+ * uiauto process.
+ *
+ * Host side pollers sample over adb every few hundred milliseconds, which is
+ * too coarse to resolve individual UX actions. This sampler runs a thread
+ * that reads the current frequency of each frequency domain, /proc/stat and
+ * all thermal zones every few milliseconds. The files
+ * are kept open and re-read into a fixed buffer, and samples are stored in a
+ * preallocated ring buffer of primitive arrays, so that sampling does not
+ * allocate. ActionLogger summarises the samples that fall within each action.
+ *
+ * The ring buffer holds BUFFER_SECONDS worth of samples; actions longer than
+ * that are summarised over their most recent part only.
+ */
+public class SystemSampler {
+
+    /** Summary of the samples taken during an interval. */
+    public static class Summary {
+        // First CPU of each frequency domain and its mean frequency in kHz
+        public int[] cpus;
+        public double[] meanFrequencies;
+        // Percentage of time not spent idle, across all CPUs and for the
+        // online CPUs of each frequency domain
+        public double busyPercent = Double.NaN;
+        public double[] busyPercents;
+        // Highest temperature seen in any thermal zone, in degrees Celsius
+        public double peakTemperature = Double.NaN;
+        public int sampleCount;
+    }
+
+    public static final int BUFFER_SECONDS = 120;
+
+    private static final String TAG = "SystemSampler";
+    private static final String CPU_DIR = "/sys/devices/system/cpu";
+    private static final String THERMAL_DIR = "/sys/class/thermal";
+    private static final int STAT_FIELDS = 8;  // user nice system idle iowait irq softirq steal
+
+    private static SystemSampler instance;
+
+    private final int periodMillis;
+    private final int capacity;
+    private final int[] cpus;
+    private final RandomAccessFile[] frequencyFiles;
+    private final RandomAccessFile statFile;
+    private final RandomAccessFile[] thermalFiles;
+    private final byte[] readBuffer = new byte[8192];
+    private final long[] statValues = new long[STAT_FIELDS];
+    private final int[] currentFrequencies;
+    // Index into cpus of the domain each CPU belongs to, or -1
+    private final int[] cpuDomains;
+    private final long[] currentDomainBusy;
+    private final long[] currentDomainTotal;
+
+    // Ring buffer; sample n is stored in slot n % capacity
+    private final long[] times;
+    private final int[] frequencies;  // capacity x cpus.length
+    private final long[] busyJiffies;
+    private final long[] totalJiffies;
+    private final long[] domainBusyJiffies;  // capacity x cpus.length
+    private final long[] domainTotalJiffies;  // capacity x cpus.length
+    private final int[] temperatures;
+    private long sampleCount;
+    private volatile boolean running = true;
+
+    /**
+     * Start sampling with the given period, unless a sampler is already
+     * running, and return the running sampler.
+     */
+    public static synchronized SystemSampler start(int periodMillis) {
+        if (instance == null) {
+            instance = new SystemSampler(periodMillis);
+            instance.startThread();
+        }
+        return instance;
+    }
+
+    // The running sampler, or null if sampling has not been started
+    public static synchronized SystemSampler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Stop the running sampler, if any. The samples it has already taken can
+     * still be summarised through a reference to it.
+     */
+    public static synchronized void stop() {
+        if (instance != null) {
+            instance.running = false;
+            instance = null;
+        }
+    }
+
+    private SystemSampler(int periodMillis) {
+        this.periodMillis = periodMillis;
+        this.capacity = BUFFER_SECONDS * 1000 / periodMillis;
+
+        // Only sample one CPU of each frequency domain
+        List<Integer> domainCpus = new ArrayList<Integer>();
+        List<List<Integer>> domainMembers = new ArrayList<List<Integer>>();
+        Set<Integer> covered = new HashSet<Integer>();
+        int numCpus = Runtime.getRuntime().availableProcessors();
+        int cpu;
+        for (cpu = 0; new File(CPU_DIR + "/cpu" + cpu).exists() || cpu < numCpus; cpu++) {
+            if (covered.contains(cpu)) {
+                continue;
+            }
+            List<Integer> members = readCpuList(CPU_DIR + "/cpu" + cpu + "/cpufreq/related_cpus");
+            members.add(cpu);
+            domainCpus.add(cpu);
+            domainMembers.add(members);
+            covered.addAll(members);
+        }
+        cpuDomains = new int[cpu];
+        Arrays.fill(cpuDomains, -1);
+
+        List<Integer> openedCpus = new ArrayList<Integer>();
+        List<RandomAccessFile> opened = new ArrayList<RandomAccessFile>();
+        for (int i = 0; i < domainCpus.size(); i++) {
+            RandomAccessFile file = open(CPU_DIR + "/cpu" + domainCpus.get(i) + "/cpufreq/scaling_cur_freq");
+            if (file != null) {
+                for (int member : domainMembers.get(i)) {
+                    if (member < cpuDomains.length) {
+                        cpuDomains[member] = openedCpus.size();
+                    }
+                }
+                openedCpus.add(domainCpus.get(i));
+                opened.add(file);
+            }
+        }
+        cpus = new int[openedCpus.size()];
+        for (int i = 0; i < cpus.length; i++) {
+            cpus[i] = openedCpus.get(i);
+        }
+        frequencyFiles = opened.toArray(new RandomAccessFile[opened.size()]);
+        currentFrequencies = new int[cpus.length];
+        currentDomainBusy = new long[cpus.length];
+        currentDomainTotal = new long[cpus.length];
+
+        statFile = open("/proc/stat");
+
+        opened.clear();
+        File[] zones = new File(THERMAL_DIR).listFiles();
+        if (zones != null) {
+            for (File zone : zones) {
+                if (zone.getName().startsWith("thermal_zone")) {
+                    RandomAccessFile file = open(zone.getPath() + "/temp");
+                    if (file != null) {
+                        opened.add(file);
+                    }
+                }
+            }
+        }
+        thermalFiles = opened.toArray(new RandomAccessFile[opened.size()]);
+
+        times = new long[capacity];
+        frequencies = new int[capacity * cpus.length];
+        busyJiffies = new long[capacity];
+        totalJiffies = new long[capacity];
+        domainBusyJiffies = new long[capacity * cpus.length];
+        domainTotalJiffies = new long[capacity * cpus.length];
+        temperatures = new int[capacity];
+    }
+
+    private void startThread() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                long deadline = SystemClock.uptimeMillis();
+                while (running) {
+                    sample();
+                    deadline += periodMillis;
+                    long delay = deadline - SystemClock.uptimeMillis();
+                    if (delay > 0) {
+                        SystemClock.sleep(delay);
+                    } else {
+                        // Fell behind; skip the missed samples
+                        deadline = SystemClock.uptimeMillis();
+                    }
+                }
+                close(frequencyFiles);
+                close(thermalFiles);
+                close(new RandomAccessFile[] {statFile});
+            }
+        }, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        for (int i = 0; i < frequencyFiles.length; i++) {
+            currentFrequencies[i] = (int) readLong(frequencyFiles[i]);
+        }
+
+        long busy = -1;
+        long total = -1;
+        if (statFile != null && readStat(statFile)) {
+            total = 0;
+            for (long value : statValues) {
+                total += value;
+            }
+            busy = total - statValues[3] - statValues[4];
+        }
+
+        int temperature = Integer.MIN_VALUE;
+        for (RandomAccessFile file : thermalFiles) {
+            temperature = Math.max(temperature, (int) readLong(file));
+        }
+
+        synchronized (this) {
+            int slot = (int) (sampleCount % capacity);
+            System.arraycopy(currentFrequencies, 0, frequencies, slot * cpus.length, cpus.length);
+            System.arraycopy(currentDomainBusy, 0, domainBusyJiffies, slot * cpus.length, cpus.length);
+            System.arraycopy(currentDomainTotal, 0, domainTotalJiffies, slot * cpus.length, cpus.length);
+            times[slot] = now;
+            busyJiffies[slot] = busy;
+            totalJiffies[slot] = total;
+            temperatures[slot] = temperature;
+            sampleCount++;
+        }
+    }
+
+    /**
+     * Summarise the samples taken between the given System.nanoTime()
+     * timestamps.
+     */
+    public synchronized Summary summarize(long startTime, long endTime) {
+        Summary summary = new Summary();
+        summary.cpus = cpus.clone();
+        summary.meanFrequencies = new double[cpus.length];
+        summary.busyPercents = new double[cpus.length];
+        Arrays.fill(summary.busyPercents, Double.NaN);
+
+        long[] frequencySums = new long[cpus.length];
+        int peakTemperature = Integer.MIN_VALUE;
+        int lastSlot = -1;
+        int firstSlot = -1;
+
+        // Walk backwards from the most recent sample
+        long oldest = Math.max(0, sampleCount - capacity);
+        for (long n = sampleCount - 1; n >= oldest; n--) {
+            int slot = (int) (n % capacity);
+            if (times[slot] > endTime) {
+                continue;
+            }
+            if (lastSlot < 0) {
+                lastSlot = slot;
+            }
+            // The last sample before the start is the utilisation baseline
+            firstSlot = slot;
+            if (times[slot] < startTime) {
+                break;
+            }
+            summary.sampleCount++;
+            for (int i = 0; i < cpus.length; i++) {
+                frequencySums[i] += frequencies[slot * cpus.length + i];
+            }
+            peakTemperature = Math.max(peakTemperature, temperatures[slot]);
+        }
+
+        if (summary.sampleCount > 0) {
+            for (int i = 0; i < cpus.length; i++) {
+                summary.meanFrequencies[i] = (double) frequencySums[i] / summary.sampleCount;
+            }
+            if (peakTemperature != Integer.MIN_VALUE) {
+                // Most drivers report millidegrees, some whole degrees
+                summary.peakTemperature = peakTemperature > 1000 ? peakTemperature / 1000.0
+                                                                 : peakTemperature;
+            }
+        }
+        if (firstSlot >= 0 && firstSlot != lastSlot
+            && totalJiffies[firstSlot] >= 0 && totalJiffies[lastSlot] >= 0) {
+            long total = totalJiffies[lastSlot] - totalJiffies[firstSlot];
+            if (total > 0) {
+                summary.busyPercent = 100.0 * (busyJiffies[lastSlot] - busyJiffies[firstSlot]) / total;
+            }
+            for (int i = 0; i < cpus.length; i++) {
+                int first = firstSlot * cpus.length + i;
+                int last = lastSlot * cpus.length + i;
+                // CPUs going offline or online change the domain's total
+                long domainTotal = domainTotalJiffies[last] - domainTotalJiffies[first];
+                long domainBusy = domainBusyJiffies[last] - domainBusyJiffies[first];
+                if (domainTotal > 0 && domainBusy >= 0) {
+                    summary.busyPercents[i] = 100.0 * domainBusy / domainTotal;
+                }
+            }
+        }
+        return summary;
+    }
+
+    private static RandomAccessFile open(String path) {
+        try {
+            return new RandomAccessFile(path, "r");
+        } catch (IOException e) {
+            Log.d(TAG, "Not sampling " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void close(RandomAccessFile[] files) {
+        for (RandomAccessFile file : files) {
+            try {
+                if (file != null) {
+                    file.close();
+                }
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static List<Integer> readCpuList(String path) {
+        // Format is a space separated list of CPUs, e.g. "0 1 2 3"
+        List<Integer> result = new ArrayList<Integer>();
+        RandomAccessFile file = open(path);
+        if (file == null) {
+            return result;
+        }
+        try {
+            String line = file.readLine();
+            if (line != null) {
+                for (String cpu : line.trim().split("\\s+")) {
+                    if (!cpu.isEmpty()) {
+                        result.add(Integer.parseInt(cpu));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "Could not read " + path + ": " + e.getMessage());
+        } finally {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+        return result;
+    }
+
+    // Read a single integer value, returning -1 on failure
+    private long readLong(RandomAccessFile file) {
+        try {
+            file.seek(0);
+            int length = file.read(readBuffer);
+            long value = 0;
+            boolean negative = false;
+            boolean found = false;
+            for (int i = 0; i < length; i++) {
+                byte b = readBuffer[i];
+                if (b == '-' && !found) {
+                    negative = true;
+                } else if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    found = true;
+                } else if (found) {
+                    break;
+                }
+            }
+            return found ? (negative ? -value : value) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // Parse /proc/stat: the aggregate "cpu" line into statValues and the
+    // per-CPU lines into the busy and total jiffies of their domains
+    private boolean readStat(RandomAccessFile file) {
+        try {
+            file.seek(0);
+            int length = 0;
+            int count;
+            while (length < readBuffer.length
+                   && (count = file.read(readBuffer, length, readBuffer.length - length)) > 0) {
+                length += count;
+            }
+            Arrays.fill(currentDomainBusy, 0);
+            Arrays.fill(currentDomainTotal, 0);
+
+            boolean found = false;
+            int i = 0;
+            // The CPU lines come first; stop at the first other line
+            while (i + 3 < length && readBuffer[i] == 'c' && readBuffer[i + 1] == 'p'
+                   && readBuffer[i + 2] == 'u') {
+                i += 3;
+                int cpu = -1;  // -1 for the aggregate line
+                while (i < length && readBuffer[i] >= '0' && readBuffer[i] <= '9') {
+                    cpu = Math.max(cpu, 0) * 10 + (readBuffer[i] - '0');
+                    i++;
+                }
+
+                int field = -1;
+                long value = 0;
+                long busy = 0;
+                long total = 0;
+                for (; i < length && readBuffer[i] != '\n'; i++) {
+                    byte b = readBuffer[i];
+                    if (b >= '0' && b <= '9') {
+                        if (readBuffer[i - 1] == ' ') {
+                            field++;
+                            value = 0;
+                        }
+                        value = value * 10 + (b - '0');
+                    }
+                    boolean endOfValue = field >= 0 && b >= '0' && b <= '9'
+                                         && (i + 1 >= length || readBuffer[i + 1] < '0' || readBuffer[i + 1] > '9');
+                    if (endOfValue && field < STAT_FIELDS) {
+                        total += value;
+                        // idle and iowait
+                        if (field != 3 && field != 4) {
+                            busy += value;
+                        }
+                        if (cpu < 0) {
+                            statValues[field] = value;
+                        }
+                    }
+                }
+                i++;  // skip the newline
+
+                if (cpu < 0) {
+                    found = field >= STAT_FIELDS - 1;
+                } else if (cpu < cpuDomains.length && cpuDomains[cpu] >= 0) {
+                    currentDomainBusy[cpuDomains[cpu]] += busy;
+                    currentDomainTotal[cpuDomains[cpu]] += total;
+                }
+            }
+            return found;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*    Copyright 2013-2016 ARM Limited
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+*/
+
+package com.arm.wlauto.uiauto;
+
+import android.os.Process;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * Writes UX actions into the kernel trace buffer as atrace async sections,
+ * so that they appear in trace-cmd and systrace captures in the same clock
+ * domain as scheduler, DVFS and binder events:
+ *
+ *     tracing_mark_write: S|<pid>|UX_PERF:<action>|<cookie>
+ *     tracing_mark_write: F|<pid>|UX_PERF:<action>|<cookie>
+ *
+ * The trace_marker file is written directly if it can be opened. Otherwise
+ * the sections are emitted through android.os.Trace, in which case they are
+ * only recorded if app tracing is enabled for the uiauto package (e.g. with
+ * "atrace --app=com.arm.wlauto.uiauto.*").
+ */
+public class TraceMarker {
+
+    public static final String PREFIX = "UX_PERF:";
+
+    private static final String TAG = "TraceMarker";
+    private static final String[] MARKER_PATHS = {
+        "/sys/kernel/debug/tracing/trace_marker",
+        "/sys/kernel/tracing/trace_marker",
+    };
+    // android.os.Trace.TRACE_TAG_APP
+    private static final long TRACE_TAG_APP = 1L << 12;
+
+    private static FileOutputStream marker;
+    private static boolean initialized;
+
+    public static void beginAsyncSection(String name, int cookie) {
+        write('S', PREFIX + name, cookie);
+    }
+
+    public static void endAsyncSection(String name, int cookie) {
+        write('F', PREFIX + name, cookie);
+    }
+
+    private static synchronized void write(char kind, String name, int cookie) {
+        if (!initialized) {
+            initialized = true;
+            for (String path : MARKER_PATHS) {
+                try {
+                    marker = new FileOutputStream(path);
+                    break;
+                } catch (IOException e) {
+                    // Try the next location
+                }
+            }
+            if (marker == null) {
+                Log.w(TAG, "trace_marker is not writable; falling back to android.os.Trace");
+            }
+        }
+
+        if (marker != null) {
+            String entry = kind + "|" + Process.myPid() + "|" + name + "|" + cookie;
+            try {
+                marker.write(entry.getBytes());
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write to trace_marker; falling back to android.os.Trace", e);
+                marker = null;
+            }
+        }
+        writeAsyncSection(kind, name, cookie);
+    }
+
+    // The async section methods of android.os.Trace are hidden before API 29
+    // so they are always looked up reflectively.
+    private static void writeAsyncSection(char kind, String name, int cookie) {
+        String methodName = kind == 'S' ? "asyncTraceBegin" : "asyncTraceEnd";
+        try {
+            Method method = Trace.class.getMethod(methodName, long.class, String.class, int.class);
+            method.invoke(null, TRACE_TAG_APP, name, cookie);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to emit trace section " + name, e);
+        }
+    }
+}
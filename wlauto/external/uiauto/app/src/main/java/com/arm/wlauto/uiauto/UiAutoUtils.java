@@ -15,10 +15,125 @@
 
 package com.arm.wlauto.uiauto;
 
+import android.app.Instrumentation;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
 
 public final class UiAutoUtils {
 
+    /**
+     * Run a shell command and return its output, or whatever output was
+     * read before it failed.
+     *
+     * Commands are run through UiAutomation.executeShellCommand() (API 21+)
+     * so that they have shell privileges; on older releases they are run
+     * directly, which requires the uiauto package to hold the relevant
+     * permissions. On API 21+ the command is not run through a shell, so
+     * shell syntax such as quoting and redirection is not available.
+     */
+    public static String executeShellCommand(Instrumentation instrumentation, String command) {
+        StringBuilder output = new StringBuilder();
+        try {
+            BufferedReader reader =
+                new BufferedReader(new InputStreamReader(openShellCommand(instrumentation, command)));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+            reader.close();
+        } catch (Exception e) {
+            Log.w("UiAutoUtils", "Failed to run \"" + command + "\"", e);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Start a shell command as executeShellCommand() does, and return a
+     * stream of its output as it is produced, e.g. to follow logcat. Closing
+     * the stream ends the command the next time it writes.
+     */
+    public static InputStream openShellCommand(Instrumentation instrumentation, String command)
+            throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            ParcelFileDescriptor fd = instrumentation.getUiAutomation().executeShellCommand(command);
+            return new ParcelFileDescriptor.AutoCloseInputStream(fd);
+        }
+        return Runtime.getRuntime().exec(new String[] {"sh", "-c", command}).getInputStream();
+    }
+
+    /**
+     * Construct a logcat command that prints the lines logged since the given
+     * System.currentTimeMillis() timestamp, exiting once they have been read
+     * if dump is set.
+     *
+     * "-v epoch" and "-T <time>" need Android 7; older releases print the
+     * whole buffer in the threadtime format, so the caller must skip the
+     * lines getLogcatTime() places before since.
+     */
+    public static String createLogcatCommand(long since, boolean dump) {
+        String command = dump ? "logcat -d" : "logcat";
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return String.format(Locale.US, "%s -v epoch -T %.3f", command, since / 1000.0);
+        }
+        return command + " -v threadtime";
+    }
+
+    /**
+     * The System.currentTimeMillis() time a line printed by the
+     * createLogcatCommand() command was logged at, or -1 if it has no
+     * timestamp.
+     */
+    public static long getLogcatTime(String line) {
+        String[] fields = line.trim().split("\\s+", 3);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // <seconds>.<millis> <pid> <tid> <level> <tag>: <message>
+            try {
+                return (long) (Double.parseDouble(fields[0]) * 1000);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        // <MM-dd> <HH:mm:ss.SSS> <pid> <tid> <level> <tag>: <message>
+        if (fields.length < 2) {
+            return -1;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        Date logged;
+        try {
+            logged = format.parse(fields[0] + " " + fields[1]);
+        } catch (ParseException e) {
+            return -1;
+        }
+        // The year is not logged; lines from late last year are placed in it
+        Calendar now = Calendar.getInstance();
+        Calendar time = Calendar.getInstance();
+        time.setTime(logged);
+        time.set(Calendar.YEAR, now.get(Calendar.YEAR));
+        if (time.after(now) && time.get(Calendar.MONTH) > now.get(Calendar.MONTH)) {
+            time.add(Calendar.YEAR, -1);
+        }
+        return time.getTimeInMillis();
+    }
+
+    /** The process ID of a line printed by the createLogcatCommand() command. */
+    public static String getLogcatPid(String line) {
+        String[] fields = line.trim().split("\\s+", 4);
+        int index = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? 1 : 2;
+        return fields.length > index ? fields[index] : null;
+    }
+
     /** Construct launch command of an application. */
     public static String createLaunchCommand(Bundle parameters) {
         String launchCommand;
@@ -15,12 +15,32 @@
 
 package com.arm.wlauto.uiauto;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Rect;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.uiautomator.By;
+import android.support.test.uiautomator.UiObject;
+import android.support.test.uiautomator.UiObjectNotFoundException;
+import android.support.test.uiautomator.UiScrollable;
+import android.support.test.uiautomator.UiSelector;
+import android.support.test.uiautomator.Until;
+import android.util.Log;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 public class UxPerfUiAutomation extends BaseUiAutomation {
 
+    public static final int SHARE_SHEET_MAX_SWIPES = 10;
+    // Time without UI updates after which the target of a share is considered ready
+    public static final long SHARE_QUIET_MILLIS = 500;
+    public static final long SHARE_READY_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final String SHARE_TARGET_PREFS = "share_targets";
+
     protected String packageName;
     protected String packageID;
 
@@ -67,4 +87,129 @@ public class UxPerfUiAutomation extends BaseUiAutomation {
             this.percent = percent;
         }
     }
+
+    /**
+     * Share content from the application in the foreground with another one
+     * through the share sheet, timing each hop as a separate action:
+     *
+     * share_<tag>_sheet          from tapping shareButton until the target
+     *                            has been found in the share sheet
+     * share_<tag>_cold_start or  from tapping the target until a window of
+     * share_<tag>_warm_start     targetPackage is shown; cold if its process
+     *                            was not running beforehand
+     * share_<tag>_content_ready  until the UI of the target stops changing
+     *
+     * share_<tag> spans all three. The share sheet is the first of
+     * sheetSelectors found on screen.
+     *
+     * How far the share sheet had to be scrolled to reveal the target, and
+     * where the target was then, are remembered across iterations so that
+     * the target can be tapped without searching for it while the sheet
+     * stays the same.
+     */
+    public void shareUsingApp(UiObject shareButton, String appName, String targetPackage,
+                              String tag, UiSelector... sheetSelectors) throws Exception {
+        String testTag = "share_" + tag;
+        ActionLogger shareLogger = new ActionLogger(testTag, parameters);
+        ActionLogger logger = new ActionLogger(testTag + "_sheet", parameters);
+        shareLogger.start();
+        logger.start();
+        shareButton.click();
+        UiScrollable sheet = new UiScrollable(waitForAny(uiAutoTimeout, sheetSelectors));
+        UiObject target =
+            mDevice.findObject(new UiSelector().text(appName)
+                                               .className("android.widget.TextView"));
+        Rect targetBounds = findShareTarget(sheet, target, appName);
+        logger.stop();
+
+        // pidof prints nothing if the target is not running
+        String pids = UiAutoUtils.executeShellCommand(mInstrumentation, "pidof " + targetPackage);
+        boolean warm = pids.trim().matches("\\d+(\\s+\\d+)*");
+        logger = new ActionLogger(testTag + (warm ? "_warm_start" : "_cold_start"), parameters);
+        logger.start();
+        mDevice.click(targetBounds.centerX(), targetBounds.centerY());
+        if (!mDevice.wait(Until.hasObject(By.pkg(targetPackage)), SHARE_READY_TIMEOUT_MILLIS)) {
+            throw new UiObjectNotFoundException("Could not find " + targetPackage + " after sharing");
+        }
+        logger.stop();
+
+        logger = new ActionLogger(testTag + "_content_ready", parameters);
+        logger.start();
+        waitForUiIdle(SHARE_QUIET_MILLIS, SHARE_READY_TIMEOUT_MILLIS);
+        logger.stop();
+        shareLogger.stop();
+    }
+
+    /**
+     * Wait until no UI updates have been seen for quietMillis. Returns false,
+     * rather than throwing, if the UI is still changing after timeoutMillis as
+     * some applications animate indefinitely.
+     */
+    public boolean waitForUiIdle(long quietMillis, long timeoutMillis) {
+        try {
+            mInstrumentation.getUiAutomation().waitForIdle(quietMillis, timeoutMillis);
+            return true;
+        } catch (TimeoutException e) {
+            Log.w("UxPerfUiAutomation", "UI still changing after " + timeoutMillis + " ms");
+            return false;
+        }
+    }
+
+    // Return the visible bounds of the target, scrolling the share sheet to
+    // reveal it if needed
+    private Rect findShareTarget(UiScrollable sheet, UiObject target, String appName)
+            throws Exception {
+        SharedPreferences prefs = mInstrumentation.getContext()
+                .getSharedPreferences(SHARE_TARGET_PREFS, Context.MODE_PRIVATE);
+        int cachedSwipes = prefs.getInt(appName + "_swipes", -1);
+        if (cachedSwipes >= 0) {
+            for (int i = 0; i < cachedSwipes; i++) {
+                sheet.swipeUp(10);
+            }
+            int x = prefs.getInt(appName + "_x", -1);
+            int y = prefs.getInt(appName + "_y", -1);
+            if (target.exists() && target.getVisibleBounds().contains(x, y)) {
+                return target.getVisibleBounds();
+            }
+            // The sheet has changed, e.g. its targets have been reordered
+            for (int i = 0; i < cachedSwipes; i++) {
+                sheet.swipeDown(10);
+            }
+        }
+
+        // On some devices the sheet has many entries, so we have to swipe up to make
+        // sure all the entries are visible. This will also stop entries at the bottom being
+        // obscured by the bottom action bar.
+        sheet.swipeUp(10);
+        int swipes = 1;
+        while (!target.exists()) {
+            if (swipes >= SHARE_SHEET_MAX_SWIPES) {
+                throw new UiObjectNotFoundException("Could not find " + appName + " in the share sheet");
+            }
+            sheet.swipeUp(10);
+            swipes++;
+        }
+
+        Rect bounds = target.getVisibleBounds();
+        prefs.edit()
+             .putInt(appName + "_swipes", swipes)
+             .putInt(appName + "_x", bounds.centerX())
+             .putInt(appName + "_y", bounds.centerY())
+             .commit();
+        return bounds;
+    }
+
+    // Wait for any of the selectors to match and return the first that does
+    private UiSelector waitForAny(long timeout, UiSelector... selectors) throws Exception {
+        long deadline = System.currentTimeMillis() + timeout;
+        do {
+            for (UiSelector selector : selectors) {
+                if (mDevice.findObject(selector).exists()) {
+                    return selector;
+                }
+            }
+            SystemClock.sleep(100);
+        } while (System.currentTimeMillis() < deadline);
+        throw new UiObjectNotFoundException("Could not find the share sheet");
+    }
 }
@@ -73,6 +73,14 @@ class CpuStatesProcessor(ResultProcessor):
     trace. This is usually due to core state being unknown at the beginning of the trace,
     but may also be caused by dropped events in the middle of the trace.
 
+    *cpustate_actions.csv*
+
+    If the workload marks UX actions in the trace (this is done by uiauto
+    workloads when ``markers_enabled`` is set), this reports the same
+    residencies as *cpustate.csv* separately for each action. Since the
+    actions are written into the trace, they are in the same clock domain as
+    the power events and no clock offset estimation is needed.
+
     '''
 
     parameters = [
@@ -135,7 +143,13 @@ class CpuStatesProcessor(ResultProcessor):
                   If this parameter is set to ``True``, the processor will assuming that cores are
                   running prior to the begining of the issue, and they will leave unknown state on
                   the first frequency transition.
-                  """)
+                  """),
+        Parameter('report_actions', kind=bool, default=True,
+                  description="""
+                  Report power state residencies for each UX action marked in the trace
+                  in *cpustate_actions.csv*. This has no effect for workloads that do not
+                  mark actions.
+                  """),
     ]
 
     def validate(self):
@@ -230,9 +244,11 @@ class CpuStatesProcessor(ResultProcessor):
             max_freq_list=self.max_freq_list,
             start_marker_handling=self.start_marker_handling,
             no_idle=self.no_idle,
+            report_actions=self.report_actions,
         )
         parallel_report = reports.pop(0)
         powerstate_report = reports.pop(0)
+        action_report = reports.pop(0) if self.report_actions else None
         if parallel_report is None:
             self.logger.warning('No power state reports generated; are power '
                                 'events enabled in the trace?')
@@ -241,11 +257,13 @@ class CpuStatesProcessor(ResultProcessor):
             self.logger.debug('Reports generated.')
 
         iteration_id = (context.spec.id, context.spec.label, context.current_iteration)
-        self.iteration_reports[iteration_id] = (parallel_report, powerstate_report)
+        self.iteration_reports[iteration_id] = (parallel_report, powerstate_report, action_report)
         if self.write_iteration_reports:
             self.logger.debug('Writing iteration reports')
             parallel_report.write(os.path.join(context.output_directory, 'parallel.csv'))
             powerstate_report.write(os.path.join(context.output_directory, 'cpustates.csv'))
+            if action_report and action_report.action_stats:
+                action_report.write(os.path.join(context.output_directory, 'cpustate_actions.csv'))
 
     def process_run_result(self, result, context):  # pylint: disable=too-many-locals
         if not self.iteration_reports:
@@ -254,9 +272,10 @@ class CpuStatesProcessor(ResultProcessor):
 
         parallel_rows = []
         powerstate_rows = []
+        action_rows = []
         for iteration_id, reports in self.iteration_reports.iteritems():
             spec_id, workload, iteration = iteration_id
-            parallel_report, powerstate_report = reports
+            parallel_report, powerstate_report, action_report = reports
             for record in parallel_report.values:
                 parallel_rows.append([spec_id, workload, iteration] + record)
             for state in sorted(powerstate_report.state_stats):
@@ -264,6 +283,13 @@ class CpuStatesProcessor(ResultProcessor):
                 powerstate_rows.append([spec_id, workload, iteration, state] +
                                        ['{:.3f}'.format(s if s is not None else 0)
                                            for s in stats])
+            if action_report:
+                for action, state_stats in action_report.action_stats.iteritems():
+                    for state in sorted(state_stats):
+                        stats = state_stats[state]
+                        action_rows.append([spec_id, workload, iteration, action, state] +
+                                           ['{:.3f}'.format(s if s is not None else 0)
+                                               for s in stats])
 
         with open(os.path.join(context.output_directory, 'parallel.csv'), 'w') as wfh:
             writer = csv.writer(wfh)
@@ -279,3 +305,12 @@ class CpuStatesProcessor(ResultProcessor):
                         for i, c in enumerate(powerstate_report.core_names)]
             writer.writerow(headers)
             writer.writerows(powerstate_rows)
+
+        if action_rows:
+            with open(os.path.join(context.output_directory, 'cpustate_actions.csv'), 'w') as wfh:
+                writer = csv.writer(wfh)
+                headers = ['id', 'workload', 'iteration', 'action', 'state']
+                headers += ['{} CPU{}'.format(c, i)
+                            for i, c in enumerate(powerstate_report.core_names)]
+                writer.writerow(headers)
+                writer.writerows(action_rows)
@@ -16,9 +16,13 @@
 import os
 import csv
 import re
+from collections import OrderedDict
+from copy import deepcopy
 
 from wlauto import ResultProcessor, settings, instrumentation
 from wlauto.exceptions import ConfigError, ResultProcessorError
+from wlauto.utils.trace_cmd import (parse_ux_action_marker, split_trace_event_line,
+                                    split_trace_event_preamble)
 
 
 class DVFS(ResultProcessor):
@@ -31,6 +35,10 @@ class DVFS(ResultProcessor):
     spent in each of the DVFS frequency states (P-states), as well as percentage
     of the time spent in idle, during the execution of the workload.
 
+    If the workload marks UX actions in the trace (uiauto workloads do so when
+    ``markers_enabled`` is set), a ``dvfs_actions.csv`` is also generated
+    with the same residencies reported separately for each action.
+
     .. note:: ``trace-cmd`` instrument *MUST* be enabled in the instrumentation,
               and at least ``'power*'`` events must be enabled.
 
@@ -57,6 +65,9 @@ class DVFS(ResultProcessor):
         self.numberofcores_in_cluster = []
         self.minimum_frequency_cluster = []
         self.idlestate_description = {}
+        self.action_markers = []  # (timestamp, action, cookie, is_start)
+        self.action_intervals = []  # (action, start, end)
+        self.action_time_spent = OrderedDict()
 
     def validate(self):
         if not instrumentation.instrument_is_installed('trace-cmd'):
@@ -129,6 +140,8 @@ class DVFS(ResultProcessor):
             self.calculate()
             self.percentage()
             self.generate_csv(context)
+            if self.action_intervals:
+                self.generate_action_csv(context)
             self.logger.debug('Completed result_processor "dvfs"')
         else:
             self.logger.debug('trace.txt not found.')
@@ -146,6 +159,9 @@ class DVFS(ResultProcessor):
         self.cpuid_time_map = {}
         self.cpu_freq_time_spent = {}
         self.cpuids_of_clusters = []
+        self.action_markers = []
+        self.action_intervals = []
+        self.action_time_spent = OrderedDict()
         self.parse()  # Parse trace.txt generated from trace-cmd instrumentation
         # Initialize the states of each core of clusters and frequency of
         # each clusters with its minimum freq
@@ -173,6 +189,17 @@ class DVFS(ResultProcessor):
             if 0 not in self.unique_freq():
                 self.cpu_freq_time_spent["cpu{}".format(i)][0] = 0
 
+        # Pair up the start and end markers of each UX action
+        open_actions = {}
+        for timestamp, action, cookie, is_start in self.action_markers:
+            if is_start:
+                open_actions[cookie] = (action, timestamp)
+            elif cookie in open_actions:
+                action, start = open_actions.pop(cookie)
+                self.action_intervals.append((action, start, timestamp))
+                if action not in self.action_time_spent:
+                    self.action_time_spent[action] = deepcopy(self.cpu_freq_time_spent)
+
     def update_cluster_freq(self, state, cpu_id):
         """ Update the cluster frequency and current cluster"""
         # For IKS devices cluster changes only possible when
@@ -282,12 +309,25 @@ class DVFS(ResultProcessor):
                 if line.find("TRACE_MARKER_STOP") != -1:
                     stop_trace = True
                 if start_trace and not stop_trace:
+                    if 'UX_PERF:' in line:
+                        self.parse_action_marker(line)
+                        continue
                     match = pattern.search(line)
                     if match:
                         self.timestamp.append(float(match.group('time')))
                         self.state_time_map[float(match.group('time'))] = int(match.group('state'))
                         self.cpuid_time_map[float(match.group('time'))] = int(match.group('cpu_id'))
 
+    def parse_action_marker(self, line):
+        parts = split_trace_event_line(line)
+        if len(parts) != 3:
+            return
+        marker = parse_ux_action_marker(parts[2])
+        preamble = split_trace_event_preamble(parts[0])
+        if marker and preamble:
+            timestamp = float(preamble[2])
+            self.action_markers.append((timestamp,) + marker)
+
     def get_state_name(self, state):
         if state in self.power_state:
             return "powerstate"
@@ -296,81 +336,113 @@ class DVFS(ResultProcessor):
         else:
             return "freqstate"
 
-    def populate(self, time1, time2):
+    def populate(self, time1, time2, time_spent=None):
+        if time_spent is None:
+            time_spent = self.cpu_freq_time_spent
         diff = time2 - time1
         for cluster, states_list in enumerate(self.currentstates_of_clusters):
             for k, j in enumerate(states_list):
                 if self.device.scheduler == 'iks' and cluster == 1:
-                    self.cpu_freq_time_spent["cpu{}".format(self.cpuids_of_clusters[cluster][k] + len(self.currentstates_of_clusters[0]))][j] += diff
+                    time_spent["cpu{}".format(self.cpuids_of_clusters[cluster][k] + len(self.currentstates_of_clusters[0]))][j] += diff
                 else:
-                    self.cpu_freq_time_spent["cpu{}".format(self.cpuids_of_clusters[cluster][k])][j] += diff
+                    time_spent["cpu{}".format(self.cpuids_of_clusters[cluster][k])][j] += diff
+
+    def populate_actions(self, time1, time2):
+        """Add the part of the interval that overlaps each UX action to that action."""
+        for action, start, end in self.action_intervals:
+            overlap_start = max(time1, start)
+            overlap_end = min(time2, end)
+            if overlap_end > overlap_start:
+                self.populate(overlap_start, overlap_end, self.action_time_spent[action])
 
     def calculate(self):
         for i in range(len(self.timestamp) - 1):
             self.update_cluster_freq(self.state_time_map[self.timestamp[i]], self.cpuid_time_map[self.timestamp[i]])
             self.update_state(self.state_time_map[self.timestamp[i]], self.cpuid_time_map[self.timestamp[i]])
             self.populate(self.timestamp[i], self.timestamp[i + 1])
+            if self.action_intervals:
+                self.populate_actions(self.timestamp[i], self.timestamp[i + 1])
 
-    def percentage(self):
+    def percentage(self, time_spent=None):
         """Normalize the result with total execution time."""
-        temp = self.cpu_freq_time_spent.copy()
-        for i in self.cpu_freq_time_spent:
+        if time_spent is None:
+            time_spent = self.cpu_freq_time_spent
+        temp = time_spent.copy()
+        for i in time_spent:
             total = 0
-            for j in self.cpu_freq_time_spent[i]:
-                total += self.cpu_freq_time_spent[i][j]
-            for j in self.cpu_freq_time_spent[i]:
+            for j in time_spent[i]:
+                total += time_spent[i][j]
+            for j in time_spent[i]:
                 if total != 0:
-                    temp[i][j] = self.cpu_freq_time_spent[i][j] * 100 / total
+                    temp[i][j] = time_spent[i][j] * 100 / total
                 else:
                     temp[i][j] = 0
         return temp
 
-    def generate_csv(self, context):  # pylint: disable=R0912,R0914
+    def generate_csv(self, context):
         """ generate the '''dvfs.csv''' with the state, frequency and cores """
         temp = self.percentage()
-        total_state = self.unique_freq()
         offline_value = -1
+        rows = []
+        for i in sorted(self.unique_freq()):
+            if i != offline_value:  # the offline state is only reported if a core was offline
+                rows.append([context.result.spec.label, context.result.iteration] + self.get_state_row(temp, i))
+        check_off = True  # Checking whether core is OFFLINE
+        for i in range(self.device.number_of_cores * self.multiply_factor):
+            temp_val = "{0:.3f}".format(temp["cpu{}".format(i)][offline_value])
+            if float(temp_val) > 1:
+                check_off = False
+                break
+        if check_off is False:
+            rows.append([context.result.spec.label, context.result.iteration] +
+                        self.get_state_row(temp, offline_value, "OFFLINE"))
+        self.write_csv(self.outfile, ['workload', 'iteration'], rows)
+
+    def generate_action_csv(self, context):
+        """ generate the '''dvfs_actions.csv''' with the residencies during each UX action """
+        offline_value = -1
+        rows = []
+        for action, time_spent in self.action_time_spent.iteritems():
+            temp = self.percentage(time_spent)
+            for i in sorted(self.unique_freq()):
+                if i != offline_value:
+                    rows.append([context.result.spec.label, context.result.iteration, action] +
+                                self.get_state_row(temp, i))
+        outfile = os.path.join(settings.output_directory, 'dvfs_actions.csv')
+        self.write_csv(outfile, ['workload', 'iteration', 'action'], rows)
+
+    def get_state_row(self, temp, state, name=None):
+        """ the state name followed by the percentage of time each core spent in it """
         ghz_conversion = 1000000
         mhz_conversion = 1000
-        with open(self.outfile, 'a+') as f:
+        if name is None:
+            if "state{}".format(state) in self.idlestate_description:
+                name = self.idlestate_description["state{}".format(state)]
+            else:
+                state_value = float(state)
+                if state_value / ghz_conversion >= 1:
+                    name = "{} Ghz".format(state_value / ghz_conversion)
+                else:
+                    name = "{} Mhz".format(state_value / mhz_conversion)
+        row = [name]
+        for j in range(self.device.number_of_cores * self.multiply_factor):
+            row.append("{0:.3f}".format(temp["cpu{}".format(j)][state]))
+        return row
+
+    def write_csv(self, outfile, header, rows):
+        """ append the rows to outfile, writing the header first if the file is empty """
+        with open(outfile, 'a+') as f:
             writer = csv.writer(f, delimiter=',')
             reader = csv.reader(f)
             # Create the header in the format below
-            # workload name, iteration, state, A7 CPU0,A7 CPU1,A7 CPU2,A7 CPU3,A15 CPU4,A15 CPU5
+            # <header>, state, A7 CPU0,A7 CPU1,A7 CPU2,A7 CPU3,A15 CPU4,A15 CPU5
             if sum(1 for row in reader) == 0:
-                header_row = ['workload', 'iteration', 'state']
+                header_row = header + ['state']
                 count = 0
                 for cluster, states_list in enumerate(self.currentstates_of_clusters):
                     for dummy_index in range(len(states_list)):
                         header_row.append("{} CPU{}".format(self.corename_of_clusters[cluster], count))
                         count += 1
                 writer.writerow(header_row)
-            if offline_value in total_state:
-                total_state.remove(offline_value)  # remove the offline state
-            for i in sorted(total_state):
-                temprow = []
-                temprow.extend([context.result.spec.label, context.result.iteration])
-                if "state{}".format(i) in self.idlestate_description:
-                    temprow.append(self.idlestate_description["state{}".format(i)])
-                else:
-                    state_value = float(i)
-                    if state_value / ghz_conversion >= 1:
-                        temprow.append("{} Ghz".format(state_value / ghz_conversion))
-                    else:
-                        temprow.append("{} Mhz".format(state_value / mhz_conversion))
-                for j in range(self.device.number_of_cores * self.multiply_factor):
-                    temprow.append("{0:.3f}".format(temp["cpu{}".format(j)][i]))
-                writer.writerow(temprow)
-            check_off = True  # Checking whether core is OFFLINE
-            for i in range(self.device.number_of_cores * self.multiply_factor):
-                temp_val = "{0:.3f}".format(temp["cpu{}".format(i)][offline_value])
-                if float(temp_val) > 1:
-                    check_off = False
-                    break
-            if check_off is False:
-                temprow = []
-                temprow.extend([context.result.spec.label, context.result.iteration])
-                temprow.append("OFFLINE")
-                for i in range(self.device.number_of_cores * self.multiply_factor):
-                    temprow.append("{0:.3f}".format(temp["cpu{}".format(i)][offline_value]))
-                writer.writerow(temprow)
+            for row in rows:
+                writer.writerow(row)
@@ -0,0 +1,102 @@
+#    Copyright 2013-2015 ARM Limited
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+
+# pylint: disable=R0201
+import os
+import shutil
+import tarfile
+import tempfile
+from StringIO import StringIO
+from unittest import TestCase
+
+from nose.tools import assert_equal, assert_not_equal, assert_true  # pylint: disable=E0611
+
+from wlauto.common.android.workload import (_is_last_iteration, _get_common_directory, _get_host_hashes,
+                                            _write_tarball_delta)
+
+
+class Stub(object):
+
+    def __init__(self, **kwargs):
+        self.__dict__.update(kwargs)
+
+
+class TestIsLastIteration(TestCase):
+
+    def test_is_last_iteration(self):
+        spec = Stub(number_of_iterations=3)
+        assert_true(not _is_last_iteration(Stub(spec=spec, current_iteration=2)))
+        assert_true(_is_last_iteration(Stub(spec=spec, current_iteration=3)))
+        assert_true(_is_last_iteration(Stub(spec=Stub(number_of_iterations=0), current_iteration=1)))
+        assert_true(_is_last_iteration(Stub(spec=None, current_iteration=1)))
+
+
+
+
+class TestCommonDirectory(TestCase):
+
+    def test_common_directory(self):
+        assert_equal(_get_common_directory(['/sdcard/wa/a.jpg']), '/sdcard/wa')
+        assert_equal(_get_common_directory(['/sdcard/wa/a.jpg', '/sdcard/wa/b.jpg']), '/sdcard/wa')
+        # A shared prefix that is not a whole directory name is not a directory
+        assert_equal(_get_common_directory(['/sdcard/wa-1/a.jpg', '/sdcard/wa-2/b.jpg']), '/sdcard')
+
+
+class TestTarballDelta(TestCase):
+
+    def setUp(self):
+        self.tempdir = tempfile.mkdtemp()
+        self.tarball = os.path.join(self.tempdir, 'assets.tar')
+        with tarfile.open(self.tarball, 'w') as tar:
+            self.add(tar, './com.foo', tarfile.DIRTYPE)
+            self.add(tar, './com.foo/a', data='a')
+            self.add(tar, './com.foo/b', data='bb')
+            self.add(tar, './com.foo/c', tarfile.LNKTYPE, linkname='./com.foo/a')
+            self.add(tar, './com.foo/d', tarfile.SYMTYPE, linkname='b')
+            self.add(tar, './com.foo/e', tarfile.LNKTYPE, linkname='./com.foo/b')
+
+    def tearDown(self):
+        shutil.rmtree(self.tempdir)
+
+    def add(self, tar, name, type=tarfile.REGTYPE, data='', linkname=''):  # pylint: disable=W0622
+        member = tarfile.TarInfo(name)
+        member.type = type
+        member.linkname = linkname
+        member.size = len(data)
+        tar.addfile(member, StringIO(data) if data else None)
+
+    def test_host_hashes(self):
+        hashes = _get_host_hashes(self.tarball, tarball=True)
+        assert_equal(sorted(hashes), ['com.foo/a', 'com.foo/b', 'com.foo/c', 'com.foo/e'])
+        assert_equal(hashes['com.foo/c'], hashes['com.foo/a'])
+        assert_equal(hashes['com.foo/e'], hashes['com.foo/b'])
+        assert_not_equal(hashes['com.foo/a'], hashes['com.foo/b'])
+
+    def test_delta(self):
+        delta = os.path.join(self.tempdir, 'delta.tar')
+        _write_tarball_delta(self.tarball, delta, set(['com.foo/b', 'com.foo/c', 'com.foo/e']))
+        with tarfile.open(delta) as tar:
+            members = dict((m.name, m) for m in tar.getmembers())
+            assert_equal(sorted(members), ['./com.foo', './com.foo/b', './com.foo/c',
+                                           './com.foo/d', './com.foo/e'])
+            # c links to a, which is not in the delta, so it is deployed as a copy of it
+            assert_true(members['./com.foo/c'].isfile())
+            assert_true(members['./com.foo/d'].issym())
+            assert_true(members['./com.foo/e'].islnk())
+            tar.extractall(os.path.join(self.tempdir, 'device'))
+        for name, content in [('b', 'bb'), ('c', 'a'), ('e', 'bb')]:
+            with open(os.path.join(self.tempdir, 'device', 'com.foo', name)) as fh:
+                assert_equal(fh.read(), content)
@@ -0,0 +1,121 @@
+#    Copyright 2013-2015 ARM Limited
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+
+# pylint: disable=R0201
+import os
+import re
+import json
+import shutil
+import posixpath
+import tempfile
+import zipfile
+from unittest import TestCase
+
+from nose.tools import assert_equal, assert_not_equal, assert_true  # pylint: disable=E0611
+
+from wlauto.utils.android import get_apk_digest, ApkInstallLedger
+
+
+class StubDevice(object):
+    """Answers the ledger's queries from the ``ledger`` and ``listings`` it holds."""
+
+    path = posixpath
+    working_directory = '/data/local/tmp/wa-working'
+
+    def __init__(self, ledger='', listings=None):
+        self.ledger = ledger
+        self.listings = listings or {}
+        self.commands = []
+
+    def execute(self, command):
+        self.commands.append(command)
+        lines = [ApkInstallLedger.marker, self.ledger]
+        for package in re.findall(r'pm path ([^);\s]+)', command):
+            lines.append(ApkInstallLedger.marker + package)
+            lines.extend(self.listings.get(package, []))
+        return '\n'.join(lines) + '\n'
+
+    def push_file(self, source, dest):
+        with open(source) as fh:
+            self.ledger = fh.read()
+
+
+class TestApkInstallLedger(TestCase):
+
+    listing = '-rw-r--r-- system system 1234 2016-01-01 00:00 /data/app/com.foo-1/base.apk'
+
+    def setUp(self):
+        self.tempdir = tempfile.mkdtemp()
+
+    def tearDown(self):
+        shutil.rmtree(self.tempdir)
+
+    def write_apk(self, name, content, cert='cert'):
+        path = os.path.join(self.tempdir, name)
+        with zipfile.ZipFile(path, 'w') as apk:
+            apk.writestr('classes.dex', content)
+            if cert is not None:
+                apk.writestr('META-INF/CERT.RSA', cert)
+        return path
+
+    def test_apk_digest(self):
+        first = get_apk_digest(self.write_apk('first.apk', 'one'))
+        second = get_apk_digest(self.write_apk('second.apk', 'two'))
+        resigned = get_apk_digest(self.write_apk('resigned.apk', 'one', cert='other'))
+        unsigned = get_apk_digest(self.write_apk('unsigned.apk', 'one', cert=None))
+        assert_not_equal(first[0], second[0])
+        assert_equal(first[1], second[1])
+        assert_not_equal(first[1], resigned[1])
+        assert_equal(unsigned[1], '')
+
+    def test_get_entry(self):
+        entry = {'sha256': 'a', 'cert': 'b', 'install_time': 1.0, 'fingerprint': self.listing}
+        listings = {'com.foo': [self.listing, 'ls: /data/app/com.foo-2: Permission denied']}
+        device = StubDevice(json.dumps({'com.foo': entry}), listings)
+        ledger = ApkInstallLedger(device)
+        # Only the lines listing files make up the fingerprint
+        assert_equal(ledger.get_entry('com.foo'), entry)
+        assert_true(ledger.is_installed('com.foo'))
+        assert_equal(len(device.commands), 1)
+
+        assert_true(not ledger.is_installed('com.bar'))
+        assert_equal(ledger.get_entry('com.bar'), None)
+        assert_equal(len(device.commands), 2)
+
+    def test_replaced(self):
+        entry = {'sha256': 'a', 'cert': 'b', 'install_time': 1.0, 'fingerprint': self.listing}
+        replaced = self.listing.replace('1234', '4321')
+        device = StubDevice(json.dumps({'com.foo': entry}), {'com.foo': [replaced]})
+        assert_equal(ApkInstallLedger(device).get_entry('com.foo'), None)
+
+    def test_malformed(self):
+        device = StubDevice('{"com.foo": ', {'com.foo': [self.listing]})
+        ledger = ApkInstallLedger(device)
+        assert_equal(ledger.get_entry('com.foo'), None)
+        assert_true(ledger.is_installed('com.foo'))
+
+    def test_record(self):
+        apk = self.write_apk('foo.apk', 'one')
+        device = StubDevice(listings={'com.foo': [self.listing]})
+        ApkInstallLedger(device).record('com.foo', apk, 2.5)
+        ApkInstallLedger(device).record('com.bar', apk, 2.5)
+
+        ledger = ApkInstallLedger(device)
+        entry = ledger.lookup('com.foo', apk)
+        assert_equal(entry['install_time'], 2.5)
+        assert_equal(entry['fingerprint'], self.listing)
+        assert_equal(ledger.lookup('com.foo', self.write_apk('other.apk', 'two')), None)
+        assert_equal(ledger.lookup('com.bar', apk), None)
@@ -15,12 +15,26 @@
 
 
 # pylint: disable=R0201
+import os
+import time
+import shutil
+import struct
+import urllib2
+import tempfile
+import zipfile
+import zlib
+from StringIO import StringIO
 from unittest import TestCase
 
 from nose.tools import raises, assert_equal, assert_not_equal, assert_true  # pylint: disable=E0611
 
-from wlauto.utils.android import check_output
+from wlauto.utils.android import check_output, parse_instrumentation_status
+from wlauto.utils.assets import parse_image_size, write_png, write_pptx, write_pdf
+from wlauto.utils.httpserver import LocalContentServer
 from wlauto.utils.misc import merge_dicts, merge_lists, TimeoutError
+from wlauto.utils.power import (PowerStateProcessor, ActionPowerStateStats, ActionMarkerEvent,
+                                CorePowerTransitionEvent)
+from wlauto.utils.trace_cmd import parse_ux_action_marker, split_trace_event_preamble
 from wlauto.utils.types import (list_or_integer, list_or_bool, caseless_string, arguments,
                                 ParameterDict)
 
@@ -35,6 +49,223 @@ class TestCheckOutput(TestCase):
         check_output("python -c 'import time; time.sleep(1)'", timeout=0.5, shell=True)
 
 
+class TestInstrumentationStatus(TestCase):
+
+    output = '\n'.join([
+        'INSTRUMENTATION_STATUS: metric=Linpack ST',
+        'INSTRUMENTATION_STATUS: value=123.4',
+        'INSTRUMENTATION_STATUS: units=MFLOPS',
+        'INSTRUMENTATION_STATUS_CODE: 100',
+        'INSTRUMENTATION_STATUS: stack=java.lang.Exception: oops',
+        '\tat Foo.bar(Foo.java:1)',
+        'INSTRUMENTATION_STATUS_CODE: -2',
+        'INSTRUMENTATION_RESULT: stream=',
+        'INSTRUMENTATION_CODE: -1',
+    ])
+
+    def test_parse(self):
+        statuses = parse_instrumentation_status(self.output)
+        assert_equal(len(statuses), 2)
+        assert_equal(statuses[0], (100, {'metric': 'Linpack ST', 'value': '123.4', 'units': 'MFLOPS'}))
+        assert_equal(statuses[1][0], -2)
+        assert_equal(statuses[1][1]['stack'], 'java.lang.Exception: oops\n\tat Foo.bar(Foo.java:1)')
+
+
+class TestUxActionMarker(TestCase):
+
+    def test_parse(self):
+        assert_equal(parse_ux_action_marker('tracing_mark_write: S|1234|UX_PERF:play_search|7'),
+                     ('play_search', 7, True))
+        assert_equal(parse_ux_action_marker('tracing_mark_write: F|1234|UX_PERF:play_search|7'),
+                     ('play_search', 7, False))
+        assert_equal(parse_ux_action_marker('tracing_mark_write: B|1234|inflate'), None)
+
+    def test_preamble(self):
+        assert_equal(split_trace_event_preamble('  <idle>-0     [001]   294.554380'),
+                     ('<idle>-0', '001', '294.554380'))
+        assert_equal(split_trace_event_preamble('  <idle>-0     [001] d..2   294.554380'),
+                     ('<idle>-0', '001', '294.554380'))
+        assert_equal(split_trace_event_preamble('  <idle>-0       1d..2  294.554380'),
+                     ('<idle>-0', '1', '294.554380'))
+        assert_equal(split_trace_event_preamble('version = 6'), None)
+
+
+class TestActionPowerStates(TestCase):
+
+    def test_no_state_for_actions(self):
+        processor = PowerStateProcessor([0], num_idle_states=1, no_idle=True)
+        events = [CorePowerTransitionEvent(1.0, 0, frequency=1000),
+                  ActionMarkerEvent(1.5, 'open', 1, True),
+                  CorePowerTransitionEvent(2.0, 0, frequency=2000),
+                  ActionMarkerEvent(2.5, 'open', 1, False)]
+        states = list(processor.process(events))
+        assert_equal([s.timestamp for s in states], [1.0, 2.0])
+        assert_equal(processor.exceptions, [])
+
+    def test_action_residency(self):
+        stats = ActionPowerStateStats(['A53'])
+        stats.update(1.0, [(-1, 1000)])
+        stats.record_action(ActionMarkerEvent(1.5, 'open', 1, True))
+        stats.update(2.0, [(-1, 2000)])
+        stats.record_action(ActionMarkerEvent(2.5, 'open', 1, False))
+        stats.update(4.0, [(-1, 1000)])
+        state_stats = stats.report().action_stats['open']
+        assert_equal(state_stats['0001000KHz'], [50.0])
+        assert_equal(state_stats['0002000KHz'], [50.0])
+
+
+class TestAssets(TestCase):
+
+    def setUp(self):
+        self.filepath = tempfile.mktemp()
+
+    def tearDown(self):
+        if os.path.isfile(self.filepath):
+            os.remove(self.filepath)
+
+    def test_parse_image_size(self):
+        assert_equal(parse_image_size('640x480'), (640, 480))
+        assert_equal(parse_image_size(' 16x9 '), (16, 9))
+
+    @raises(ValueError)
+    def test_parse_bad_image_size(self):
+        parse_image_size('640*480')
+
+    def test_png(self):
+        write_png(self.filepath, 7, 3, seed=1)
+        with open(self.filepath, 'rb') as fh:
+            data = fh.read()
+        assert_equal(data[:8], '\x89PNG\r\n\x1a\n')
+        assert_equal(data[12:16], 'IHDR')
+        assert_equal(struct.unpack('>II', data[16:24]), (7, 3))
+        idat_length = struct.unpack('>I', data[33:37])[0]
+        assert_equal(data[37:41], 'IDAT')
+        raw = zlib.decompress(data[41:41 + idat_length])
+        # Each row is a filter type byte followed by RGB pixels
+        assert_equal(len(raw), 3 * (1 + 7 * 3))
+        assert_equal(data[-8:-4], 'IEND')
+
+        write_png(self.filepath, 7, 3, seed=1)
+        with open(self.filepath, 'rb') as fh:
+            assert_equal(fh.read(), data)
+        write_png(self.filepath, 7, 3, seed=2)
+        with open(self.filepath, 'rb') as fh:
+            assert_not_equal(fh.read(), data)
+
+    def test_pptx(self):
+        write_pptx(self.filepath, 3, (8, 6))
+        with zipfile.ZipFile(self.filepath) as archive:
+            names = archive.namelist()
+            presentation = archive.read('ppt/presentation.xml')
+            content_types = archive.read('[Content_Types].xml')
+        for i in xrange(1, 4):
+            assert_true('ppt/slides/slide{}.xml'.format(i) in names)
+            assert_true('ppt/media/image{}.png'.format(i) in names)
+            assert_true('/ppt/slides/slide{}.xml'.format(i) in content_types)
+        assert_true('ppt/slides/slide4.xml' not in names)
+        assert_equal(presentation.count('<p:sldId '), 3)
+        assert_true(not os.path.exists(self.filepath + '.tmp'))
+
+    def test_pptx_without_images(self):
+        write_pptx(self.filepath, 2)
+        with zipfile.ZipFile(self.filepath) as archive:
+            names = archive.namelist()
+        assert_true('ppt/slides/slide2.xml' in names)
+        assert_true(not any(name.startswith('ppt/media/') for name in names))
+
+    def test_pdf(self):
+        write_pdf(self.filepath, 3, words_per_page=20, image_size=(4, 4), search_terms=['needle'])
+        with open(self.filepath, 'rb') as fh:
+            data = fh.read()
+        assert_true(data.startswith('%PDF-1.4'))
+        assert_true(data.rstrip().endswith('%%EOF'))
+        assert_true('/Type /Pages /Kids [' in data)
+        assert_true('/Count 3 >>' in data)
+        assert_equal(data.count('/Type /Page '), 3)
+        assert_equal(data.count('/Subtype /Image'), 3)
+
+        # Every entry in the cross-reference table points at its object
+        xref = int(data.rsplit('startxref\n', 1)[1].split()[0])
+        lines = data[xref:].split('\n')
+        count = int(lines[1].split()[1])
+        for number in xrange(1, count):
+            offset = int(lines[2 + number].split()[0])
+            assert_true(data[offset:].startswith('{} 0 obj'.format(number)))
+
+        # Each page's text holds the search term
+        text = ''
+        for stream in data.split('stream\n')[1:]:
+            body = stream.split('\nendstream')[0]
+            try:
+                text += zlib.decompress(body)
+            except zlib.error:
+                continue
+        assert_equal(text.count('(needle) Tj'), 3)
+
+
+class TestLocalContentServer(TestCase):
+
+    def setUp(self):
+        self.root = tempfile.mkdtemp()
+        os.makedirs(os.path.join(self.root, 'example.com'))
+        os.makedirs(os.path.join(self.root, 'other.org'))
+        for path, content in [('example.com/index.html', 'direct'),
+                              ('example.com/page?id=1', 'query'),
+                              ('other.org/script.js', 'proxied')]:
+            with open(os.path.join(self.root, path), 'w') as wfh:
+                wfh.write(content)
+        self.server = LocalContentServer(self.root, default_host='example.com')
+
+    def tearDown(self):
+        self.server.stop()
+        shutil.rmtree(self.root)
+
+    def test_direct(self):
+        assert_equal(self.server.translate_path('/index.html'),
+                     os.path.join(self.root, 'example.com', 'index.html'))
+        assert_equal(LocalContentServer(self.root).translate_path('/index.html'),
+                     os.path.join(self.root, 'index.html'))
+
+    def test_proxy(self):
+        assert_equal(self.server.translate_path('http://other.org:80/script.js'),
+                     os.path.join(self.root, 'other.org', 'script.js'))
+
+    def test_traversal(self):
+        for path in ['/../../etc/passwd', '/a/%2e%2e/%2e%2e/etc/passwd', 'http://../etc/passwd']:
+            result = self.server.translate_path(path)
+            assert_true(result.startswith(os.path.join(self.root, 'example.com') + os.sep), result)
+
+    def test_query(self):
+        assert_equal(self.server.translate_path('/page?id=1'),
+                     os.path.join(self.root, 'example.com', 'page?id=1'))
+        assert_equal(self.server.translate_path('/page?id=2'),
+                     os.path.join(self.root, 'example.com', 'page'))
+
+    def test_bandwidth(self):
+        data = 'x' * 8192
+        start = time.time()
+        self.server.copyfile(StringIO(data), StringIO())
+        assert_true(time.time() - start < 0.25)
+
+        self.server.bandwidth = 16  # kB/s
+        output = StringIO()
+        start = time.time()
+        self.server.copyfile(StringIO(data), output)
+        assert_true(time.time() - start >= 0.45)
+        assert_equal(output.getvalue(), data)
+        assert_equal(self.server.bytes_sent, 2 * len(data))
+
+    def test_serve(self):
+        self.server.start()
+        url = 'http://localhost:{}'.format(self.server.port)
+        assert_equal(urllib2.urlopen(url + '/index.html').read(), 'direct')
+        opener = urllib2.build_opener(urllib2.ProxyHandler({'http': url}))
+        assert_equal(opener.open('http://other.org/script.js').read(), 'proxied')
+        # Submitted data is discarded
+        assert_equal(urllib2.urlopen(url + '/index.html', data='score=1').read(), 'direct')
+        assert_equal(self.server.requests, 3)
+
+
 class TestMerge(TestCase):
 
     def test_dict_merge(self):
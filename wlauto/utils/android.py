@@ -21,6 +21,10 @@ Utility functions for working with Android devices through adb.
 # pylint: disable=E1103
 import os
 import time
+import json
+import zipfile
+import hashlib
+import tempfile
 import subprocess
 import logging
 import re
@@ -28,7 +32,7 @@ import re
 from wlauto.exceptions import DeviceError, ConfigError, HostError, WAError
 from wlauto.utils.misc import (check_output, escape_single_quotes,
                                escape_double_quotes, get_null, which,
-                               CalledProcessErrorWithStderr, ABI_MAP)
+                               CalledProcessErrorWithStderr, ABI_MAP, sha256)
 
 
 MAX_TRIES = 5
@@ -222,6 +226,145 @@ class ApkInfo(object):
                 pass  # not interested
 
 
+_apk_digests = {}
+
+
+def get_apk_digest(path):
+    """
+    Returns ``(content_hash, cert_hash)`` for the APK at ``path``: the SHA256 of the
+    file, and the SHA256 of its v1 (JAR) signature blocks, which hold the signing
+    certificates. ``cert_hash`` is empty for APKs that are only signed with the v2
+    scheme; their signature is still covered by ``content_hash``.
+
+    """
+    stat = os.stat(path)
+    key = (os.path.abspath(path), stat.st_size, stat.st_mtime)
+    if key not in _apk_digests:
+        cert = hashlib.sha256()
+        signed = False
+        with zipfile.ZipFile(path) as apk:
+            for name in sorted(apk.namelist()):
+                if re.match(r'META-INF/[^/]+\.(RSA|DSA|EC)$', name, re.IGNORECASE):
+                    cert.update(apk.read(name))
+                    signed = True
+        _apk_digests[key] = (sha256(path, chunk=1024 * 1024), cert.hexdigest() if signed else '')
+    return _apk_digests[key]
+
+
+class ApkInstallLedger(object):
+    """
+    Keeps track, on the device, of the APK files WA has installed, so that an APK that
+    is already installed need not be installed again.
+
+    Each package's entry holds the content and certificate hashes of the APK file that
+    was installed (see ``get_apk_digest()``), the time the installation took, and a
+    fingerprint of the installed copy of the APK (its path, size and modification time
+    as listed by ``ls -l``). An entry only applies for as long as the installed copy's
+    fingerprint matches, so a package that has since been uninstalled, or replaced other
+    than through the ledger, is not mistaken for the APK that was recorded.
+
+    The ledger and the fingerprints of the packages of interest are read with a single
+    shell command, and are cached until the next ``record()``.
+
+    """
+
+    marker = '##ledger##'
+
+    def __init__(self, device, path=None):
+        self.device = device
+        self.path = path or device.path.join(device.working_directory, 'apk_install_ledger.json')
+        self._entries = None
+        self._fingerprints = {}
+
+    def lookup(self, package, apk_path):
+        """
+        Returns the entry for ``package`` if the APK at ``apk_path`` is the one installed
+        for it, and ``None`` otherwise.
+
+        """
+        entry = self.get_entry(package)
+        if entry and [entry['sha256'], entry['cert']] == list(get_apk_digest(apk_path)):
+            return entry
+        return None
+
+    def get_entry(self, package):
+        """
+        Returns the entry for the APK installed for ``package``, or ``None`` if it was
+        not installed through the ledger, or has been replaced or uninstalled since.
+
+        """
+        self._query([package])
+        entry = self._entries.get(package)
+        fingerprint = self._fingerprints.get(package)
+        if entry and fingerprint and entry.get('fingerprint') == fingerprint:
+            return entry
+        return None
+
+    def is_installed(self, package):
+        self._query([package])
+        return bool(self._fingerprints.get(package))
+
+    def record(self, package, apk_path, install_time):
+        """Records that the APK at ``apk_path`` has been installed for ``package``."""
+        self._invalidate()
+        self._query([package])
+        fingerprint = self._fingerprints.get(package)
+        if not fingerprint:
+            logger.debug('{} is not installed; not recording it'.format(package))
+            self._entries.pop(package, None)
+        else:
+            content_hash, cert_hash = get_apk_digest(apk_path)
+            self._entries[package] = {'sha256': content_hash,
+                                      'cert': cert_hash,
+                                      'install_time': install_time,
+                                      'fingerprint': fingerprint}
+        self._write()
+
+    def _query(self, packages):
+        packages = [p for p in packages if self._entries is None or p not in self._fingerprints]
+        if not packages and self._entries is not None:
+            return
+        script = ["echo '{}'".format(self.marker), 'cat {} 2>/dev/null; echo'.format(self.path)]
+        for package in packages:
+            script.append("echo '{}{}'".format(self.marker, package))
+            script.append('for f in $(pm path {}); do ls -l ${{f#package:}}; done'.format(package))
+        script.append('true')
+        output = self.device.execute('; '.join(script))
+
+        sections = {}
+        section = None
+        for line in output.splitlines():
+            if line.startswith(self.marker):
+                section = line[len(self.marker):]
+                sections[section] = []
+            elif section is not None and line.strip():
+                sections[section].append(line.strip())
+
+        if self._entries is None:
+            try:
+                self._entries = json.loads(''.join(sections.get('', [])) or '{}')
+            except ValueError:
+                logger.debug('Ignoring malformed APK install ledger {}'.format(self.path))
+                self._entries = {}
+        for package in packages:
+            # Only listings of files count; errors such as "Permission denied"
+            # would not change when the package does
+            lines = [l for l in sections.get(package, []) if l.startswith('-')]
+            self._fingerprints[package] = '\n'.join(lines)
+
+    def _write(self):
+        fd, host_file = tempfile.mkstemp(suffix='.json')
+        try:
+            with os.fdopen(fd, 'w') as wfh:
+                json.dump(self._entries, wfh)
+            self.device.push_file(host_file, self.path)
+        finally:
+            os.remove(host_file)
+
+    def _invalidate(self):
+        self._fingerprints = {}
+
+
 def fastboot_command(command, timeout=None):
     _check_env()
     full_command = "fastboot {}".format(command)
@@ -430,6 +573,33 @@ def adb_command(device, command, timeout=None):
     return output
 
 
+def parse_instrumentation_status(output):
+    """
+    Parses the raw output of ``am instrument -r`` and returns a list of
+    ``(status_code, values)`` tuples, one for each status bundle sent by the
+    instrumentation (in the order they were sent).
+
+    """
+    statuses = []
+    values = {}
+    key = None
+    for line in output.splitlines():
+        if line.startswith('INSTRUMENTATION_STATUS: '):
+            key, _, value = line[len('INSTRUMENTATION_STATUS: '):].partition('=')
+            values[key] = value
+        elif line.startswith('INSTRUMENTATION_STATUS_CODE: '):
+            statuses.append((int(line.split(':', 1)[1]), values))
+            values = {}
+            key = None
+        elif line.startswith('INSTRUMENTATION_'):
+            key = None
+        elif key is not None:
+            # Values containing new lines (e.g. stack traces) carry on
+            # over the following lines of output.
+            values[key] += '\n' + line
+    return statuses
+
+
 # Messy environment initialisation stuff...
 
 
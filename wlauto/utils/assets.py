@@ -0,0 +1,303 @@
+#    Copyright 2016 ARM Limited
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+"""
+Generators for synthetic workload assets (images, documents, etc.), so that
+workloads can be run against inputs of a controlled size rather than a
+single fixed file.
+
+All generators are deterministic for a given set of arguments and only use
+the standard library.
+
+"""
+
+import os
+import re
+import struct
+import zlib
+import random
+import zipfile
+
+
+IMAGE_SIZE_REGEX = re.compile(r'^(\d+)x(\d+)$')
+
+
+def parse_image_size(text):
+    """Parse a ``<width>x<height>`` string into a ``(width, height)`` tuple."""
+    match = IMAGE_SIZE_REGEX.match(text.strip())
+    if not match:
+        raise ValueError('Invalid image size "{}"; must be in the form <width>x<height>'.format(text))
+    return int(match.group(1)), int(match.group(2))
+
+
+def _noise(length, seed):
+    """Return ``length`` bytes of deterministic, incompressible noise."""
+    rng = random.Random(seed)
+    # The noise block is longer than deflate's 32KB window so that repeating
+    # it does not allow back-references.
+    block = bytearray(rng.getrandbits(8) for _ in xrange(65537))
+    data = block * (length // len(block))
+    data += block[:length - len(data)]
+    return data
+
+
+def write_png(path, width, height, seed=0):
+    """
+    Write a ``width`` x ``height`` RGB PNG filled with pseudo-random noise.
+
+    Noise does not compress, so the file size (and the decoding cost on the
+    device) scales with the pixel count, as it would for a photograph.
+
+    """
+    pixels = _noise(width * height * 3, seed)
+    row_length = width * 3
+    raw = bytearray()
+    for offset in xrange(0, len(pixels), row_length):
+        raw.append(0)  # filter type: none
+        raw += pixels[offset:offset + row_length]
+
+    def chunk(kind, data):
+        payload = kind + data
+        return struct.pack('>I', len(data)) + payload + struct.pack('>I', zlib.crc32(payload) & 0xffffffff)
+
+    with open(path, 'wb') as wfh:
+        wfh.write('\x89PNG\r\n\x1a\n')
+        wfh.write(chunk('IHDR', struct.pack('>IIBBBBB', width, height, 8, 2, 0, 0, 0)))
+        wfh.write(chunk('IDAT', zlib.compress(str(raw), 6)))
+        wfh.write(chunk('IEND', ''))
+
+
+# 4:3 slide in EMUs
+SLIDE_WIDTH = 9144000
+SLIDE_HEIGHT = 6858000
+
+PML_NS = ('xmlns:a="http://schemas.openxmlformats.org/drawingml/2006/main" '
+          'xmlns:r="http://schemas.openxmlformats.org/officeDocument/2006/relationships" '
+          'xmlns:p="http://schemas.openxmlformats.org/presentationml/2006/main"')
+REL_NS = 'http://schemas.openxmlformats.org/package/2006/relationships'
+REL_TYPE = 'http://schemas.openxmlformats.org/officeDocument/2006/relationships/'
+CT_PREFIX = 'application/vnd.openxmlformats-officedocument.presentationml.'
+
+EMPTY_SP_TREE = ('<p:spTree><p:nvGrpSpPr><p:cNvPr id="1" name=""/><p:cNvGrpSpPr/><p:nvPr/></p:nvGrpSpPr>'
+                 '<p:grpSpPr/>{}</p:spTree>')
+
+THEME = ('<?xml version="1.0" encoding="UTF-8" standalone="yes"?>'
+         '<a:theme xmlns:a="http://schemas.openxmlformats.org/drawingml/2006/main" name="Office">'
+         '<a:themeElements><a:clrScheme name="Office">'
+         '<a:dk1><a:srgbClr val="000000"/></a:dk1><a:lt1><a:srgbClr val="FFFFFF"/></a:lt1>'
+         '<a:dk2><a:srgbClr val="1F497D"/></a:dk2><a:lt2><a:srgbClr val="EEECE1"/></a:lt2>'
+         '<a:accent1><a:srgbClr val="4F81BD"/></a:accent1><a:accent2><a:srgbClr val="C0504D"/></a:accent2>'
+         '<a:accent3><a:srgbClr val="9BBB59"/></a:accent3><a:accent4><a:srgbClr val="8064A2"/></a:accent4>'
+         '<a:accent5><a:srgbClr val="4BACC6"/></a:accent5><a:accent6><a:srgbClr val="F79646"/></a:accent6>'
+         '<a:hlink><a:srgbClr val="0000FF"/></a:hlink><a:folHlink><a:srgbClr val="800080"/></a:folHlink>'
+         '</a:clrScheme><a:fontScheme name="Office">'
+         '<a:majorFont><a:latin typeface="Calibri"/><a:ea typeface=""/><a:cs typeface=""/></a:majorFont>'
+         '<a:minorFont><a:latin typeface="Calibri"/><a:ea typeface=""/><a:cs typeface=""/></a:minorFont>'
+         '</a:fontScheme><a:fmtScheme name="Office">'
+         '<a:fillStyleLst>{fill}{fill}{fill}</a:fillStyleLst>'
+         '<a:lnStyleLst>{line}{line}{line}</a:lnStyleLst>'
+         '<a:effectStyleLst>{effect}{effect}{effect}</a:effectStyleLst>'
+         '<a:bgFillStyleLst>{fill}{fill}{fill}</a:bgFillStyleLst>'
+         '</a:fmtScheme></a:themeElements></a:theme>').format(
+             fill='<a:solidFill><a:schemeClr val="phClr"/></a:solidFill>',
+             line='<a:ln w="9525"><a:solidFill><a:schemeClr val="phClr"/></a:solidFill></a:ln>',
+             effect='<a:effectStyle><a:effectLst/></a:effectStyle>')
+
+
+def _rels(relationships):
+    entries = ''.join('<Relationship Id="{}" Type="{}{}" Target="{}"/>'.format(rid, REL_TYPE, kind, target)
+                      for rid, kind, target in relationships)
+    return ('<?xml version="1.0" encoding="UTF-8" standalone="yes"?>'
+            '<Relationships xmlns="{}">{}</Relationships>'.format(REL_NS, entries))
+
+
+def _picture(rid, width, height):
+    # Scale the image to fit the slide, preserving its aspect ratio
+    scale = min(SLIDE_WIDTH / float(width), SLIDE_HEIGHT / float(height))
+    cx, cy = int(width * scale), int(height * scale)
+    x, y = (SLIDE_WIDTH - cx) // 2, (SLIDE_HEIGHT - cy) // 2
+    return ('<p:pic><p:nvPicPr><p:cNvPr id="2" name="Picture"/><p:cNvPicPr/><p:nvPr/></p:nvPicPr>'
+            '<p:blipFill><a:blip r:embed="{}"/><a:stretch><a:fillRect/></a:stretch></p:blipFill>'
+            '<p:spPr><a:xfrm><a:off x="{}" y="{}"/><a:ext cx="{}" cy="{}"/></a:xfrm>'
+            '<a:prstGeom prst="rect"><a:avLst/></a:prstGeom></p:spPr></p:pic>').format(rid, x, y, cx, cy)
+
+
+def write_pptx(path, slide_count, image_size=None, seed=0):
+    """
+    Write a PowerPoint presentation with ``slide_count`` slides. If
+    ``image_size`` (a ``(width, height)`` tuple) is specified, each slide
+    holds a distinct noise image of that size, so that every slide has to be
+    decoded separately when navigating the deck.
+
+    """
+    content_types = ['<Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>',
+                     '<Default Extension="xml" ContentType="application/xml"/>',
+                     '<Default Extension="png" ContentType="image/png"/>',
+                     '<Override PartName="/ppt/presentation.xml" ContentType="{}presentation.main+xml"/>'.format(CT_PREFIX),
+                     '<Override PartName="/ppt/slideMasters/slideMaster1.xml" ContentType="{}slideMaster+xml"/>'.format(CT_PREFIX),
+                     '<Override PartName="/ppt/slideLayouts/slideLayout1.xml" ContentType="{}slideLayout+xml"/>'.format(CT_PREFIX),
+                     '<Override PartName="/ppt/theme/theme1.xml" '
+                     'ContentType="application/vnd.openxmlformats-officedocument.theme+xml"/>']
+    presentation_rels = [('rId1', 'slideMaster', 'slideMasters/slideMaster1.xml'),
+                         ('rId2', 'theme', 'theme/theme1.xml')]
+    slide_ids = []
+
+    with zipfile.ZipFile(path, 'w', zipfile.ZIP_DEFLATED) as archive:
+        archive.writestr('_rels/.rels', _rels([('rId1', 'officeDocument', 'ppt/presentation.xml')]))
+        archive.writestr('ppt/theme/theme1.xml', THEME)
+        archive.writestr('ppt/slideMasters/slideMaster1.xml',
+                         '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>'
+                         '<p:sldMaster {}><p:cSld>{}</p:cSld>'
+                         '<p:clrMap bg1="lt1" tx1="dk1" bg2="lt2" tx2="dk2" accent1="accent1" accent2="accent2" '
+                         'accent3="accent3" accent4="accent4" accent5="accent5" accent6="accent6" '
+                         'hlink="hlink" folHlink="folHlink"/>'
+                         '<p:sldLayoutIdLst><p:sldLayoutId id="2147483649" r:id="rId1"/></p:sldLayoutIdLst>'
+                         '</p:sldMaster>'.format(PML_NS, EMPTY_SP_TREE.format('')))
+        archive.writestr('ppt/slideMasters/_rels/slideMaster1.xml.rels',
+                         _rels([('rId1', 'slideLayout', '../slideLayouts/slideLayout1.xml'),
+                                ('rId2', 'theme', '../theme/theme1.xml')]))
+        archive.writestr('ppt/slideLayouts/slideLayout1.xml',
+                         '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>'
+                         '<p:sldLayout {} type="blank"><p:cSld name="Blank">{}</p:cSld>'
+                         '<p:clrMapOvr><a:masterClrMapping/></p:clrMapOvr></p:sldLayout>'.format(PML_NS, EMPTY_SP_TREE.format('')))
+        archive.writestr('ppt/slideLayouts/_rels/slideLayout1.xml.rels',
+                         _rels([('rId1', 'slideMaster', '../slideMasters/slideMaster1.xml')]))
+
+        for i in xrange(1, slide_count + 1):
+            slide_rels = [('rId1', 'slideLayout', '../slideLayouts/slideLayout1.xml')]
+            content = ''
+            if image_size:
+                media_name = 'image{}.png'.format(i)
+                media_path = '{}.tmp'.format(path)
+                write_png(media_path, image_size[0], image_size[1], seed=seed + i)
+                archive.write(media_path, 'ppt/media/' + media_name, zipfile.ZIP_STORED)
+                os.remove(media_path)
+                slide_rels.append(('rId2', 'image', '../media/' + media_name))
+                content = _picture('rId2', *image_size)
+            archive.writestr('ppt/slides/slide{}.xml'.format(i),
+                             '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>'
+                             '<p:sld {}><p:cSld>{}</p:cSld>'
+                             '<p:clrMapOvr><a:masterClrMapping/></p:clrMapOvr></p:sld>'.format(PML_NS, EMPTY_SP_TREE.format(content)))
+            archive.writestr('ppt/slides/_rels/slide{}.xml.rels'.format(i), _rels(slide_rels))
+            content_types.append('<Override PartName="/ppt/slides/slide{}.xml" '
+                                 'ContentType="{}slide+xml"/>'.format(i, CT_PREFIX))
+            presentation_rels.append(('rId{}'.format(i + 2), 'slide', 'slides/slide{}.xml'.format(i)))
+            slide_ids.append('<p:sldId id="{}" r:id="rId{}"/>'.format(255 + i, i + 2))
+
+        archive.writestr('ppt/presentation.xml',
+                         '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>'
+                         '<p:presentation {}>'
+                         '<p:sldMasterIdLst><p:sldMasterId id="2147483648" r:id="rId1"/></p:sldMasterIdLst>'
+                         '<p:sldIdLst>{}</p:sldIdLst>'
+                         '<p:sldSz cx="{}" cy="{}" type="screen4x3"/><p:notesSz cx="{}" cy="{}"/>'
+                         '</p:presentation>'.format(PML_NS, ''.join(slide_ids),
+                                                    SLIDE_WIDTH, SLIDE_HEIGHT, SLIDE_HEIGHT, SLIDE_WIDTH))
+        archive.writestr('ppt/_rels/presentation.xml.rels', _rels(presentation_rels))
+        archive.writestr('[Content_Types].xml',
+                         '<?xml version="1.0" encoding="UTF-8" standalone="yes"?>'
+                         '<Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">'
+                         '{}</Types>'.format(''.join(content_types)))
+
+
+# A4 in points, with a 50 point margin
+PAGE_WIDTH = 595
+PAGE_HEIGHT = 842
+PAGE_MARGIN = 50
+WORDS_PER_LINE = 12
+
+WORDS = ('lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod tempor incididunt '
+         'ut labore et dolore magna aliqua enim ad minim veniam quis nostrud exercitation ullamco '
+         'laboris nisi aliquip ex ea commodo consequat duis aute irure in reprehenderit voluptate '
+         'velit esse cillum fugiat nulla pariatur excepteur sint occaecat cupidatat non proident '
+         'sunt culpa qui officia deserunt mollit anim id est laborum').split()
+
+
+def _pdf_string(text):
+    return '(' + text.replace('\\', '\\\\').replace('(', '\\(').replace(')', '\\)') + ')'
+
+
+def write_pdf(path, page_count, words_per_page=300, image_size=None, search_terms=None, seed=0):
+    """
+    Write a PDF document with ``page_count`` A4 pages, each holding
+    ``words_per_page`` words of text. The font size is reduced as needed to
+    fit the text on the page, so this controls how much text each page has to
+    lay out and search.
+
+    If ``image_size`` (a ``(width, height)`` tuple) is specified, each page
+    also holds a distinct noise image of that size, drawn behind the text.
+
+    Each of ``search_terms`` is added at the end of every page, so that the
+    number of search results grows with the page count.
+
+    """
+    search_terms = search_terms or []
+    rng = random.Random(seed)
+    # Objects are written as they are generated, so that only one page is
+    # held in memory; the catalog and page tree are written last.
+    catalog, pages, font = 1, 2, 3
+    offsets = {}
+    page_ids = []
+
+    with open(path, 'wb') as wfh:
+        def add(body, number=None):
+            number = number or max(offsets) + 1
+            offsets[number] = wfh.tell()
+            wfh.write('{} 0 obj\n{}\nendobj\n'.format(number, body))
+            return number
+
+        wfh.write('%PDF-1.4\n%\xe2\xe3\xcf\xd3\n')
+        add('<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>', font)
+
+        for i in xrange(page_count):
+            words = [rng.choice(WORDS) for _ in xrange(words_per_page)]
+            lines = [' '.join(words[j:j + WORDS_PER_LINE]) for j in xrange(0, len(words), WORDS_PER_LINE)]
+            lines.extend(search_terms)
+            leading = min(12.0, (PAGE_HEIGHT - 2 * PAGE_MARGIN) / float(max(len(lines), 1)))
+
+            content = []
+            resources = '/Font << /F1 {} 0 R >>'.format(font)
+            if image_size:
+                image_width, image_height = image_size
+                data = zlib.compress(str(_noise(image_width * image_height * 3, seed + i + 1)), 6)
+                image = add('<< /Type /XObject /Subtype /Image /Width {} /Height {} /ColorSpace /DeviceRGB '
+                            '/BitsPerComponent 8 /Filter /FlateDecode /Length {} >>\nstream\n{}\nendstream'
+                            .format(image_width, image_height, len(data), data))
+                resources += ' /XObject << /Im1 {} 0 R >>'.format(image)
+                # Scale the image to fit within the margins, preserving its aspect ratio
+                scale = min((PAGE_WIDTH - 2 * PAGE_MARGIN) / float(image_width),
+                            (PAGE_HEIGHT - 2 * PAGE_MARGIN) / float(image_height))
+                content.append('q {:.2f} 0 0 {:.2f} {} {} cm /Im1 Do Q'.format(image_width * scale,
+                                                                              image_height * scale,
+                                                                              PAGE_MARGIN, PAGE_MARGIN))
+            content.append('BT /F1 {:.2f} Tf {:.2f} TL {} {} Td'.format(leading * 0.8, leading,
+                                                                      PAGE_MARGIN, PAGE_HEIGHT - PAGE_MARGIN))
+            content.extend('{} Tj T*'.format(_pdf_string(line)) for line in lines)
+            content.append('ET')
+
+            stream = zlib.compress('\n'.join(content), 6)
+            contents = add('<< /Length {} /Filter /FlateDecode >>\nstream\n{}\nendstream'.format(len(stream), stream))
+            page_ids.append(add('<< /Type /Page /Parent {} 0 R /MediaBox [0 0 {} {}] /Resources << {} >> '
+                                '/Contents {} 0 R >>'.format(pages, PAGE_WIDTH, PAGE_HEIGHT, resources, contents)))
+
+        add('<< /Type /Pages /Kids [{}] /Count {} >>'.format(' '.join('{} 0 R'.format(p) for p in page_ids),
+                                                             len(page_ids)), pages)
+        add('<< /Type /Catalog /Pages {} 0 R >>'.format(pages), catalog)
+
+        xref = wfh.tell()
+        wfh.write('xref\n0 {}\n0000000000 65535 f \n'.format(len(offsets) + 1))
+        for number in sorted(offsets):
+            wfh.write('{:010d} 00000 n \n'.format(offsets[number]))
+        wfh.write('trailer\n<< /Size {} /Root {} 0 R >>\nstartxref\n{}\n%%EOF\n'.format(
+            len(offsets) + 1, catalog, xref))
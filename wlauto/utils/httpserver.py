@@ -0,0 +1,206 @@
+#    Copyright 2016 ARM Limited
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+
+"""
+A static HTTP server that stands in for remote web content, so that browser
+workloads can run without a network connection and without the variance it
+introduces.
+
+Content is served from a mirror directory laid out as ``wget --mirror``
+creates it, with a sub-directory per host, e.g. ::
+
+    mirror/
+        peacekeeper.futuremark.com/
+            run.action
+            ...
+
+Requests made through the server acting as a proxy (i.e. with an absolute URL)
+are served from the directory of the host they name; requests made to the
+server directly are served from the directory of ``default_host``. A fixed
+latency may be added to each response and the rate at which the response body
+is sent may be limited, to model a network with known characteristics
+repeatably.
+
+"""
+
+import os
+import time
+import socket
+import logging
+import threading
+import posixpath
+import urllib
+import urlparse
+import BaseHTTPServer
+import SimpleHTTPServer
+import SocketServer
+
+
+logger = logging.getLogger('httpserver')
+
+# Size of the chunks a throttled response body is sent in
+CHUNK_SIZE = 4096
+
+
+class _ThreadingHTTPServer(SocketServer.ThreadingMixIn, BaseHTTPServer.HTTPServer):
+
+    daemon_threads = True
+    allow_reuse_address = True
+
+
+class _MirrorRequestHandler(SimpleHTTPServer.SimpleHTTPRequestHandler):
+
+    # Set on the per-server subclass created by LocalContentServer
+    content_server = None
+
+    def do_GET(self):
+        self.content_server.on_request(self)
+        SimpleHTTPServer.SimpleHTTPRequestHandler.do_GET(self)
+
+    def do_HEAD(self):
+        self.content_server.on_request(self)
+        SimpleHTTPServer.SimpleHTTPRequestHandler.do_HEAD(self)
+
+    def do_POST(self):
+        # Submitted data cannot be processed by a mirror; it is discarded, and
+        # the mirrored page is served as for a GET, so that a page submitting
+        # results still navigates on
+        length = int(self.headers.getheader('content-length') or 0)
+        if length:
+            self.rfile.read(length)
+        self.do_GET()
+
+    def translate_path(self, path):
+        return self.content_server.translate_path(path)
+
+    def copyfile(self, source, outputfile):
+        self.content_server.copyfile(source, outputfile)
+
+    def log_message(self, format, *args):  # pylint: disable=redefined-builtin
+        logger.debug('{} {}'.format(self.client_address[0], format % args))
+
+
+class LocalContentServer(object):
+    """
+    Serves a mirror of remote web content from a background thread. The server
+    only listens on the loopback interface, as devices reach it through
+    ``adb reverse``.
+
+    :param root: The (on-host) mirror directory.
+    :param port: The port to listen on. If ``0``, a free port is chosen; see
+                 ``port`` once the server has been started.
+    :param default_host: The host whose content is served for requests that are
+                         not made through a proxy. If not specified, these are
+                         served from ``root`` itself.
+    :param latency: Delay, in milliseconds, added before each response.
+    :param bandwidth: Rate, in kB/s, response bodies are limited to. ``0``
+                      means unlimited.
+
+    """
+
+    def __init__(self, root, port=0, default_host=None, latency=0, bandwidth=0):
+        self.root = os.path.abspath(root)
+        self.port = port
+        self.default_host = default_host
+        self.latency = latency
+        self.bandwidth = bandwidth
+        self.requests = 0
+        self.bytes_sent = 0
+        self.lock = threading.Lock()
+        self._server = None
+        self._thread = None
+
+    def start(self):
+        handler = type('MirrorRequestHandler', (_MirrorRequestHandler,), {'content_server': self})
+        try:
+            self._server = _ThreadingHTTPServer(('127.0.0.1', self.port), handler)
+        except socket.error as e:
+            raise IOError('Could not listen on port {}: {}'.format(self.port, e))
+        self.port = self._server.server_address[1]
+        self._thread = threading.Thread(target=self._server.serve_forever, name='LocalContentServer')
+        self._thread.daemon = True
+        self._thread.start()
+        logger.debug('Serving {} on port {}'.format(self.root, self.port))
+
+    def stop(self):
+        if self._server:
+            self._server.shutdown()
+            self._server.server_close()
+            self._thread.join()
+            self._server = None
+            self._thread = None
+
+    def reset_stats(self):
+        with self.lock:
+            self.requests = 0
+            self.bytes_sent = 0
+
+    def url_for(self, url):
+        """Returns the URL that ``url`` is served at when requested directly."""
+        parsed = urlparse.urlparse(url)
+        path = parsed.path or '/'
+        if parsed.query:
+            path += '?' + parsed.query
+        return 'http://localhost:{}{}'.format(self.port, path)
+
+    # The methods below are called from the request handler threads.
+
+    def on_request(self, handler):  # pylint: disable=unused-argument
+        with self.lock:
+            self.requests += 1
+        if self.latency:
+            time.sleep(self.latency / 1000.0)
+
+    def translate_path(self, path):
+        parsed = urlparse.urlparse(path)
+        host = parsed.netloc.split(':')[0] if parsed.netloc else self.default_host
+        if host in (os.curdir, os.pardir):
+            host = self.default_host
+        base = os.path.join(self.root, host) if host else self.root
+        # Keep the path within the mirror, as SimpleHTTPRequestHandler does
+        result = base
+        for part in posixpath.normpath(urllib.unquote(parsed.path)).split('/'):
+            if part and part not in (os.curdir, os.pardir):
+                result = os.path.join(result, part)
+        # wget saves pages with a query string under the full name
+        if parsed.query and os.path.isfile('{}?{}'.format(result, parsed.query)):
+            result = '{}?{}'.format(result, parsed.query)
+        return result
+
+    def copyfile(self, source, outputfile):
+        # Each thread is limited to the full bandwidth; pages are fetched
+        # over few enough connections for this to model a link well enough
+        start = time.time()
+        sent = 0
+        while True:
+            data = source.read(CHUNK_SIZE)
+            if not data:
+                break
+            outputfile.write(data)
+            sent += len(data)
+            if self.bandwidth:
+                delay = start + sent / (self.bandwidth * 1024.0) - time.time()
+                if delay > 0:
+                    time.sleep(delay)
+        with self.lock:
+            self.bytes_sent += sent
+
+    def __enter__(self):
+        self.start()
+        return self
+
+    def __exit__(self, *args):
+        self.stop()
@@ -20,10 +20,11 @@ import csv
 import re
 import logging
 from ctypes import c_int32
-from collections import defaultdict
+from collections import defaultdict, OrderedDict
 import argparse
 
-from wlauto.utils.trace_cmd import TraceCmdTrace, TRACE_MARKER_START, TRACE_MARKER_STOP
+from wlauto.utils.trace_cmd import (TraceCmdTrace, TRACE_MARKER_START, TRACE_MARKER_STOP,
+                                    parse_ux_action_marker)
 from wlauto.exceptions import DeviceError
 
 
@@ -83,6 +84,24 @@ class TraceMarkerEvent(object):
         return 'MARKER: {}'.format(self.name)
 
 
+class ActionMarkerEvent(object):
+
+    kind = 'action'
+    __slots__ = ['timestamp', 'action', 'cookie', 'is_start']
+
+    def __init__(self, timestamp, action, cookie, is_start):
+        self.timestamp = timestamp
+        self.action = action
+        self.cookie = cookie
+        self.is_start = is_start
+
+    def __str__(self):
+        return 'ACTION: {} {} @ {}'.format(self.action, 'start' if self.is_start else 'end',
+                                           self.timestamp)
+
+    __repr__ = __str__
+
+
 class CpuPowerState(object):
 
     __slots__ = ['frequency', 'idle_state']
@@ -178,6 +197,10 @@ class PowerStateProcessor(object):
 
     def process(self, event_stream):
         for event in event_stream:
+            if event.kind == 'action':
+                # UX action markers do not change the power state, so no
+                # state is emitted for them (see ActionPowerStateStats).
+                continue
             try:
                 next_state = self.update_power_state(event)
                 if self._saw_start_marker or not self.wait_for_start_marker:
@@ -305,6 +328,10 @@ def stream_cpu_power_transitions(events):
                 yield TraceMarkerEvent('START')
             elif TRACE_MARKER_STOP in event.text:
                 yield TraceMarkerEvent('STOP')
+            elif 'UX_PERF:' in event.text:
+                marker = parse_ux_action_marker(event.text)
+                if marker:
+                    yield ActionMarkerEvent(event.timestamp, *marker)
             else:
                 if 'cpu_frequency' in event.text:
                     match = DEVLIB_CPU_FREQ_REGEX.search(event.text)
@@ -341,6 +368,13 @@ def record_state_transitions(reporter, stream):
         yield event
 
 
+def record_actions(reporter, stream):
+    for event in stream:
+        if event.kind == 'action':
+            reporter.record_action(event)
+        yield event
+
+
 class PowerStateTransitions(object):
 
     def __init__(self, filepath):
@@ -480,6 +514,23 @@ class ParallelReport(object):
             writer.writerows(self.values)
 
 
+def get_power_state_name(idle, freq, idle_state_names=None):
+    if idle == -1 and freq is not None:
+        return '{:07}KHz'.format(freq)
+    elif freq:
+        if idle_state_names:
+            return '{}-{:07}KHz'.format(idle_state_names[idle], freq)
+        else:
+            return 'idle{}-{:07}KHz'.format(idle, freq)
+    elif idle not in (None, -1):
+        if idle_state_names:
+            return idle_state_names[idle]
+        else:
+            return 'idle{}'.format(idle)
+    else:
+        return 'unkown'
+
+
 class PowerStateStats(object):
 
     def __init__(self, core_names, idle_state_names=None, use_ratios=False):
@@ -495,20 +546,7 @@ class PowerStateStats(object):
         if self.last_timestamp is not None:
             delta = timestamp - self.last_timestamp
             for cpu, (idle, freq) in enumerate(self.previous_states):
-                if idle == -1 and freq is not None:
-                    state = '{:07}KHz'.format(freq)
-                elif freq:
-                    if self.idle_state_names:
-                        state = '{}-{:07}KHz'.format(self.idle_state_names[idle], freq)
-                    else:
-                        state = 'idle{}-{:07}KHz'.format(idle, freq)
-                elif idle not in (None, -1):
-                    if self.idle_state_names:
-                        state = self.idle_state_names[idle]
-                    else:
-                        state = 'idle{}'.format(idle)
-                else:
-                    state = 'unkown'
+                state = get_power_state_name(idle, freq, self.idle_state_names)
                 self.cpu_states[cpu][state] += delta
         else:  # initial update
             self.first_timestamp = timestamp
@@ -554,6 +592,90 @@ class PowerStateStatsReport(object):
                                            for s in stats])
 
 
+class ActionPowerStateStats(object):
+    """
+    Power state residency of each core during each UX action marked in the
+    trace. Time during which several actions overlap is counted towards all
+    of them; repeated occurrences of the same action are aggregated.
+
+    """
+
+    def __init__(self, core_names, idle_state_names=None, use_ratios=False):
+        self.core_names = core_names
+        self.idle_state_names = idle_state_names
+        self.use_ratios = use_ratios
+        self.active_actions = {}  # cookie -> action
+        self.previous_actions = set()
+        self.last_timestamp = None
+        self.previous_states = None
+        self.action_times = OrderedDict()  # action -> total time
+        # action -> cpu -> state -> time
+        self.cpu_states = defaultdict(lambda: defaultdict(lambda: defaultdict(int)))
+
+    def record_action(self, event):
+        # Account for the time up to the action boundary in the states that
+        # held before it, so that per-action residencies are exact.
+        if self.last_timestamp is not None:
+            self.update(event.timestamp, self.previous_states)
+        if event.is_start:
+            self.active_actions[event.cookie] = event.action
+            self.action_times.setdefault(event.action, 0)
+        else:
+            self.active_actions.pop(event.cookie, None)
+        self.previous_actions = set(self.active_actions.itervalues())
+
+    def update(self, timestamp, core_states):  # NOQA
+        if self.last_timestamp is not None:
+            delta = timestamp - self.last_timestamp
+            for action in self.previous_actions:
+                self.action_times[action] += delta
+                for cpu, (idle, freq) in enumerate(self.previous_states):
+                    state = get_power_state_name(idle, freq, self.idle_state_names)
+                    self.cpu_states[action][cpu][state] += delta
+
+        self.last_timestamp = timestamp
+        self.previous_states = core_states
+        self.previous_actions = set(self.active_actions.itervalues())
+
+    def report(self):
+        action_stats = OrderedDict()
+        for action, total_time in self.action_times.iteritems():
+            if not total_time:
+                continue
+            state_stats = defaultdict(lambda: [None] * len(self.core_names))
+            for cpu, states in self.cpu_states[action].iteritems():
+                for state, time in states.iteritems():
+                    time_pc = time / total_time
+                    if not self.use_ratios:
+                        time_pc *= 100
+                    state_stats[state][cpu] = time_pc
+            action_stats[action] = state_stats
+
+        precision = self.use_ratios and 3 or 1
+        return ActionPowerStateStatsReport(action_stats, self.core_names, precision)
+
+
+class ActionPowerStateStatsReport(object):
+
+    def __init__(self, action_stats, core_names, precision=2):
+        self.action_stats = action_stats
+        self.core_names = core_names
+        self.precision = precision
+
+    def write(self, filepath):
+        with open(filepath, 'w') as wfh:
+            writer = csv.writer(wfh)
+            headers = ['action', 'state'] + ['{} CPU{}'.format(c, i)
+                                             for i, c in enumerate(self.core_names)]
+            writer.writerow(headers)
+            fmt = '{{:.{}f}}'.format(self.precision)
+            for action, state_stats in self.action_stats.iteritems():
+                for state in sorted(state_stats):
+                    stats = state_stats[state]
+                    writer.writerow([action, state] + [fmt.format(s if s is not None else 0)
+                                                       for s in stats])
+
+
 class CpuUtilisationTimeline(object):
 
     def __init__(self, filepath, core_names, max_freq_list):
@@ -651,7 +773,7 @@ def report_power_stats(trace_file, idle_state_names, core_names, core_clusters,
                        first_system_state=sys.maxint, use_ratios=False,
                        timeline_csv_file=None, cpu_utilisation=None,
                        max_freq_list=None, start_marker_handling='error',
-                       transitions_csv_file=None, no_idle=False):
+                       transitions_csv_file=None, no_idle=False, report_actions=False):
     # pylint: disable=too-many-locals,too-many-branches
     trace = TraceCmdTrace(trace_file,
                           filter_markers=False,
@@ -678,6 +800,9 @@ def report_power_stats(trace_file, idle_state_names, core_names, core_clusters,
         ParallelStats(core_clusters, use_ratios),
         PowerStateStats(core_names, idle_state_names, use_ratios)
     ]
+    if report_actions:
+        action_reporter = ActionPowerStateStats(core_names, idle_state_names, use_ratios)
+        reporters.append(action_reporter)
     if timeline_csv_file:
         reporters.append(PowerStateTimeline(timeline_csv_file,
                                             core_names, idle_state_names))
@@ -689,6 +814,8 @@ def report_power_stats(trace_file, idle_state_names, core_names, core_clusters,
 
     event_stream = trace.parse()
     transition_stream = stream_cpu_power_transitions(event_stream)
+    if report_actions:
+        transition_stream = record_actions(action_reporter, transition_stream)
     if transitions_csv_file:
         trans_reporter = PowerStateTransitions(transitions_csv_file)
         reporters.append(trans_reporter)
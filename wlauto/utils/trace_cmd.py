@@ -29,6 +29,14 @@ logger = logging.getLogger('trace-cmd')
 TRACE_MARKER_START = 'TRACE_MARKER_START'
 TRACE_MARKER_STOP = 'TRACE_MARKER_STOP'
 
+# UX actions logged by the uiauto ActionLogger are written into the trace as
+# atrace async sections, e.g.
+#
+#   tracing_mark_write: S|1234|UX_PERF:play_search|7
+#   tracing_mark_write: F|1234|UX_PERF:play_search|7
+#
+UX_ACTION_MARKER_REGEX = re.compile(r'(?P<kind>[SF])\|\d+\|UX_PERF:(?P<action>[^|]+)\|(?P<cookie>\d+)')
+
 
 class TraceCmdEvent(object):
     """
@@ -238,6 +246,13 @@ DROPPED_EVENTS_REGEX = re.compile(r'CPU:(?P<cpu_id>\d+) \[\d*\s*EVENTS DROPPED\]
 
 EMPTY_CPU_REGEX = re.compile(r'CPU \d+ is empty')
 
+# In the latency format (trace-cmd report -l) the cpu id is not in brackets
+# and is followed by the irq/preempt flags, e.g.
+#
+#   <idle>-0       1d..2  294.554380: cpu_idle: state=0 cpu_id=1
+#
+LATENCY_PREAMBLE_REGEX = re.compile(r'^\s*(?P<thread>.+?)\s+(?P<cpu_id>\d+)\S*\s+(?P<ts>\d+\.\d+)\s*$')
+
 
 def split_trace_event_line(line):
     """
@@ -247,7 +262,8 @@ def split_trace_event_line(line):
     may also appear in the body of the event and in the thread name. This
     attempts to identify the correct split by ensureing the there is a '['
     (used to mark the cpu id and not a valid character for a task name) in the
-    peramble.
+    peramble, or that it ends with the cpu id and timestamp of the latency
+    format.
 
     """
     parts = line.split(': ')
@@ -255,12 +271,50 @@ def split_trace_event_line(line):
         return parts
 
     preamble = parts.pop(0)
-    while '[' not in preamble:
+    while '[' not in preamble and not LATENCY_PREAMBLE_REGEX.search(preamble) and len(parts) > 2:
         preamble += ': ' + parts.pop(0)
     event_name = parts.pop(0)
     return (preamble, event_name, ': '.join(parts))
 
 
+def split_trace_event_preamble(preamble):
+    """
+    Split the preamble of a trace-cmd event line (as returned by
+    ``split_trace_event_line``) into the thread, the cpu id and the timestamp.
+    Both the default and the latency output formats of trace-cmd report are
+    understood; ``None`` is returned if the preamble is in neither.
+
+    """
+    if ' [' in preamble:
+        thread_string, rest = preamble.rsplit(' [', 1)
+        if '] ' not in rest:
+            return None
+        cpu_id, ts_string = rest.split('] ', 1)
+        # newer versions of trace-cmd print the irq/preempt flags before
+        # the timestamp
+        fields = ts_string.split()
+        if not fields:
+            return None
+        return thread_string.strip(), cpu_id, fields[-1]
+    match = LATENCY_PREAMBLE_REGEX.search(preamble)
+    if not match:
+        return None
+    return match.group('thread'), match.group('cpu_id'), match.group('ts')
+
+
+def parse_ux_action_marker(text):
+    """
+    Returns ``(action, cookie, is_start)`` if the specified text contains
+    a UX action marker, or ``None`` otherwise. The cookie identifies a single
+    occurrence of the action and may be used to pair start and end markers.
+
+    """
+    match = UX_ACTION_MARKER_REGEX.search(text)
+    if not match:
+        return None
+    return match.group('action'), int(match.group('cookie')), match.group('kind') == 'S'
+
+
 class TraceCmdTrace(object):
 
     @property
@@ -330,8 +384,10 @@ class TraceCmdTrace(object):
                     if not found:
                         continue
 
-                thread_string, rest = parts[0].rsplit(' [', 1)
-                cpu_id, ts_string = rest.split('] ')
+                preamble = split_trace_event_preamble(parts[0])
+                if preamble is None:
+                    continue
+                thread_string, cpu_id, ts_string = preamble
                 body = parts[2].strip()
 
                 body_parser = EVENT_PARSER_MAP.get(event_name, default_body_parser)
@@ -339,9 +395,9 @@ class TraceCmdTrace(object):
                     body_parser = regex_body_parser(body_parser)
 
                 yield TraceCmdEvent(
-                    thread=thread_string.strip(),
+                    thread=thread_string,
                     cpu_id=cpu_id,
-                    ts=ts_string.strip(),
+                    ts=ts_string,
                     name=event_name,
                     body=body,
                     parser=body_parser,
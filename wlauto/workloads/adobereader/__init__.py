@@ -17,7 +17,8 @@ import os
 
 from wlauto import AndroidUxPerfWorkload, Parameter
 from wlauto.exceptions import ValidationError
-from wlauto.utils.types import list_of_strings
+from wlauto.utils.assets import parse_image_size, write_pdf
+from wlauto.utils.types import list_of_strings, list_of_ints
 
 
 class AdobeReader(AndroidUxPerfWorkload):
@@ -45,6 +46,14 @@ class AdobeReader(AndroidUxPerfWorkload):
         Search ``document_name`` for each string in the ``search_string_list``
     4. Close the document
 
+    If ``sweep_page_counts`` is specified, a PDF is generated on the host for
+    each page count, with ``words_per_page`` words of text and, optionally, a
+    ``document_image_size`` image on every page. Each of the search strings
+    appears on every page. Steps 1 to 4 are then repeated on each document in
+    turn, with ``_<N>pages`` appended to the name of every action, so that open
+    latency, search latency for each string and the frame statistics of the
+    gestures can be compared as the document grows.
+
     Known working APK version: 16.1
     '''
 
@@ -65,11 +74,32 @@ class AdobeReader(AndroidUxPerfWorkload):
                   using the string as the search term. At least one must be
                   provided.
                   '''),
+        Parameter('sweep_page_counts', kind=list_of_ints, default=None,
+                  constraint=lambda x: all(c > 0 for c in x),
+                  description='''
+                  If specified, a document is generated for each of these page counts and
+                  the test is run on each in turn, instead of on ``document_name``.
+                  '''),
+        Parameter('words_per_page', kind=int, default=300,
+                  constraint=lambda x: x > 0,
+                  description='''
+                  The number of words of text on each page of the generated documents.
+                  The font size is reduced as necessary to fit them on the page.
+                  Ignored unless ``sweep_page_counts`` is specified.
+                  '''),
+        Parameter('document_image_size', kind=str, default=None,
+                  description='''
+                  If specified, as ``<width>x<height>`` in pixels, each page of the
+                  generated documents also holds an image of this size. The images are
+                  incompressible, so this also controls the size of the files. Ignored
+                  unless ``sweep_page_counts`` is specified.
+                  '''),
     ]
 
     def __init__(self, device, **kwargs):
         super(AdobeReader, self).__init__(device, **kwargs)
         self.deployable_assets = [self.document_name]
+        self.document_dimensions = None
         # Adobe only looks for local files in a specific path
         self.adobe_path = self.device.path.join(self.device.external_storage_directory,
                                                 'Android', 'data', 'com.adobe.reader', 'files')
@@ -81,14 +111,36 @@ class AdobeReader(AndroidUxPerfWorkload):
         # Only accept certain file formats
         if os.path.splitext(self.document_name.lower())[1] not in ['.pdf']:
             raise ValidationError('{} must be a PDF file'.format(self.document_name))
+        if self.sweep_page_counts:
+            if self.document_image_size:
+                try:
+                    self.document_dimensions = parse_image_size(self.document_image_size)
+                except ValueError as e:
+                    raise ValidationError(str(e))
+                image_suffix = '_{}x{}'.format(*self.document_dimensions)
+            else:
+                image_suffix = ''
+            self.deployable_assets = ['uxperf_generated_{}pages_{}words{}.pdf'.format(count, self.words_per_page,
+                                                                                      image_suffix)
+                                      for count in self.sweep_page_counts]
+            self.uiauto_params['sweep_filenames'] = self.deployable_assets
+            self.uiauto_params['sweep_page_counts'] = self.sweep_page_counts
 
-    def setup(self, context):
-        super(AdobeReader, self).setup(context)
-        # Create the adobe path if it doesnt exist yet, and move the asset to this location
-        self.device.execute('mkdir -p {}'.format(self.adobe_path))
-        self.device.execute('mv {0}/{1} {2}/{1}'.format(self.device.working_directory, self.document_name, self.adobe_path))
+    def initialize(self, context):
+        super(AdobeReader, self).initialize(context)
+        if self.sweep_page_counts:
+            # Generated into the dependencies directory, where they will be
+            # picked up by the resource resolver when assets are pushed.
+            if not os.path.isdir(self.dependencies_directory):
+                os.makedirs(self.dependencies_directory)
+            for count, name in zip(self.sweep_page_counts, self.deployable_assets):
+                path = os.path.join(self.dependencies_directory, name)
+                if not os.path.isfile(path):
+                    self.logger.debug('Generating {}'.format(name))
+                    write_pdf(path, count, self.words_per_page, self.document_dimensions,
+                              self.search_string_list)
 
-    def teardown(self, context):
-        super(AdobeReader, self).teardown(context)
-        # Remove the asset from the adobe location
-        self.device.execute('rm -rf {0}/{1}'.format(self.adobe_path, self.document_name))
+    def get_asset_path(self, asset):
+        # Adobe only looks for local files in a specific path, where they are
+        # kept between iterations unless clean_assets is set
+        return self._path_on_device(asset, self.adobe_path)
@@ -53,18 +53,34 @@ public void runUiAutomation() throws Exception {
 
         String filename = parameters.getString("filename");
         String[] searchStrings = parameters.getStringArray("search_string_list");
+        String[] sweepFilenames = parameters.getStringArray("sweep_filenames");
+        int[] sweepPageCounts = parameters.getIntArray("sweep_page_counts");
 
         setScreenOrientation(ScreenOrientation.NATURAL);
         runApplicationInitialization();
 
-        openFile(filename);
-        gesturesTest();
-        searchPdfTest(searchStrings);
-        exitDocument();
+        if (sweepFilenames == null) {
+            testDocument(filename, searchStrings, "");
+        } else {
+            // Searching large generated documents can take much longer
+            searchTimeout = TimeUnit.MINUTES.toMillis(5);
+            for (int i = 0; i < sweepFilenames.length; i++) {
+                testDocument(sweepFilenames[i], searchStrings, "_" + sweepPageCounts[i] + "pages");
+            }
+        }
 
         unsetScreenOrientation();
     }
 
+    // Run the tests on a document, appending tagSuffix to the name of each action
+    private void testDocument(final String filename, final String[] searchStrings,
+                              final String tagSuffix) throws Exception {
+        openFile(filename, tagSuffix);
+        gesturesTest(tagSuffix);
+        searchPdfTest(searchStrings, tagSuffix);
+        exitDocument();
+    }
+
     // Get application parameters and clear the initial run dialogues of the application launch.
     public void runApplicationInitialization() throws Exception {
         getPackageParameters();
@@ -128,8 +144,8 @@ public void runUiAutomation() throws Exception {
         actionBarTitle.waitForExists(uiAutoTimeout);
     }
 
-    private void openFile(final String filename) throws Exception {
-        String testTag = "open_document";
+    private void openFile(final String filename, final String tagSuffix) throws Exception {
+        String testTag = "open_document" + tagSuffix;
         ActionLogger logger = new ActionLogger(testTag, parameters);
 
         // Select the local files list from the My Documents view
@@ -171,7 +187,7 @@ public void runUiAutomation() throws Exception {
         logger.stop();
     }
 
-    private void gesturesTest() throws Exception {
+    private void gesturesTest(final String tagSuffix) throws Exception {
         String testTag = "gesture";
 
         // Perform a range of swipe tests at different speeds and on different views
@@ -203,7 +219,7 @@ public void runUiAutomation() throws Exception {
             int steps = pair.getValue().steps;
             int percent = pair.getValue().percent;
 
-            String runName = String.format(testTag + "_" + pair.getKey());
+            String runName = String.format(testTag + "_" + pair.getKey() + tagSuffix);
             ActionLogger logger = new ActionLogger(runName, parameters);
             logger.start();
 
@@ -225,7 +241,7 @@ public void runUiAutomation() throws Exception {
         }
     }
 
-    private void searchPdfTest(final String[] searchStrings) throws Exception {
+    private void searchPdfTest(final String[] searchStrings, final String tagSuffix) throws Exception {
         String testTag = "search";
 
         // Tap the centre to bring up the menu gui
@@ -247,7 +263,7 @@ public void runUiAutomation() throws Exception {
         }
 
         for (int i = 0; i < searchStrings.length; i++) {
-            String runName = String.format(testTag + "_string" + i);
+            String runName = String.format(testTag + "_string" + i + tagSuffix);
             ActionLogger logger = new ActionLogger(runName, parameters);
 
             // Click on the search button icon and enter text in the box.  This closes the keyboard
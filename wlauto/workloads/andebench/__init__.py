@@ -17,6 +17,7 @@ import re
 
 from wlauto import AndroidUiAutoBenchmark, Parameter, Alias
 from wlauto.exceptions import ConfigError
+from wlauto.utils.types import list_of_ints, list_of_strings
 
 
 class Andebench(AndroidUiAutoBenchmark):
@@ -37,6 +38,12 @@ class Andebench(AndroidUiAutoBenchmark):
        - Results displayed in Iterations per second
        - Detailed log file for comprehensive engineering analysis
 
+    If ``thread_sweep`` is set, the benchmark is run with each of the listed thread
+    counts, in each of the ``mode_sweep`` modes, within a single session of the app.
+    Each score is reported as ``<score> <threads> threads`` (with `` native only``
+    appended in native only mode), along with its ``speedup`` over, and parallel
+    ``efficiency`` relative to, the lowest thread count.
+
     """
     package = 'com.eembc.coremark'
     activity = 'com.eembc.coremark.splash'
@@ -54,6 +61,18 @@ class Andebench(AndroidUiAutoBenchmark):
                   description="""
                   If ``true``, AndEBench will execute only the native portion of the benchmark.
                   """),
+        Parameter('thread_sweep', kind=list_of_ints,
+                  description="""
+                  A list of thread counts to run the benchmark with, one after the other, to
+                  measure how its scores scale with the number of threads. If specified,
+                  ``number_of_threads``, ``single_threaded`` and ``native_only`` are ignored.
+                  """),
+        Parameter('mode_sweep', kind=list_of_strings, default=['all'],
+                  description="""
+                  The modes to run each of the ``thread_sweep`` thread counts in: ``native``
+                  for the native portion of the benchmark only, ``all`` for both the native
+                  and Java portions.
+                  """),
     ]
 
     aliases = [
@@ -66,6 +85,9 @@ class Andebench(AndroidUiAutoBenchmark):
     def validate(self):
         if (self.number_of_threads is not None) and (self.single_threaded is not None):  # pylint: disable=E1101
             raise ConfigError('Can\'t specify both number_of_threads and single_threaded parameters.')
+        for mode in self.mode_sweep:  # pylint: disable=E1101
+            if mode not in ['native', 'all']:
+                raise ConfigError('Unknown mode_sweep mode "{}"; must be "native" or "all".'.format(mode))
 
     def setup(self, context):
         if self.number_of_threads is None:  # pylint: disable=access-member-before-definition
@@ -78,11 +100,22 @@ class Andebench(AndroidUiAutoBenchmark):
         self.uiauto_params['native_only'] = False
         if self.native_only:
             self.uiauto_params['native_only'] = True
+        if self.thread_sweep:  # pylint: disable=E1101
+            self.uiauto_params['sweep_threads'] = self.thread_sweep  # pylint: disable=E1101
+            self.uiauto_params['sweep_modes'] = self.mode_sweep  # pylint: disable=E1101
+            # Allow as long for each run as for a single one
+            self.run_timeout = (self.__class__.run_timeout * len(self.thread_sweep) *  # pylint: disable=E1101
+                                len(self.mode_sweep))  # pylint: disable=E1101
         # Called after this setup as modifying uiauto_params
         super(Andebench, self).setup(context)
 
     def update_result(self, context):
         super(Andebench, self).update_result(context)
+        if self.thread_sweep:  # pylint: disable=E1101
+            if self.uiauto_results:
+                return  # Results of a sweep are reported by the UI automation
+            self.logger.warning('No results were reported by the UI automation; its APK may predate '
+                                'thread_sweep, in which case a single run was performed.')
         results = {}
         with open(self.logcat_log) as fh:
             for line in fh:
@@ -29,7 +29,11 @@ import com.arm.wlauto.uiauto.BaseUiAutomation;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @RunWith(AndroidJUnit4.class)
 public class UiAutomation extends BaseUiAutomation {
@@ -39,19 +43,30 @@ public class UiAutomation extends BaseUiAutomation {
     private static int initialTimeoutSeconds = 20;
     private static int shortDelaySeconds = 3;
 
+    private static final Pattern RESULT = Pattern.compile("(AndEMark Native|AndEMark Java)\\s*:\\s*(\\d+)");
+
+    // Whether native only mode has been selected in the settings
+    private boolean nativeSelected = false;
+
     @Test
     public void runUiAutomation() throws Exception{
         initialize_instrumentation();
         Bundle status = new Bundle();
         Bundle params = getParams();
-        String numThreads = params.getString("number_of_threads");
+        String numThreads = String.valueOf(params.getInt("number_of_threads"));
         Boolean nativeOnly = params.getBoolean("native_only");
+        int[] sweepThreads = params.getIntArray("sweep_threads");
+        String[] sweepModes = params.getStringArray("sweep_modes");
         status.putString("product", mDevice.getProductName());
 
         waitForStartButton();
-        setConfiguration(numThreads, nativeOnly);
-        hitStart();
-        waitForAndExtractResuts();
+        if (sweepThreads != null) {
+            runSweep(sweepThreads, sweepModes);
+        } else {
+            setConfiguration(numThreads, nativeOnly);
+            hitStart();
+            waitForAndExtractResuts();
+        }
 
         mInstrumentation.sendStatus(Activity.RESULT_OK, status);
     }
@@ -72,10 +87,12 @@ public class UiAutomation extends BaseUiAutomation {
         UiObject settingsButton = mDevice.findObject(selector.clickable(true));
         settingsButton.click();
 
-        if (nativeOnly) {
-            UiObject nativeButton = mDevice.findObject(selector.textContains("Native"));
+        UiObject nativeButton = mDevice.findObject(selector.textContains("Native"));
+        boolean nativeChecked = nativeButton.isCheckable() ? nativeButton.isChecked() : nativeSelected;
+        if (nativeOnly != nativeChecked) {
             nativeButton.click();
         }
+        nativeSelected = nativeOnly;
 
         UiObject threadNumberField = mDevice.findObject(selector.className("android.widget.EditText"));
         threadNumberField.clearTextField();
@@ -102,7 +119,7 @@ public class UiAutomation extends BaseUiAutomation {
         sleep(shortDelaySeconds);
     }
 
-    public void waitForAndExtractResuts() throws Exception {
+    public String waitForAndExtractResuts() throws Exception {
         UiSelector selector = new UiSelector();
         UiObject runningText = mDevice.findObject(selector.textContains("Running...")
                                                     .className("android.widget.TextView")
@@ -113,7 +130,72 @@ public class UiAutomation extends BaseUiAutomation {
                                                     .className("android.widget.TextView")
                                                     .packageName("com.eembc.coremark"));
         resultText.waitForExists(TimeUnit.SECONDS.toMillis(shortDelaySeconds));
-        Log.v(TAG, resultText.getText());
+        String results = resultText.getText();
+        Log.v(TAG, results);
         sleep(shortDelaySeconds);
+        return results;
+    }
+
+    /**
+     * Run the benchmark for each combination of thread count and mode
+     * ("native" for native only, "all" for both native and Java) within this
+     * session of the app, reporting each score as
+     * "<score> <threads> threads[ native only]". Once all thread counts of a
+     * mode have run, the speedup of each over the lowest thread count, and
+     * the parallel efficiency this represents, are reported as
+     * "<score> <threads> threads[ native only] speedup" and "... efficiency",
+     * giving the scaling curve of the score against threads.
+     */
+    public void runSweep(int[] threads, String[] modes) throws Exception {
+        int baselineThreads = Integer.MAX_VALUE;
+        for (int count : threads) {
+            baselineThreads = Math.min(baselineThreads, count);
+        }
+
+        for (String mode : modes) {
+            boolean nativeOnly = mode.equals("native");
+            String suffix = nativeOnly ? " native only" : "";
+            // Score name -> thread count -> score
+            Map<String, Map<Integer, Double>> scores = new LinkedHashMap<String, Map<Integer, Double>>();
+
+            for (int count : threads) {
+                returnToStartScreen();
+                setConfiguration(String.valueOf(count), nativeOnly);
+                hitStart();
+                Matcher match = RESULT.matcher(waitForAndExtractResuts());
+                while (match.find()) {
+                    double score = Double.parseDouble(match.group(2));
+                    reportResult(match.group(1) + " " + count + " threads" + suffix, score);
+                    if (!scores.containsKey(match.group(1))) {
+                        scores.put(match.group(1), new LinkedHashMap<Integer, Double>());
+                    }
+                    scores.get(match.group(1)).put(count, score);
+                }
+            }
+
+            for (Map.Entry<String, Map<Integer, Double>> entry : scores.entrySet()) {
+                Double baseline = entry.getValue().get(baselineThreads);
+                if (baseline == null || baseline == 0) {
+                    continue;
+                }
+                for (Map.Entry<Integer, Double> score : entry.getValue().entrySet()) {
+                    String name = entry.getKey() + " " + score.getKey() + " threads" + suffix;
+                    double speedup = score.getValue() / baseline;
+                    reportResult(name + " speedup", speedup);
+                    reportResult(name + " efficiency",
+                                 speedup * baselineThreads / score.getKey() * 100, "%");
+                }
+            }
+        }
+    }
+
+    // Go back from the results to the start screen if needed
+    private void returnToStartScreen() throws Exception {
+        UiObject startButton = mDevice.findObject(new UiSelector().className("android.widget.ImageButton")
+                                                                  .packageName("com.eembc.coremark"));
+        if (!startButton.exists()) {
+            mDevice.pressBack();
+        }
+        waitForStartButton();
     }
 }
@@ -91,6 +91,11 @@ class Antutu(AndroidUiAutoBenchmark):
 
     def update_result(self, context):
         super(Antutu, self).update_result(context)
+        # Later versions report their results through the instrumentation; 3.3.2
+        # and uiauto APKs that predate reportResult() still need them to be
+        # extracted from logcat.
+        if self.version != '3.3.2' and self.uiauto_results:
+            return
         with open(self.logcat_log) as fh:
             if self.version == '3.3.2':
                 metrics = extract_older_version_metrics(fh)
@@ -26,12 +26,14 @@ import android.support.test.uiautomator.UiSelector;
 import android.util.Log;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
+import com.arm.wlauto.uiauto.CompletionDetector;
+import com.arm.wlauto.uiauto.ResultScraper;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 // Import the uiautomator libraries
@@ -44,6 +46,10 @@ public class UiAutomation extends BaseUiAutomation {
     public static String TestButton6 = "com.antutu.ABenchMark:id/start_test_text";
     private static int initialTimeoutSeconds = 20;
 
+    // If the benchmark is run multiple times the same metric will be reported
+    // once per run; later runs are suffixed with the run number.
+    private Map<String, Integer> metricCounts = new HashMap<String, Integer>();
+
 @Test
 public void runUiAutomation() throws Exception{
         initialize_instrumentation();
@@ -69,6 +75,7 @@ public void runUiAutomation() throws Exception{
             int iteration = 0;
             dismissNewVersionNotificationIfNecessary();
             while (true) {
+                    CompletionDetector detector = startResultsDetector(version);
                     if(version.equals("6.0.1"))
                         hitTestButtonVersion5(TestButton6);
                     else if (version.equals("5.3.0")) {
@@ -84,11 +91,11 @@ public void runUiAutomation() throws Exception{
                     }
 
                     if(version.equals("6.0.1")) {
-                        waitForVersion6Results();
+                        waitForVersion6Results(detector);
                         extractResults6();
                     }
                     else {
-                        waitForVersion4Results();
+                        waitForVersion4Results(detector);
                         viewDetails();
                         extractResults();
                     }
@@ -193,39 +200,50 @@ public void runUiAutomation() throws Exception{
         startButton.click();
     }
 
-    public void waitForVersion4Results() throws Exception {
-        // The observed behaviour seems to vary between devices. On some platforms,
-        // the benchmark terminates in the barchart screen; on others, it terminates in
-        // details screen. So we have to wait for either and then act appropriatesl (on the barchart
-        // screen a back button press is required to get to the details screen.
-        UiSelector selector = new UiSelector();
-        UiObject barChart = mDevice.findObject(new UiSelector().className("android.widget.TextView")
-                                                               .text("Bar Chart"));
-        UiObject detailsButton = mDevice.findObject(new UiSelector().className("android.widget.Button")
-                                                                    .text("Details"));
-        for (int i = 0; i < 60; i++) {
-            if (detailsButton.exists() || barChart.exists()) {
-                break;
-            }
-            sleep(5);
+    // Watch for the results screen, so that the run is timed from when the
+    // test is started to when its results are shown. The results screen of
+    // the previous iteration is still shown when the detector is started, so
+    // its views only count once they have left the screen
+    public CompletionDetector startResultsDetector(String version) throws Exception {
+        CompletionDetector detector = new CompletionDetector(mInstrumentation);
+        if (version.equals("6.0.1")) {
+            detector.addUiReappearTrigger(mDevice.findObject(new UiSelector().className("android.widget.TextView")
+                                                                             .text("QRCode of result")));
+            detector.addUiReappearTrigger(mDevice.findObject(new UiSelector().className("android.widget.TextView")
+                                                                             .resourceIdMatches(".*tv_score.*")));
+        } else {
+            // The observed behaviour seems to vary between devices. On some platforms,
+            // the benchmark terminates in the barchart screen; on others, it terminates in
+            // details screen. So we have to wait for either.
+            detector.addUiReappearTrigger(mDevice.findObject(new UiSelector().className("android.widget.TextView")
+                                                                             .text("Bar Chart")));
+            detector.addUiReappearTrigger(mDevice.findObject(new UiSelector().className("android.widget.Button")
+                                                                             .text("Details")));
         }
+        detector.start();
+        return detector;
+    }
+
+    public void waitForResults(CompletionDetector detector, long timeout) throws Exception {
+        CompletionDetector.Completion completion = detector.waitForCompletion(timeout);
+        detector.stop();
+        if (completion != null) {
+            reportCompletion(getRunMetricName("benchmark"), completion);
+        }
+    }
 
+    public void waitForVersion4Results(CompletionDetector detector) throws Exception {
+        // On the barchart screen a back button press is required to get to the details screen.
+        waitForResults(detector, TimeUnit.MINUTES.toMillis(5));
+        UiObject barChart = mDevice.findObject(new UiSelector().className("android.widget.TextView")
+                                                               .text("Bar Chart"));
         if (barChart.exists()) {
             mDevice.pressBack();
         }
     }
 
-    public void waitForVersion6Results() throws Exception {
-        UiObject qrText = mDevice.findObject(new UiSelector().className("android.widget.TextView")
-                                                             .text("QRCode of result"));
-        UiObject testAgain = mDevice.findObject(new UiSelector().className("android.widget.TextView")
-                .resourceIdMatches(".*tv_score.*"));
-        for (int i = 0; i < 120; i++) {
-            if (qrText.exists() || testAgain.exists()) {
-                break;
-            }
-            sleep(5);
-        }
+    public void waitForVersion6Results(CompletionDetector detector) throws Exception {
+        waitForResults(detector, TimeUnit.MINUTES.toMillis(10));
     }
 
     public void viewDetails() throws Exception {
@@ -239,7 +257,7 @@ public void runUiAutomation() throws Exception{
         //Overal result
         UiObject result = mDevice.findObject(new UiSelector().resourceId("com.antutu.ABenchMark:id/tv_score_name"));
         if (result.exists()) {
-            Log.v(TAG, String.format("ANTUTU RESULT: Overall Score: %s", result.getText()));
+            reportAntutuResult("Overall Score", result.getText());
         }
 
         // individual scores
@@ -255,7 +273,7 @@ public void runUiAutomation() throws Exception{
         UiObject result = resultLayout.getChild(selector.resourceId("com.antutu.ABenchMark:id/tv_score_value"));
 
         if (result.exists()) {
-            Log.v(TAG, String.format("ANTUTU RESULT: %s Score: %s", section, result.getText()));
+            reportAntutuResult(section + " Score", result.getText());
         }
     }
 
@@ -272,43 +290,40 @@ public void runUiAutomation() throws Exception{
                                                .childSelector(relativeLayoutSelector)
                                                .childSelector(resultTextSelector));
         if (result.exists()) {
-            Log.v(TAG, String.format("ANTUTU RESULT: Overall Score: %s", result.getText()));
+            reportAntutuResult("Overall Score", result.getText());
         }
     }
 
     public void extractSectionResults() throws Exception {
-        UiSelector selector = new UiSelector();
-        Set<String> processedMetrics = new HashSet<String>();
-
-        actuallyExtractSectionResults(processedMetrics);
-        UiScrollable resultsList = new UiScrollable(selector.className("android.widget.ScrollView"));
-        // Note: there is an assumption here that the entire results list fits on at most
-        //       two screens on the device. Given then number of entries in the current
-        //       antutu verion and the devices we're dealing with, this is a reasonable
-        //       assumption. But if this changes, this will need to be adapted to scroll more
-        //       slowly.
-        resultsList.scrollToEnd(10);
-        actuallyExtractSectionResults(processedMetrics);
+        UiScrollable resultsList = new UiScrollable(new UiSelector().className("android.widget.ScrollView"));
+
+        // Every result is a TableRow holding the metric name and its value.
+        ResultScraper scraper = new ResultScraper(mDevice);
+        scraper.addRule(ResultScraper.siblingPairs("android.widget.TableRow"));
+
+        Map<String, String> results = scraper.scrape(resultsList, 10);
+        for (Map.Entry<String, String> result : results.entrySet()) {
+            reportAntutuResult(result.getKey(), result.getValue());
+        }
     }
 
-    public void actuallyExtractSectionResults(Set<String> processedMetrics) throws Exception {
-        UiSelector selector = new UiSelector();
+    public String getRunMetricName(String metric) {
+        int count = metricCounts.containsKey(metric) ? metricCounts.get(metric) + 1 : 1;
+        metricCounts.put(metric, count);
+        return count > 1 ? metric + "_" + count : metric;
+    }
 
-        for (int i = 1; i < 8; i += 2) {
-            UiObject table = mDevice.findObject(selector.className("android.widget.TableLayout").index(i));
-            for (int j = 0; j < 3; j += 2) {
-                UiObject row = table.getChild(selector.className("android.widget.TableRow").index(j));
-                UiObject metric =  row.getChild(selector.className("android.widget.TextView").index(0));
-                UiObject value =  row.getChild(selector.className("android.widget.TextView").index(1));
-
-                if (metric.exists() && value.exists()) {
-                    String metricText = metric.getText();
-                    if (!processedMetrics.contains(metricText)) {
-                        Log.v(TAG, String.format("ANTUTU RESULT: %s %s", metric.getText(), value.getText()));
-                        processedMetrics.add(metricText);
-                    }
-                }
-            }
+    public void reportAntutuResult(String metric, String valueText) {
+        String name = getRunMetricName(metric.split(":")[0].trim());
+        // Graphics results report the resolution in square brackets
+        // as part of the value.
+        if (valueText.contains("]")) {
+            valueText = valueText.split("]")[1];
+        }
+        try {
+            reportResult(name.replace(' ', '_'), Integer.parseInt(valueText.trim()));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Could not parse the value of " + metric + ": " + valueText);
         }
     }
 
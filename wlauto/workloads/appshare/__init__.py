@@ -59,6 +59,12 @@ class AppShare(AndroidUxPerfWorkload):
         4.1. Search for the ``skype_contact_name`` from the Contacts list
         4.2. Dismiss any update popup that appears
         4.3. The image is posted in the Chat
+
+    Each share is logged as a ``share_<target>`` action, and broken down into
+    ``share_<target>_sheet`` (opening the share sheet and finding the target),
+    ``share_<target>_cold_start`` or ``share_<target>_warm_start`` (until the
+    target app is shown, depending on whether it was already running) and
+    ``share_<target>_content_ready`` (until the target app's UI settles).
     '''
 
     parameters = [
@@ -3,7 +3,6 @@ package com.arm.wlauto.uiauto.appshare;
 import android.os.Bundle;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
-import android.support.test.uiautomator.UiScrollable;
 import android.support.test.uiautomator.UiSelector;
 
 import com.arm.wlauto.uiauto.UxPerfUiAutomation;
@@ -13,8 +12,6 @@ import org.junit.runner.RunWith;
 
 import java.util.concurrent.TimeUnit;
 
-import static com.arm.wlauto.uiauto.BaseUiAutomation.FindByCriteria.BY_DESC;
-
 // Import the uiautomator libraries
 
 @RunWith(AndroidJUnit4.class)
@@ -30,8 +27,6 @@ public class UiAutomation extends UxPerfUiAutomation {
     private com.arm.wlauto.uiauto.skype.UiAutomation skype =
         new com.arm.wlauto.uiauto.skype.UiAutomation();
 
-    public Bundle parameters;
-
 @Test
 public void runUiAutomation() throws Exception {
         // Override superclass value
@@ -92,7 +87,7 @@ public void runUiAutomation() throws Exception {
     private void sendToGmail(String recipient) throws Exception {
         String gID = gmail.getPackageID();
 
-        shareUsingApp("Gmail", "gmail");
+        shareUsingApp("Gmail", parameters.getString("gmail_package"), "gmail");
 
         gmail.clearFirstRunDialogues();
 
@@ -102,7 +97,7 @@ public void runUiAutomation() throws Exception {
             // After the initial share request on some devices Gmail returns back
             // to the launching app, so we need to share the photo once more and
             // wait for Gmail to sync.
-            shareUsingApp("Gmail", "gmail_retry");
+            shareUsingApp("Gmail", parameters.getString("gmail_package"), "gmail_retry");
 
             gmail.clearFirstRunDialogues();
         }
@@ -114,46 +109,30 @@ public void runUiAutomation() throws Exception {
     }
 
     private void logIntoSkype(String loginName, String loginPass)  throws Exception {
-        shareUsingApp("Skype", "skype_setup");
+        shareUsingApp("Skype", parameters.getString("skype_package"), "skype_setup");
 
         skype.handleLoginScreen(loginName, loginPass);
 
-        sleep(10); // Pause while the app settles before returning
+        // Let the app settle before returning
+        waitForUiIdle(SHARE_QUIET_MILLIS, SHARE_READY_TIMEOUT_MILLIS);
     }
 
     private void sendToSkype(String contactName) throws Exception {
-        shareUsingApp("Skype", "skype");
+        shareUsingApp("Skype", parameters.getString("skype_package"), "skype");
 
         skype.searchForContact(contactName);
         skype.dismissUpdatePopupIfPresent();
 
-        sleep(10); // Pause while the app settles before returning
+        // Let the app settle before returning
+        waitForUiIdle(SHARE_QUIET_MILLIS, SHARE_READY_TIMEOUT_MILLIS);
     }
 
-    private void shareUsingApp(String appName, String tagName) throws Exception {
-        String testTag = "share";
-        ActionLogger logger = new ActionLogger(testTag + "_" + tagName, parameters);
-
-        clickUiObject(BY_DESC, "Share", "android.widget.ImageView");
-        UiScrollable applicationGrid =
-            new UiScrollable(new UiSelector().resourceId(googlephotos.getPackageID() + "application_grid"));
-        if (!applicationGrid.exists()){
-            applicationGrid =
-                new UiScrollable(new UiSelector().resourceId(googlephotos.getPackageID() + "share_expander"));
-        }
-        UiObject openApp =
-            mDevice.findObject(new UiSelector().text(appName)
-                                               .className("android.widget.TextView"));
-        // On some devices the application_grid has many entries, so we have to swipe up to make
-        // sure all the entries are visable.  This will also stop entries at the bottom being
-        // obscured by the bottom action bar.
-        applicationGrid.swipeUp(10);
-        while (!openApp.exists()) {
-            // In the rare case the grid is larger than the screen swipe up
-            applicationGrid.swipeUp(10);
-        }
-        logger.start();
-        openApp.clickAndWaitForNewWindow();
-        logger.stop();
+    private void shareUsingApp(String appName, String targetPackage, String tagName)
+            throws Exception {
+        String gpID = googlephotos.getPackageID();
+        UiObject shareButton = getUiObjectByDescription("Share", "android.widget.ImageView");
+        shareUsingApp(shareButton, appName, targetPackage, tagName,
+                      new UiSelector().resourceId(gpID + "application_grid"),
+                      new UiSelector().resourceId(gpID + "share_expander"));
     }
 }
@@ -59,6 +59,9 @@ class Caffeinemark(AndroidUiAutoBenchmark):
 
     def update_result(self, context):
         super(Caffeinemark, self).update_result(context)
+        if self.uiauto_results:
+            return
+        # Fall back to the results logged by uiauto APKs that predate reportResult()
         with open(self.logcat_log) as fh:
             for line in fh:
                 match = self.regex.search(line)
@@ -22,13 +22,15 @@ import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiObjectNotFoundException;
 import android.support.test.uiautomator.UiSelector;
-import android.util.Log;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
+import com.arm.wlauto.uiauto.ResultScraper;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Map;
+
 // Import the uiautomator libraries
 
 @RunWith(AndroidJUnit4.class)
@@ -67,7 +69,7 @@ public void runUiAutomation() throws Exception {
                                                                         .instance(1));
         UiObject overallScore = linearLayoutOverallScore.getChild(selector.className("android.widget.TextView")
                                                                           .instance(2));
-        Log.v(TAG, "CAFFEINEMARK RESULT: OverallScore " + overallScore.getText());
+        reportResult("OverallScore", Double.parseDouble(overallScore.getText()));
     }
 
     public void extractDetailedScores() throws Exception {
@@ -77,14 +79,15 @@ public void runUiAutomation() throws Exception {
         detailsButton.click();
         sleep(2);
 
-        UiObject linearObject;
-        UiObject detailedScore;
-        for (int i = 1; i <= 6; i++) {
-          linearObject = mDevice.findObject(selector.className("android.widget.LinearLayout")
-                                              .instance(i));
-          detailedScore = linearObject.getChild(selector.className("android.widget.TextView")
-                                                        .instance(1));
-          Log.v(TAG,"CAFFEINEMARK RESULT: " + categories[i-1] + " " + detailedScore.getText());
+        // Detailed scores are not labelled on screen; the n-th LinearLayout
+        // (after the overall score) holds the score for categories[n].
+        ResultScraper scraper = new ResultScraper(mDevice);
+        scraper.addRule(ResultScraper.indexed(categories, "android.widget.LinearLayout", 1,
+                                              "android.widget.TextView", 1));
+
+        Map<String, String> results = scraper.scrape();
+        for (Map.Entry<String, String> result : results.entrySet()) {
+            reportResult(result.getKey(), Double.parseDouble(result.getValue()));
         }
     }
 }
@@ -25,6 +25,14 @@ class Cameracapture(UiAutomatorWorkload):
     description = """
     Uses in-built Android camera app to take photos.
 
+    The workload watches the camera directory (``DCIM/Camera``) for the photos
+    being saved, and reports the distribution of the time from triggering each
+    capture until its file has been written as ``capture_<app>_latency_*``
+    metrics, along with the number of captures that were never saved. If
+    ``burst_captures`` is set, that many captures are then triggered back to
+    back, and the rate at which they are saved is reported as
+    ``capture_<app>_burst_rate``.
+
     """
     package = 'com.google.android.gallery3d'
     activity = 'com.android.camera.CameraActivity'
@@ -38,12 +46,19 @@ class Cameracapture(UiAutomatorWorkload):
                   description='Number of photos to be taken.'),
         Parameter('time_between_captures', kind=int, default=5,
                   description='Time, in seconds, between two consecutive camera clicks.'),
+        Parameter('burst_captures', kind=int, default=0,
+                  description='''
+                  Number of captures to trigger back to back, without waiting for
+                  each to be saved, after the timed captures. ``0`` disables the
+                  burst.
+                  '''),
     ]
 
     def initialize(self, context):
         api = self.device.get_sdk_version()
         self.uiauto_params['no_of_captures'] = self.no_of_captures
         self.uiauto_params['time_between_captures'] = self.time_between_captures
+        self.uiauto_params['burst_captures'] = self.burst_captures
         self.uiauto_params['api_level'] = api
         self.package = self.api_packages[api]
         version = self.device.get_installed_package_version(self.package) or ''
@@ -17,22 +17,29 @@
 package com.arm.wlauto.uiauto.cameracapture;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiSelector;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
+import com.arm.wlauto.uiauto.CaptureObserver;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(AndroidJUnit4.class)
 public class UiAutomation extends BaseUiAutomation {
 
     public static String TAG = "cameracapture";
+    // Longest a photo may take to be saved before it is counted as missed
+    public static final long CAPTURE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
     int timeDurationBetweenEachCapture = 0;
+    int burstCaptures = 0;
     int sleepTime = 2;
     int iterations = 0;
     int api = 0;
@@ -45,6 +52,7 @@ public void runUiAutomation() throws Exception {
         if (parameters.size() > 0) {
             iterations = parameters.getInt("no_of_captures");
             timeDurationBetweenEachCapture = parameters.getInt("time_between_captures");
+            burstCaptures = parameters.getInt("burst_captures");
             api = parameters.getInt("api_level");
             String versionString = parameters.getString("version");
             version = splitVersion(versionString);
@@ -78,10 +86,7 @@ public void runUiAutomation() throws Exception {
         // click to capture photos
         UiObject clickCaptureButton = mDevice.findObject(new UiSelector().descriptionMatches("Shutter button"));
 
-        for (int i = 0; i < iterations; i++) {
-            clickCaptureButton.longClick();
-            sleep(timeDurationBetweenEachCapture);
-        }
+        capturePhotos(clickCaptureButton, "aosp");
         mDevice.pressBack();
     }
 
@@ -102,10 +107,7 @@ public void runUiAutomation() throws Exception {
         // click to capture photos
         UiObject clickCaptureButton = mDevice.findObject(new UiSelector().resourceId("com.android.camera2:id/photo_video_button"));
 
-        for (int i = 0; i < iterations; i++) {
-            clickCaptureButton.longClick();
-            sleep(timeDurationBetweenEachCapture);
-        }
+        capturePhotos(clickCaptureButton, "google_v3_2");
     }
 
     private void takePhotosGoogle() throws Exception
@@ -122,9 +124,70 @@ public void runUiAutomation() throws Exception {
         // click to capture photos
         UiObject clickCaptureButton = mDevice.findObject(new UiSelector().descriptionMatches("Shutter"));
 
-        for (int i = 0; i < iterations; i++) {
-            clickCaptureButton.longClick();
-            sleep(timeDurationBetweenEachCapture);
+        capturePhotos(clickCaptureButton, "google");
+    }
+
+    /**
+     * Take no_of_captures photos time_between_captures seconds apart,
+     * reporting the distribution of the time from triggering each capture
+     * until its file has been written as capture_<path>_latency. Then, if
+     * burst_captures is set, trigger that many captures back to back and
+     * report the rate at which they are saved as capture_<path>_burst_rate.
+     */
+    private void capturePhotos(UiObject shutter, String path) throws Exception {
+        String testTag = "capture_" + path;
+        CaptureObserver observer =
+            new CaptureObserver(CaptureObserver.getDefaultCameraDirectory(), ".jpg", ".jpeg");
+        observer.startWatching();
+        try {
+            double[] latencies = new double[iterations];
+            int captured = 0;
+            long intervalMillis = TimeUnit.SECONDS.toMillis(timeDurationBetweenEachCapture);
+            for (int i = 0; i < iterations; i++) {
+                observer.clear();
+                long startTime = System.nanoTime();
+                shutter.longClick();
+                CaptureObserver.Capture capture = observer.waitForCapture(CAPTURE_TIMEOUT_MILLIS);
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                if (capture != null) {
+                    latencies[captured++] = (capture.time - startTime) / 1e6;
+                }
+                SystemClock.sleep(Math.max(0, intervalMillis - elapsedMillis));
+            }
+            reportDistribution(testTag + "_latency", Arrays.copyOf(latencies, captured), "ms");
+            reportResult(testTag + "_missed", iterations - captured, null, true);
+
+            if (burstCaptures > 0) {
+                captureBurst(shutter, observer, testTag);
+            }
+        } finally {
+            observer.stopWatching();
+        }
+    }
+
+    private void captureBurst(UiObject shutter, CaptureObserver observer, String testTag)
+            throws Exception {
+        observer.clear();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < burstCaptures; i++) {
+            shutter.longClick();
+        }
+
+        // Captures the application ignored, e.g. as the shutter was disabled
+        // while saving, are not waited for beyond the timeout
+        int captured = 0;
+        long lastTime = startTime;
+        CaptureObserver.Capture capture;
+        while (captured < burstCaptures
+                && (capture = observer.waitForCapture(CAPTURE_TIMEOUT_MILLIS)) != null) {
+            captured++;
+            lastTime = capture.time;
+        }
+
+        reportResult(testTag + "_burst_captured", captured);
+        if (captured > 0) {
+            reportResult(testTag + "_burst_rate", captured / ((lastTime - startTime) / 1e9),
+                         "captures/s");
         }
     }
 }
@@ -25,6 +25,16 @@ class Camerarecord(UiAutomatorWorkload):
     Uses in-built Android camera app to record the video for given interval
     of time.
 
+    The workload watches the camera directory (``DCIM/Camera``) while recording
+    and reports, as ``record_<app>_<recording_mode>_*`` metrics:
+
+      - ``start_latency``: from pressing the record button until the video file
+        is first written to
+      - ``stop_latency``: from pressing it again until the file is finalised
+      - ``file_size``, ``duration`` and ``bitrate`` of the video
+      - ``frames``, ``frame_rate`` and ``dropped_frames``, from the timestamps
+        of the frames in the video file
+
     """
     package = 'com.google.android.gallery3d'
     activity = 'com.android.camera.CameraActivity'
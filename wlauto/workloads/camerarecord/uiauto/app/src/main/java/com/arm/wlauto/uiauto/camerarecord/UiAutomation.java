@@ -16,22 +16,32 @@
 
 package com.arm.wlauto.uiauto.camerarecord;
 
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiSelector;
+import android.util.Log;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
+import com.arm.wlauto.uiauto.CaptureObserver;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(AndroidJUnit4.class)
 public class UiAutomation extends BaseUiAutomation {
 
     public static String TAG = "camerarecord";
+    public static final long RECORD_START_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    public static final long RECORD_STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
     int timeToRecord = 0;
     int timeout = 4;
     int sleepTime = 2;
@@ -75,11 +85,7 @@ public void runUiAutomation() throws Exception {
         sleep(sleepTime);
 
         UiObject clickRecordingButton = mDevice.findObject(new UiSelector().descriptionMatches("Shutter button"));
-        clickRecordingButton.longClick();
-        sleep(recordingTime);
-
-        // Stop video recording
-        clickRecordingButton.longClick();
+        recordVideo(clickRecordingButton, "aosp");
         mDevice.pressBack();
     }
 
@@ -108,11 +114,7 @@ public void runUiAutomation() throws Exception {
 
         // click to capture photos
         UiObject clickCaptureButton = mDevice.findObject(new UiSelector().resourceId(captureButtonId));
-        clickCaptureButton.longClick();
-        sleep(recordingTime);
-
-        // stop video recording
-        clickCaptureButton.longClick();
+        recordVideo(clickCaptureButton, "google_v3_2");
     }
 
     void recordVideoGoogle() throws Exception {
@@ -126,11 +128,113 @@ public void runUiAutomation() throws Exception {
         sleep(sleepTime);
 
         UiObject clickRecordingButton = mDevice.findObject(new UiSelector().descriptionMatches("Shutter"));
-        clickRecordingButton.longClick();
-        sleep(recordingTime);
+        recordVideo(clickRecordingButton, "google");
+    }
 
-        // Stop video recording
-        clickRecordingButton.longClick();
+    /**
+     * Record a video for recording_time seconds, reporting, as
+     * record_<path>_<recording_mode>_* metrics, the time from pressing the
+     * record button until the video file is first written to, the time from
+     * pressing it again until the file has been finalised, and the properties
+     * of the resulting video (see reportVideoStats()).
+     */
+    private void recordVideo(UiObject recordButton, String path) throws Exception {
+        String testTag = "record_" + path + "_" + recordingMode;
+        File directory = CaptureObserver.getDefaultCameraDirectory();
+        CaptureObserver observer = new CaptureObserver(directory, ".mp4", ".3gp");
+        observer.startWatching();
+        try {
+            long startTime = System.nanoTime();
+            recordButton.longClick();
+            CaptureObserver.Capture firstWrite = observer.waitForFirstWrite(RECORD_START_TIMEOUT_MILLIS);
+            if (firstWrite != null) {
+                reportResult(testTag + "_start_latency", (firstWrite.time - startTime) / 1e6, "ms", true);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            SystemClock.sleep(Math.max(0, TimeUnit.SECONDS.toMillis(recordingTime) - elapsedMillis));
+
+            // Stop video recording
+            long stopTime = System.nanoTime();
+            recordButton.longClick();
+            CaptureObserver.Capture video = observer.waitForCapture(RECORD_STOP_TIMEOUT_MILLIS);
+            if (video == null) {
+                Log.w(TAG, "No video was saved within " + RECORD_STOP_TIMEOUT_MILLIS + " ms");
+                return;
+            }
+            reportResult(testTag + "_stop_latency", (video.time - stopTime) / 1e6, "ms", true);
+            reportVideoStats(testTag, new File(directory, video.name));
+        } finally {
+            observer.stopWatching();
+        }
     }
-}
 
+    /**
+     * Report the size, duration, bitrate, number of frames and frame rate of
+     * a recorded video, and the number of frames dropped while recording it.
+     *
+     * Dropped frames are found from the timestamps of the samples of the
+     * video track: a gap of more than one and a half times the typical
+     * (median) frame interval is counted as the number of whole frame
+     * intervals missing from it.
+     */
+    private void reportVideoStats(String testTag, File file) throws Exception {
+        long[] times = readVideoSampleTimes(file);
+        if (times.length < 2) {
+            return;
+        }
+        Arrays.sort(times);  // Samples are stored in decoding order
+
+        long[] intervals = new long[times.length - 1];
+        for (int i = 1; i < times.length; i++) {
+            intervals[i - 1] = times[i] - times[i - 1];
+        }
+        long[] sortedIntervals = intervals.clone();
+        Arrays.sort(sortedIntervals);
+        long frameInterval = Math.max(1, sortedIntervals[sortedIntervals.length / 2]);
+        long dropped = 0;
+        for (long interval : intervals) {
+            if (interval > frameInterval * 3 / 2) {
+                dropped += Math.round((double) interval / frameInterval) - 1;
+            }
+        }
+
+        // Timestamps are in microseconds; the last frame lasts one interval
+        double duration = (times[times.length - 1] - times[0] + frameInterval) / 1e6;
+        long size = file.length();
+        reportResult(testTag + "_file_size", size / 1024.0, "kB");
+        reportResult(testTag + "_duration", duration, "s");
+        reportResult(testTag + "_bitrate", size * 8 / duration / 1e6, "Mbit/s");
+        reportResult(testTag + "_frames", times.length);
+        reportResult(testTag + "_frame_rate", times.length / duration, "fps");
+        reportResult(testTag + "_dropped_frames", dropped, null, true);
+    }
+
+    // Presentation times, in microseconds, of the samples of the first video track
+    private long[] readVideoSampleTimes(File file) throws Exception {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(file.getPath());
+            for (int track = 0; track < extractor.getTrackCount(); track++) {
+                String mime = extractor.getTrackFormat(track).getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("video/")) {
+                    extractor.selectTrack(track);
+                    break;
+                }
+            }
+
+            long[] times = new long[1024];
+            int count = 0;
+            long time;
+            while ((time = extractor.getSampleTime()) >= 0) {
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                }
+                times[count++] = time;
+                extractor.advance();
+            }
+            return Arrays.copyOf(times, count);
+        } finally {
+            extractor.release();
+        }
+    }
+}
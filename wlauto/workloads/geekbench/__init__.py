@@ -56,6 +56,16 @@ class Geekbench(AndroidUiAutoBenchmark):
     Geekbench scoring methedology:
     http://support.primatelabs.com/kb/geekbench/interpreting-geekbench-scores
 
+    In ``session_mode``, each results file is parsed on the device as soon as
+    Geekbench has written it, and its scores are streamed back straight away
+    rather than pulled and parsed after the whole run. When ``times`` is more
+    than one, the mean, standard deviation and coefficient of variation of
+    each score across the runs are reported as ``<score>_mean``,
+    ``<score>_stdev`` and ``<score>_cv``. Completion of a run is detected from
+    its results file rather than from the UI. This requires a rooted device, as
+    the results are in Geekbench's private data directory, and Geekbench 3.4.1
+    or later, which always write results files.
+
     """
     summary_metrics = ['score', 'multicore_score']
     versions = {
@@ -95,6 +105,10 @@ class Geekbench(AndroidUiAutoBenchmark):
                                '/data/data/com.primatelabs.geekbench folder.  This allows the '
                                'workload to be run on unrooted devices and the results extracted '
                                'manually later.')),
+        Parameter('session_mode', kind=bool, default=False,
+                  description=('If ``True``, results are parsed on the device as soon as each run '
+                               'completes, and the run-to-run variance of each score is reported. '
+                               'Requires a rooted device.')),
     ]
 
     is_corporate = False
@@ -112,11 +126,16 @@ class Geekbench(AndroidUiAutoBenchmark):
         self.uiauto_params['version'] = self.version
         self.uiauto_params['times'] = self.times
         self.uiauto_params['is_corporate'] = self.is_corporate
+        self.uiauto_params['session_mode'] = self.session_mode
+        self.root_script = None
         self.run_timeout = self.timeout * self.times
         self.exact_apk_version = self.version
 
     def update_result(self, context):
         super(Geekbench, self).update_result(context)
+        if self.session_mode and not self.uiauto_results:
+            self.logger.warning('No scores were reported by the UI automation; its APK may predate '
+                                'session_mode. Parsing the results files on the host instead.')
         if not self.disable_update_result:
             major_version = versiontuple(self.version)[0]
             update_method = getattr(self, 'update_result_{}'.format(major_version))
@@ -125,6 +144,32 @@ class Geekbench(AndroidUiAutoBenchmark):
     def validate(self):
         if (self.times > 1) and (self.version == '2'):
             raise ConfigError('times parameter is not supported for version 2 of Geekbench.')
+        if self.session_mode and versiontuple(self.version) < (3, 4, 1):
+            raise ConfigError('session_mode is only supported from version 3.4.1 of Geekbench.')
+
+    def setup(self, context):
+        if self.session_mode:
+            if not self.device.is_rooted:
+                raise WorkloadError('session_mode requires a rooted device.')
+            # The uiauto process runs as the shell user, so the results are
+            # read through su in the same way as the host does
+            self.root_script = self.device.path.join(self.device.working_directory,
+                                                     'geekbench_as_root.sh')
+            host_script = tempfile.mktemp()
+            with open(host_script, 'w') as wfh:
+                wfh.write('echo "$*" | su\n')
+            self.device.push_file(host_script, self.root_script)
+            os.remove(host_script)
+            self.uiauto_params['root_script'] = self.root_script
+            self.uiauto_params['results_dir'] = self.device.path.join(self.device.package_data_directory,
+                                                                      self.package, 'files')
+        super(Geekbench, self).setup(context)
+
+    def teardown(self, context):
+        super(Geekbench, self).teardown(context)
+        if self.root_script:
+            self.device.delete_file(self.root_script)
+            self.root_script = None
 
     def update_result_2(self, context):
         score_calculator = GBScoreCalculator()
@@ -147,6 +192,8 @@ class Geekbench(AndroidUiAutoBenchmark):
             context.iteration_artifacts.append(Artifact('geekout', path=os.path.basename(on_device_output_file),
                                                         kind='data',
                                                         description='Geekbench 3 output from device.'))
+            if self.session_mode and self.uiauto_results:
+                continue  # Scores have already been reported by the device
             context.result.add_metric(namemify('score', i), data['score'])
             context.result.add_metric(namemify('multicore_score', i), data['multicore_score'])
             for section in data['sections']:
@@ -170,6 +217,8 @@ class Geekbench(AndroidUiAutoBenchmark):
             context.iteration_artifacts.append(Artifact('geekout', path=os.path.basename(on_device_output_file),
                                                         kind='data',
                                                         description='Geekbench 4 output from device.'))
+            if self.session_mode and self.uiauto_results:
+                continue  # Scores have already been reported by the device
             context.result.add_metric(namemify('score', i), data['score'])
             context.result.add_metric(namemify('multicore_score', i), data['multicore_score'])
             for section in data['sections']:
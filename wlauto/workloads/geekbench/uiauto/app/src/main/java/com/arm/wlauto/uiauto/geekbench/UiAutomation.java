@@ -18,17 +18,28 @@ package com.arm.wlauto.uiauto.geekbench;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiObjectNotFoundException;
 import android.support.test.uiautomator.UiSelector;
 import android.view.KeyEvent;
 
+import com.arm.wlauto.uiauto.UiAutoUtils;
 import com.arm.wlauto.uiauto.UxPerfUiAutomation;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 // Import the uiautomator libraries
@@ -39,6 +50,7 @@ public class UiAutomation extends UxPerfUiAutomation {
     public static String TAG = "geekbench";
     public static final long WAIT_TIMEOUT_5SEC = TimeUnit.SECONDS.toMillis(5);
     public static final long WAIT_TIMEOUT_20MIN = TimeUnit.SECONDS.toMillis(20 * 60);
+    public static final long RESULTS_POLL_MILLIS = TimeUnit.SECONDS.toMillis(5);
 
 @Test
 public void runUiAutomation() throws Exception {
@@ -50,6 +62,13 @@ public void runUiAutomation() throws Exception {
         boolean isCorporate = params.getBoolean("is_corporate");
         int times = params.getInt("times");
 
+        ResultsSession session = null;
+        if (params.getBoolean("session_mode")) {
+            session = new ResultsSession(params.getString("root_script"),
+                                         params.getString("results_dir"),
+                                         ".gb" + majorVersion);
+        }
+
         if (!isCorporate)
             dismissEula();
 
@@ -65,6 +84,10 @@ public void runUiAutomation() throws Exception {
                     break;
                 case 3:
                     runBenchmarks();
+                    if (session != null) {
+                        session.waitForResults(i);
+                        break;
+                    }
                     waitForResultsv3onwards();
                     if (minorVersion < 4) {
                         // Attempting to share the results will generate the .gb3 file with
@@ -77,6 +100,10 @@ public void runUiAutomation() throws Exception {
                     break;
                 case 4:
                     runCpuBenchmarks(isCorporate);
+                    if (session != null) {
+                        session.waitForResults(i);
+                        break;
+                    }
                     waitForResultsv3onwards();
                     break;
                 default :
@@ -90,6 +117,10 @@ public void runUiAutomation() throws Exception {
             }
         }
 
+        if (session != null) {
+            session.reportVariance();
+        }
+
         Bundle status = new Bundle();
         mInstrumentation.sendStatus(Activity.RESULT_OK, status);
     }
@@ -168,4 +199,133 @@ public void runUiAutomation() throws Exception {
         shareButton.waitForExists(WAIT_TIMEOUT_5SEC);
         shareButton.click();
     }
+
+    /**
+     * Parses each results file as soon as Geekbench has written it, rather
+     * than leaving that to the host after the whole run, and reports its
+     * scores with the same names the host would use. Once all runs are done,
+     * the run-to-run variance of each score is reported as well.
+     *
+     * The results directory is private to Geekbench, so it is read through
+     * a script pushed by the workload that runs its arguments as root. As
+     * FileObserver cannot watch it either, it is polled every
+     * RESULTS_POLL_MILLIS; this replaces walking the UI hierarchy while the
+     * benchmark runs.
+     */
+    private class ResultsSession {
+
+        private String rootScript;
+        private String resultsDir;
+        private String extension;
+        private Set<String> seen = new HashSet<String>();
+        // Score name -> score from each run
+        private Map<String, List<Double>> scores = new LinkedHashMap<String, List<Double>>();
+
+        public ResultsSession(String rootScript, String resultsDir, String extension) {
+            this.rootScript = rootScript;
+            this.resultsDir = resultsDir;
+            this.extension = extension;
+            // Results of earlier runs are not part of this session
+            seen.addAll(listResults());
+        }
+
+        public void waitForResults(int run) throws Exception {
+            long deadline = SystemClock.uptimeMillis() + WAIT_TIMEOUT_20MIN;
+            while (SystemClock.uptimeMillis() < deadline) {
+                SystemClock.sleep(RESULTS_POLL_MILLIS);
+                for (String name : listResults()) {
+                    if (seen.contains(name)) {
+                        continue;
+                    }
+                    try {
+                        report(new JSONObject(runAsRoot("cat " + resultsDir + "/" + name)), run);
+                    } catch (JSONException e) {
+                        // Still being written
+                        continue;
+                    }
+                    seen.add(name);
+
+                    // Let the results screen finish loading before navigating away from it
+                    UiObject runningTextView =
+                        mDevice.findObject(new UiSelector().textContains("Running")
+                                                           .className("android.widget.TextView"));
+                    runningTextView.waitUntilGone(WAIT_TIMEOUT_5SEC);
+                    return;
+                }
+            }
+            throw new UiObjectNotFoundException("Geekbench did not write any results");
+        }
+
+        public void reportVariance() {
+            for (Map.Entry<String, List<Double>> entry : scores.entrySet()) {
+                List<Double> values = entry.getValue();
+                if (values.size() < 2) {
+                    continue;
+                }
+                double sum = 0;
+                for (double value : values) {
+                    sum += value;
+                }
+                double mean = sum / values.size();
+                double squares = 0;
+                for (double value : values) {
+                    squares += (value - mean) * (value - mean);
+                }
+                double stdev = Math.sqrt(squares / (values.size() - 1));
+                reportResult(entry.getKey() + "_mean", mean);
+                reportResult(entry.getKey() + "_stdev", stdev, null, true);
+                if (mean != 0) {
+                    reportResult(entry.getKey() + "_cv", stdev / mean * 100, "%", true);
+                }
+            }
+        }
+
+        // Geekbench 3 sections have single and multi-core scores; Geekbench 4
+        // ones have single-core workload scores instead
+        private void report(JSONObject data, int run) throws JSONException {
+            addScore("score", data.getDouble("score"), run);
+            addScore("multicore_score", data.getDouble("multicore_score"), run);
+            JSONArray sections = data.getJSONArray("sections");
+            for (int i = 0; i < sections.length(); i++) {
+                JSONObject section = sections.getJSONObject(i);
+                String name = section.getString("name");
+                addScore(name + "_score", section.getDouble("score"), run);
+                if (section.has("workloads")) {
+                    JSONArray workloads = section.getJSONArray("workloads");
+                    for (int j = 0; j < workloads.length(); j++) {
+                        JSONObject workload = workloads.getJSONObject(j);
+                        addScore(name + "_" + workload.getString("name").replace(" ", "-") + "_score",
+                                 workload.getDouble("score"), run);
+                    }
+                } else {
+                    addScore(name + "_multicore_score", section.getDouble("multicore_score"), run);
+                }
+            }
+        }
+
+        private void addScore(String name, double value, int run) {
+            // Later runs are numbered, as they are by the host
+            reportResult(run == 0 ? name : name + " " + run, value);
+            List<Double> values = scores.get(name);
+            if (values == null) {
+                values = new ArrayList<Double>();
+                scores.put(name, values);
+            }
+            values.add(value);
+        }
+
+        private List<String> listResults() {
+            List<String> names = new ArrayList<String>();
+            for (String name : runAsRoot("ls " + resultsDir).split("\\s+")) {
+                if (name.endsWith(extension)) {
+                    names.add(name);
+                }
+            }
+            return names;
+        }
+
+        private String runAsRoot(String command) {
+            return UiAutoUtils.executeShellCommand(mInstrumentation, "sh " + rootScript + " " + command);
+        }
+    }
 }
@@ -19,6 +19,7 @@ import os
 
 from wlauto import AndroidUiAutoBenchmark, Parameter, Alias
 from wlauto.exceptions import ConfigError
+from wlauto.utils.types import list_of_strings
 import wlauto.common.android.resources
 
 # These maps provide use-friendly aliases for the most common options.
@@ -90,6 +91,15 @@ class Glb(AndroidUiAutoBenchmark):
                                  ``'onscreen'`` and ``'offscreen'``. These may be used instead of full variant
                                  names.
                   """),
+        Parameter('use_case_queue', kind=list_of_strings, default=None,
+                  description="""A list of ``<use_case>:<variant>`` entries to run one after the other in a
+                                 single session of the app, e.g. ``['t-rex:onscreen', 't-rex:offscreen',
+                                 'egypt:offscreen']``. The aliases of ``use_case`` and ``variant`` may be
+                                 used, and ``:<variant>`` may be omitted to use ``variant``. Each entry is
+                                 run ``times`` times, and its results are reported as
+                                 ``<use_case>_<variant>_FPS_<run>`` and ``<use_case>_<variant>_Frames_<run>``.
+                                 If set, ``use_case`` is ignored.
+                  """),
         Parameter('times', kind=int, default=1,
                   description=('Specfies the number of times the benchmark will be run in a "tight '
                                'loop", i.e. without performaing setup/teardown inbetween.')),
@@ -115,24 +125,40 @@ class Glb(AndroidUiAutoBenchmark):
 
         if self.use_case is None:
             self.use_case = self.supported_usecase_aliases[self.version][0]
-        if self.use_case.lower() in USE_CASE_MAP:
-            if self.use_case not in self.supported_usecase_aliases[self.version]:
-                raise ConfigError('usecases {} is not supported in version {}'.format(self.use_case, self.version))
-            self.use_case = USE_CASE_MAP[self.use_case.lower()]
+        self.use_case = self._resolve_use_case(self.use_case)
         self.uiauto_params['use_case'] = self.use_case.replace(' ', '_')
 
-        if self.variant.lower() in VARIANT_MAP:
-            self.variant = VARIANT_MAP[self.variant.lower()]
+        self.variant = self._resolve_variant(self.variant)
         self.uiauto_params['variant'] = self.variant.replace(' ', '_')
 
+        queue_length = 1
+        if self.use_case_queue:
+            use_cases, variants, names = [], [], []
+            for entry in self.use_case_queue:
+                use_case, _, variant = entry.partition(':')
+                variant = str(variant or self.variant)
+                use_cases.append(self._resolve_use_case(use_case).replace(' ', '_'))
+                variants.append(self._resolve_variant(variant).replace(' ', '_'))
+                names.append(re.sub(r'[^\w-]+', '_', use_case + '_' + variant))
+            self.uiauto_params['queue_use_cases'] = use_cases
+            self.uiauto_params['queue_variants'] = variants
+            self.uiauto_params['queue_names'] = names
+            queue_length = len(self.use_case_queue)
+
         self.uiauto_params['iterations'] = self.times
-        self.run_timeout = 4 * 60 * self.times
+        self.run_timeout = 4 * 60 * self.times * queue_length
 
         self.uiauto_params['timeout'] = self.timeout
         self.package = self.packages[self.version]
+        self.uiauto_params['package_name'] = self.package
 
     def update_result(self, context):
         super(Glb, self).update_result(context)
+        if self.use_case_queue:
+            if self.uiauto_results:
+                return  # Results of a queue are reported by the UI automation
+            self.logger.warning('No results were reported by the UI automation; its APK may predate '
+                                'use_case_queue, in which case only "{}" was run.'.format(self.use_case))
         match_count = 0
         with open(self.logcat_log) as fh:
             for line in fh:
@@ -147,3 +173,15 @@ class Glb(AndroidUiAutoBenchmark):
                     metric = metric + '_' + str(match_count // 2)
                     context.result.add_metric(metric, value, units)
                     match_count += 1
+
+    def _resolve_use_case(self, use_case):
+        if use_case.lower() in USE_CASE_MAP:
+            if use_case not in self.supported_usecase_aliases[self.version]:
+                raise ConfigError('usecases {} is not supported in version {}'.format(use_case, self.version))
+            return USE_CASE_MAP[use_case.lower()]
+        return use_case
+
+    def _resolve_variant(self, variant):  # pylint: disable=no-self-use
+        if variant.lower() in VARIANT_MAP:
+            return VARIANT_MAP[variant.lower()]
+        return variant
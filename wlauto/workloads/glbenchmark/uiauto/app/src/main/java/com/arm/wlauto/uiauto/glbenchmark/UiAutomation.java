@@ -26,10 +26,13 @@ import android.support.test.uiautomator.UiSelector;
 import android.util.Log;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
+import com.arm.wlauto.uiauto.ResultScraper;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(AndroidJUnit4.class)
@@ -38,6 +41,11 @@ public class UiAutomation extends BaseUiAutomation {
     public static String TAG = "glb";
     public static int maxScrolls = 15;
 
+    // Number of scrolls from the top of the use case list needed to reveal
+    // each entry of a queue, so that it can be returned to directly
+    private Map<String, Integer> scrollOffsets = new HashMap<String, Integer>();
+    private String packageName;
+
 @Test
 public void runUiAutomation() throws Exception {
         initialize_instrumentation();
@@ -49,6 +57,21 @@ public void runUiAutomation() throws Exception {
         int testTimeoutSeconds = parameters.getInt("timeout");
         if (iterations < 1)
                 iterations = 1;
+        packageName = parameters.getString("package_name");
+
+        String[] queueUseCases = parameters.getStringArray("queue_use_cases");
+        if (queueUseCases != null) {
+                String[] queueVariants = parameters.getStringArray("queue_variants");
+                String[] queueNames = parameters.getStringArray("queue_names");
+                for (int i = 0; i < queueUseCases.length; i++) {
+                        queueUseCases[i] = queueUseCases[i].replace('_', ' ');
+                        queueVariants[i] = queueVariants[i].replace('_', ' ');
+                }
+                runQueue(version, queueUseCases, queueVariants, queueNames, iterations, testTimeoutSeconds);
+                Bundle status = new Bundle();
+                mInstrumentation.sendStatus(Activity.RESULT_OK, status);
+                return;
+        }
 
         goToPreformanceTestsMenu();
         selectUseCase(version, useCase, variant);
@@ -106,15 +129,21 @@ public void runUiAutomation() throws Exception {
                         }
                 }
                 useCaseText.click();
-                UiObject modeDisableModeButton = null;
-                if (variant.contains("Onscreen"))
-                        modeDisableModeButton = mDevice.findObject(selector.text("Offscreen"));
-                else
-                        modeDisableModeButton = mDevice.findObject(selector.text("Onscreen"));
-                modeDisableModeButton.click();
+                selectMode(variant);
         }
     }
 
+    // Version 2.5 selects onscreen or offscreen rendering with a separate button
+    public void selectMode(String variant) throws Exception {
+        UiSelector selector = new UiSelector();
+        UiObject modeDisableModeButton = null;
+        if (variant.contains("Onscreen"))
+                modeDisableModeButton = mDevice.findObject(selector.text("Offscreen"));
+        else
+                modeDisableModeButton = mDevice.findObject(selector.text("Onscreen"));
+        modeDisableModeButton.click();
+    }
+
     public void hitStart() throws Exception {
         UiSelector selector = new UiSelector();
         UiObject startButton = mDevice.findObject(selector.text("Start"));
@@ -139,7 +168,7 @@ public void runUiAutomation() throws Exception {
 		String[] commandLine = {"am", "start",
 					"-a", "android.intent.action.MAIN",
 					"-c", "android.intent.category.LAUNCHER",
-					"-n", "com.glbenchmark.glbenchmark27/com.glbenchmark.activities.GLBenchmarkDownloaderActivity"};
+					"-n", packageName + "/com.glbenchmark.activities.GLBenchmarkDownloaderActivity"};
 		Process proc = Runtime.getRuntime().exec(commandLine);
 		proc.waitFor();
 		Log.v(TAG, String.format("am start exit value: %d", proc.exitValue()));
@@ -150,16 +179,115 @@ public void runUiAutomation() throws Exception {
 	Log.v(TAG, "Results screen found.");
     }
 
-    public void extractResults() throws Exception {
+    public Map<String, String> extractResults() throws Exception {
             Log.v(TAG, "Extracting results.");
 	    sleep(2); // wait for the results screen to fully load.
-            UiSelector selector = new UiSelector();
-            UiObject fpsText = mDevice.findObject(selector.className("android.widget.TextView")
-                                                    .textContains("fps")
-                                           );
-            UiObject otherText = fpsText.getFromParent(selector.className("android.widget.TextView").index(0));
+            ResultScraper scraper = new ResultScraper(mDevice);
+            scraper.addRule(ResultScraper.textMatching("FPS", "(?s).*fps.*", -1));
+            scraper.addRule(ResultScraper.textMatching("metric", "(?s).*fps.*", 0));
+
+            Map<String, String> results = scraper.scrape();
+            if (!results.containsKey("FPS")) {
+                throw new UiObjectNotFoundException("Could not find FPS result.");
+            }
+            Log.v(TAG, String.format("GLBenchmark metric: %s", results.get("metric")));
+            Log.v(TAG, String.format("GLBenchmark FPS: %s", results.get("FPS")));
+            return results;
+    }
+
+    /**
+     * Run each (use case, variant) entry of a queue in turn, iterations
+     * times, within a single session of the app, reporting the results of
+     * each as <name>_FPS_<run> and <name>_Frames_<run> metrics.
+     *
+     * In version 2.7 the variants of the list are toggled on and off, and
+     * all the variants that are on are run, so the previous entry is toggled
+     * off before the next one is toggled on.
+     */
+    public void runQueue(String version, String[] useCases, String[] variants, String[] names,
+                         int iterations, int timeout) throws Exception {
+        int selected = -1;
+        goToPreformanceTestsMenu();
+        for (int run = 0; run < iterations; run++) {
+                for (int i = 0; i < useCases.length; i++) {
+                        if (run > 0 || i > 0) {
+                                mDevice.pressBack();
+                                goToPreformanceTestsMenu();
+                        }
+                        if (version.equals("2.7")) {
+                                if (selected != i) {
+                                        if (selected >= 0) {
+                                                findQueueEntry(version, useCases[selected], variants[selected]).click();
+                                        }
+                                        findQueueEntry(version, useCases[i], variants[i]).click();
+                                        selected = i;
+                                }
+                        } else {
+                                findQueueEntry(version, useCases[i], variants[i]).click();
+                                selectMode(variants[i]);
+                        }
+                        hitStart();
+                        waitForResults(version, useCases[i], timeout);
+                        reportQueueResults(names[i], run, extractResults());
+                }
+        }
+    }
+
+    // Scroll the use case list to reveal an entry and return it, starting
+    // from the position cached for it if there is one
+    private UiObject findQueueEntry(String version, String useCase, String variant) throws Exception {
+        UiScrollable testList = new UiScrollable(new UiSelector().className("android.widget.ListView"));
+        UiObject entry = mDevice.findObject(new UiSelector().className("android.widget.TextView")
+                                                            .text(useCase));
+        if (version.equals("2.7")) {
+                entry = entry.getFromParent(new UiSelector().className("android.widget.TextView")
+                                                            .text(variant));
+        }
+        String key = useCase + "/" + variant;
+
+        if (entry.exists()) {
+                return entry;
+        }
+        // Offsets are cached from the top of the list, but a previous lookup
+        // may have left it scrolled down
+        Integer offset = scrollOffsets.get(key);
+        if (offset != null) {
+                testList.scrollToBeginning(maxScrolls);
+                for (int i = 0; i < offset; i++) {
+                        testList.scrollForward();
+                }
+                if (entry.exists()) {
+                        return entry;
+                }
+        }
 
-            Log.v(TAG, String.format("GLBenchmark metric: %s", otherText.getText().replace('\n', ' ')));
-            Log.v(TAG, String.format("GLBenchmark FPS: %s", fpsText.getText().replace('\n', ' ')));
+        testList.scrollToBeginning(maxScrolls);
+        int scrolls = 0;
+        while (!entry.exists()) {
+                if (scrolls >= maxScrolls) {
+                        throw new UiObjectNotFoundException("Could not find " + useCase + " " + variant);
+                }
+                testList.scrollForward();
+                scrolls += 1;
+        }
+        scrollOffsets.put(key, scrolls);
+        return entry;
+    }
+
+    private void reportQueueResults(String name, int run, Map<String, String> results) {
+        reportQueueResult(name + "_FPS_" + run, results.get("FPS"), "fps");
+        reportQueueResult(name + "_Frames_" + run, results.get("metric"), "frames");
+    }
+
+    // Results are shown as e.g. "59.8 fps", with a '*' if the value was capped
+    private void reportQueueResult(String metric, String text, String units) {
+        if (text == null) {
+                return;
+        }
+        try {
+                reportResult(metric, Double.parseDouble(text.trim().split("\\s+")[0].replace("*", "")), units);
+        } catch (NumberFormatException e) {
+                Log.w(TAG, "Could not parse " + metric + " from " + text);
+        }
     }
 }
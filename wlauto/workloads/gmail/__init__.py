@@ -17,6 +17,12 @@ import os
 
 from wlauto import AndroidUxPerfWorkload, Parameter
 from wlauto.exceptions import ValidationError, WorkloadError
+from wlauto.utils.assets import parse_image_size, write_png
+from wlauto.utils.types import list_of_strings, list_of_ints
+from wlauto.utils.misc import unique
+
+# Generated attachments are pushed to a folder named after their size
+ATTACHMENT_PREFIX = 'uxperf_attach_'
 
 
 class Gmail(AndroidUxPerfWorkload):
@@ -39,6 +45,17 @@ class Gmail(AndroidUxPerfWorkload):
     6. Enter text in the Compose field
     7. Click the Send mail button
 
+    If ``attachment_sizes`` is specified, PNG images of each size are generated
+    on the host and pushed to a separate folder on the device, and steps 2 to 7
+    are repeated for each size and each of the ``attachment_counts``, attaching
+    that many images to the message. Every action is suffixed with
+    ``_<size>_<count>img``. The time to open the attachment picker
+    (``attach_picker``), the time from the final selection until all
+    attachments are shown in the compose view (``attach_render``) and the
+    time from tapping send until the message is queued and the compose view
+    has closed (``send_enqueue``) show how the client scales with the
+    attachment payload, independently of the network.
+
     Known working APK version: 7.6.18.160170480 
     '''
 
@@ -53,6 +70,18 @@ class Gmail(AndroidUxPerfWorkload):
                   An image to be copied onto the device that will be attached
                   to the email
                   '''),
+        Parameter('attachment_sizes', kind=list_of_strings, default=None,
+                  description='''
+                  If specified, a list of image sizes, as ``<width>x<height>`` in pixels,
+                  to generate attachments of. A message is sent for each size and each
+                  of the ``attachment_counts`` instead of attaching ``test_image``.
+                  '''),
+        Parameter('attachment_counts', kind=list_of_ints, default=[1],
+                  constraint=lambda x: len(x) > 0 and all(c > 0 for c in x),
+                  description='''
+                  The numbers of generated images to attach to each message. Ignored
+                  unless ``attachment_sizes`` is specified.
+                  '''),
     ]
 
     # This workload relies on the internet so check that there is a working
@@ -62,6 +91,16 @@ class Gmail(AndroidUxPerfWorkload):
     def initialize(self, context):
         if self.device.get_sdk_version() >= 24 and 'com.google.android.apps.photos' not in self.device.list_packages():
             raise WorkloadError('gmail workload requires Google Photos to be installed for Android N onwards')
+        if self.attachment_sizes:
+            # Generated into the dependencies directory, from where they are
+            # pushed in setup()
+            if not os.path.isdir(self.dependencies_directory):
+                os.makedirs(self.dependencies_directory)
+            for seed, (folder, name) in enumerate(self._attachments()):
+                path = os.path.join(self.dependencies_directory, name)
+                if not os.path.isfile(path):
+                    self.logger.debug('Generating {}'.format(name))
+                    write_png(path, *parse_image_size(folder[len(ATTACHMENT_PREFIX):]), seed=seed)
 
     def __init__(self, device, **kwargs):
         super(Gmail, self).__init__(device, **kwargs)
@@ -74,3 +113,39 @@ class Gmail(AndroidUxPerfWorkload):
         # Only accept certain image formats
         if os.path.splitext(self.test_image.lower())[1] not in ['.jpg', '.jpeg', '.png']:
             raise ValidationError('{} must be a JPEG or PNG file'.format(self.test_image))
+        if self.attachment_sizes:
+            for size in self.attachment_sizes:
+                try:
+                    parse_image_size(size)
+                except ValueError as e:
+                    raise ValidationError(str(e))
+            self.uiauto_params['attachment_sizes'] = self.attachment_sizes
+            self.uiauto_params['attachment_counts'] = self.attachment_counts
+
+    def _attachments(self):
+        # Yields the folder and file names of the generated attachments
+        for size in self.attachment_sizes:
+            folder = ATTACHMENT_PREFIX + size
+            for i in xrange(1, max(self.attachment_counts) + 1):
+                yield folder, '{}_{}.png'.format(folder, i)
+
+    def setup(self, context):
+        super(Gmail, self).setup(context)
+        if self.attachment_sizes:
+            # Each size is pushed to its own folder, so that the picker only
+            # shows attachments of that size
+            files = {}
+            for folder, name in self._attachments():
+                device_path = self.device.path.join(self.device.working_directory, folder, name)
+                files[device_path] = os.path.join(self.dependencies_directory, name)
+            self.sync_files(files, force=self.force_push_assets)
+
+    def teardown(self, context):
+        super(Gmail, self).teardown(context)
+        if self.attachment_sizes and self.clean_assets:
+            for folder in unique(folder for folder, _ in self._attachments()):
+                self.device.execute('rm -rf {}'.format(self.device.path.join(self.device.working_directory, folder)))
+            # Each removed attachment is rescanned so that the media provider
+            # drops it from its index
+            self.device.refresh_device_files([self.device.path.join(self.device.working_directory, folder, name)
+                                              for folder, name in self._attachments()])
@@ -16,7 +16,9 @@
 package com.arm.wlauto.uiauto.gmail;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.test.runner.AndroidJUnit4;
+import android.support.test.uiautomator.By;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiObjectNotFoundException;
 import android.support.test.uiautomator.UiSelector;
@@ -38,22 +40,42 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
     private int networkTimeoutSecs = 30;
     private long networkTimeout =  TimeUnit.SECONDS.toMillis(networkTimeoutSecs);
 
+    // Generated attachments are pushed to a folder of this name, followed by
+    // the image size, and named after the folder
+    private static final String ATTACHMENT_PREFIX = "uxperf_attach_";
+
 @Test
 public void runUiAutomation() throws Exception {
         initialize_instrumentation();
         parameters = getParams();
 
         String recipient = parameters.getString("recipient");
+        String[] attachmentSizes = parameters.getStringArray("attachment_sizes");
+        int[] attachmentCounts = parameters.getIntArray("attachment_counts");
 
         setScreenOrientation(ScreenOrientation.NATURAL);
         runApplicationInitialization();
 
-        clickNewMail();
-        attachImage();
-        setToField(recipient);
-        setSubjectField();
-        setComposeField();
-        clickSendButton();
+        if (attachmentSizes == null) {
+            clickNewMail("");
+            attachImage();
+            setToField(recipient, "");
+            setSubjectField("");
+            setComposeField("");
+            clickSendButton();
+        } else {
+            for (String size : attachmentSizes) {
+                for (int count : attachmentCounts) {
+                    String tagSuffix = "_" + size + "_" + count + "img";
+                    clickNewMail(tagSuffix);
+                    attachImages(ATTACHMENT_PREFIX + size, count, tagSuffix);
+                    setToField(recipient, tagSuffix);
+                    setSubjectField(tagSuffix);
+                    setComposeField(tagSuffix);
+                    sendMessage(tagSuffix);
+                }
+            }
+        }
 
         unsetScreenOrientation();
     }
@@ -124,8 +146,8 @@ public void runUiAutomation() throws Exception {
         }
     }
 
-    public void clickNewMail() throws Exception {
-        String testTag = "click_new";
+    public void clickNewMail(String tagSuffix) throws Exception {
+        String testTag = "click_new" + tagSuffix;
         ActionLogger logger = new ActionLogger(testTag, parameters);
 
         UiObject conversationView =
@@ -217,8 +239,113 @@ public void runUiAutomation() throws Exception {
         logger.stop();
     }
 
-    public void setToField(String recipient) throws Exception {
-        String testTag = "text_to";
+    // Attach the first count images of a generated attachment folder. The
+    // time to open the picker and the time from the final selection until
+    // every attachment is shown in the compose view are logged separately,
+    // as attach_picker and attach_render.
+    public void attachImages(String folder, int count, String tagSuffix) throws Exception {
+        ActionLogger pickerLogger = new ActionLogger("attach_picker" + tagSuffix, parameters);
+        ActionLogger renderLogger = new ActionLogger("attach_render" + tagSuffix, parameters);
+
+        UiObject attachIcon =
+            getUiObjectByResourceId(packageID + "add_attachment", "android.widget.TextView");
+
+        pickerLogger.start();
+        attachIcon.click();
+        UiObject attachFile =
+            getUiObjectByText("Attach file", "android.widget.TextView");
+        attachFile.clickAndWaitForNewWindow(uiAutoTimeout);
+        pickerLogger.stop();
+
+        // Show Roots menu
+        UiObject rootMenu =
+            mDevice.findObject(new UiSelector().descriptionContains("Show roots")
+                                               .className("android.widget.ImageButton"));
+        if (rootMenu.exists()){
+            rootMenu.click();
+        }
+        UiObject photos =
+            mDevice.findObject(new UiSelector().text("Photos")
+                                               .className("android.widget.TextView"));
+        if (!photos.waitForExists(uiAutoTimeout)) {
+            UiObject imagesEntry =
+                mDevice.findObject(new UiSelector().textContains("Images")
+                                                   .className("android.widget.TextView"));
+            if (imagesEntry.waitForExists(uiAutoTimeout)) {
+                imagesEntry.click();
+            }
+            selectGalleryFolder(folder);
+
+            // Multiple documents are selected by long clicking the first
+            for (int i = 0; i < count; i++) {
+                UiObject image =
+                    mDevice.findObject(new UiSelector().resourceIdMatches("com.android.documentsui:id/(grid|dir_list)")
+                                                       .childSelector(new UiSelector().index(i)
+                                                       .classNameMatches("android.widget..*Layout")));
+                if (count == 1) {
+                    renderLogger.start();
+                    image.click();
+                } else if (i == 0) {
+                    uiObjectPerformLongClick(image, 100);
+                } else {
+                    image.click();
+                }
+            }
+            if (count > 1) {
+                UiObject select =
+                    mDevice.findObject(new UiSelector().textMatches("(?i)select|open")
+                                                       .clickable(true));
+                renderLogger.start();
+                select.click();
+            }
+        } else {
+            photos.click();
+            UiObject folderEntry =
+                mDevice.findObject(new UiSelector().textContains(folder)
+                                                   .className("android.widget.TextView"));
+            if (!folderEntry.waitForExists(networkTimeout)) {
+                throw new UiObjectNotFoundException("Could not find folder : " + folder);
+            }
+            folderEntry.click();
+
+            // The picker returns as soon as a photo is tapped, so, as with
+            // documents, multiple photos are selected by long clicking the first
+            for (int i = 0; i < count; i++) {
+                UiObject image =
+                    mDevice.findObject(new UiSelector().descriptionContains("Photo").instance(i));
+                if (count == 1) {
+                    renderLogger.start();
+                    image.click();
+                } else if (i == 0) {
+                    uiObjectPerformLongClick(image, 100);
+                } else {
+                    image.click();
+                }
+            }
+            if (count > 1) {
+                UiObject accept =
+                    mDevice.findObject(new UiSelector().textMatches("(?i)done"));
+                if (!accept.waitForExists(uiAutoTimeout)) {
+                    throw new UiObjectNotFoundException("Could not find the button to attach the selected photos");
+                }
+                renderLogger.start();
+                accept.click();
+            }
+        }
+
+        // Each attachment is shown in the compose view under its file name
+        long deadline = SystemClock.uptimeMillis() + networkTimeout;
+        while (mDevice.findObjects(By.textStartsWith(folder)).size() < count) {
+            if (SystemClock.uptimeMillis() > deadline) {
+                throw new UiObjectNotFoundException("Attachments were not shown in the compose view");
+            }
+            SystemClock.sleep(10);
+        }
+        renderLogger.stop();
+    }
+
+    public void setToField(String recipient, String tagSuffix) throws Exception {
+        String testTag = "text_to" + tagSuffix;
         ActionLogger logger = new ActionLogger(testTag, parameters);
 
         UiObject toField = getUiObjectByResourceId(packageID + "to");
@@ -228,8 +355,8 @@ public void runUiAutomation() throws Exception {
         logger.stop();
     }
 
-    public void setSubjectField() throws Exception {
-        String testTag = "text_subject";
+    public void setSubjectField(String tagSuffix) throws Exception {
+        String testTag = "text_subject" + tagSuffix;
         ActionLogger logger = new ActionLogger(testTag, parameters);
 
         UiObject subjectField = getUiObjectByText("Subject", "android.widget.EditText");
@@ -241,8 +368,8 @@ public void runUiAutomation() throws Exception {
         logger.stop();
     }
 
-    public void setComposeField() throws Exception {
-        String testTag = "text_body";
+    public void setComposeField(String tagSuffix) throws Exception {
+        String testTag = "text_body" + tagSuffix;
         ActionLogger logger = new ActionLogger(testTag, parameters);
 
         UiObject composeField = mDevice.findObject(new UiSelector().text("Compose email")
@@ -268,4 +395,20 @@ public void runUiAutomation() throws Exception {
         logger.stop();
         sendButton.waitUntilGone(networkTimeoutSecs);
     }
+
+    // Send the message, logging the time until it has been queued for
+    // delivery and the compose view has closed. This does not depend on the
+    // network, so scales only with the attachments' size.
+    public void sendMessage(String tagSuffix) throws Exception {
+        String testTag = "send_enqueue" + tagSuffix;
+        ActionLogger logger = new ActionLogger(testTag, parameters);
+
+        UiObject sendButton = getUiObjectByDescription("Send", "android.widget.TextView");
+        logger.start();
+        sendButton.click();
+        if (!sendButton.waitUntilGone(networkTimeout)) {
+            throw new UiObjectNotFoundException("Compose view did not close after sending");
+        }
+        logger.stop();
+    }
 }
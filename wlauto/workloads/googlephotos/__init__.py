@@ -17,6 +17,7 @@ import os
 
 from wlauto import AndroidUxPerfWorkload, Parameter
 from wlauto.exceptions import ValidationError
+from wlauto.utils.assets import parse_image_size, write_png
 from wlauto.utils.types import list_of_strings
 from wlauto.utils.misc import unique
 
@@ -48,6 +49,22 @@ class Googlephotos(AndroidUxPerfWorkload):
     6. A rotate test is performed on a selected image, rotating anticlockwise 90 degrees, 180
        degrees and 270 degrees.
 
+    If ``gallery_size`` is set, a gallery folder of that many generated images
+    is also created on the device once the application has been launched, and
+    the workload waits until the media provider has indexed all of them. Before
+    step 3, the gallery folder is opened, its grid is flung to the bottom and
+    back to the top (``gallery_scroll_down`` and ``gallery_scroll_up``, whose
+    frame statistics are reported by the fps instrument), and the first
+    photo in it is opened (``gallery_open_photo``). Running the workload with
+    a range of gallery sizes shows how thumbnail caching and decoding, and the
+    edit operations, scale with the size of the user's library.
+
+    Only ``gallery_distinct_images`` images are generated and pushed; the
+    rest of the gallery is made up of copies made on the device. Every image is
+    incompressible, so the gallery takes up roughly
+    ``gallery_size * width * height * 3`` bytes on the device. The gallery is
+    kept between iterations and only removed if ``clean_assets`` is set.
+
     Known working APK version: 1.21.0.123444480
     '''
 
@@ -63,11 +80,34 @@ class Googlephotos(AndroidUxPerfWorkload):
                   A list of four JPEG and/or PNG files to be pushed to the device.
                   Absolute file paths may be used but tilde expansion must be escaped.
                   '''),
+        Parameter('gallery_size', kind=int, default=0,
+                  constraint=lambda x: x >= 0,
+                  description='''
+                  The number of images in the generated gallery. If 0, no gallery is
+                  generated.
+                  '''),
+        Parameter('gallery_image_size', kind=str, default='640x480',
+                  description='''
+                  The size, as ``<width>x<height>`` in pixels, of the gallery images.
+                  '''),
+        Parameter('gallery_distinct_images', kind=int, default=100,
+                  constraint=lambda x: x > 0,
+                  description='''
+                  The number of distinct gallery images to generate on the host and push
+                  to the device. The remainder of the gallery is made up of copies of
+                  these, made on the device, which is much faster for large galleries.
+                  '''),
+        Parameter('gallery_timeout', kind=int, default=3600,
+                  description='''
+                  The maximum time, in seconds, to wait for the media provider to index
+                  the gallery.
+                  '''),
     ]
 
     def __init__(self, device, **kwargs):
         super(Googlephotos, self).__init__(device, **kwargs)
         self.deployable_assets = self.test_images
+        self.gallery_dimensions = None
 
     def validate(self):
         super(Googlephotos, self).validate()
@@ -75,30 +115,103 @@ class Googlephotos(AndroidUxPerfWorkload):
         for image in self.test_images:
             if os.path.splitext(image.lower())[1] not in ['.jpg', '.jpeg', '.png']:
                 raise ValidationError('{} must be a JPEG or PNG file'.format(image))
+        if self.gallery_size:
+            try:
+                self.gallery_dimensions = parse_image_size(self.gallery_image_size)
+            except ValueError as e:
+                raise ValidationError(str(e))
+            # Galleries of different sizes are kept in different folders, so
+            # that the media provider's index of one cannot be mistaken for
+            # another's
+            self.gallery_folder = 'uxperf_gallery_{}_{}x{}'.format(self.gallery_size, *self.gallery_dimensions)
+            self.gallery_directory = self.device.path.join(self.device.working_directory, self.gallery_folder)
+            self.uiauto_params['gallery_folder'] = self.gallery_folder
+        self.uiauto_params['gallery_size'] = self.gallery_size
+
+    def initialize(self, context):
+        super(Googlephotos, self).initialize(context)
+        if self.gallery_size:
+            # Generated into the dependencies directory, from where they are
+            # pushed in setup()
+            if not os.path.isdir(self.dependencies_directory):
+                os.makedirs(self.dependencies_directory)
+            for i, name in enumerate(self._distinct_gallery_images()):
+                path = os.path.join(self.dependencies_directory, name)
+                if not os.path.isfile(path):
+                    self.logger.debug('Generating {}'.format(name))
+                    write_png(path, *self.gallery_dimensions, seed=i)
+
+    def _distinct_gallery_images(self):
+        count = min(self.gallery_size, self.gallery_distinct_images)
+        return ['uxperf_gallery_{}x{}_{}.png'.format(self.gallery_dimensions[0], self.gallery_dimensions[1], i + 1)
+                for i in xrange(count)]
+
+    def _gallery_files(self):
+        # Device paths of the pushed images followed by those of their copies
+        distinct = self._distinct_gallery_images()
+        copies = ['uxperf_gallery_copy_{}.png'.format(i + 1) for i in xrange(len(distinct), self.gallery_size)]
+        return [self.device.path.join(self.gallery_directory, name) for name in distinct + copies]
+
+    def _deploy_gallery(self):
+        distinct = self._distinct_gallery_images()
+        file_list = self._gallery_files()
+        # The pushed images are followed by copies of them, in turn
+        sources = [os.path.join(self.dependencies_directory, distinct[i % len(distinct)])
+                   for i in xrange(len(file_list))]
+        if self.force_push_assets:
+            changed = file_list
+        else:
+            # Only the images that are missing from the device, or differ from
+            # the ones they were pushed or copied from, are deployed again
+            changed = self.get_changed_files(dict(zip(file_list, sources)), self.gallery_directory)
+        if not changed and self.device.get_media_image_count(self.gallery_folder) >= self.gallery_size:
+            self.logger.debug('Gallery {} is already deployed'.format(self.gallery_folder))
+            return
+
+        self.logger.info('Deploying {} of the {} images of the gallery'.format(len(changed), self.gallery_size))
+        self.device.execute('mkdir -p {}'.format(self.gallery_directory))
+        changed = set(changed)
+        self.sync_files(dict((path, sources[i]) for i, path in enumerate(file_list[:len(distinct)])
+                             if path in changed), force=True)
+
+        # Fill the rest of the gallery with copies made on the device, in
+        # batches to avoid a round trip over adb per file
+        copies = [i for i in xrange(len(distinct), len(file_list)) if file_list[i] in changed]
+        for j in xrange(0, len(copies), 100):
+            self.device.execute('; '.join('cp {} {}'.format(file_list[i % len(distinct)], file_list[i])
+                                          for i in copies[j:j + 100]), timeout=300)
+        if copies:
+            self.device.refresh_device_files([file_list[i] for i in copies])
+        self.device.wait_for_media_scan(self.gallery_folder, self.gallery_size, timeout=self.gallery_timeout)
+
+    def get_asset_path(self, asset):
+        # Each test image is pushed into its own subfolder, named wa-[1-4].
+        # This is to guarantee ordering and allows the workload to select a
+        # specific image by subfolder, as filenames are not shown easily within
+        # the app. The images are kept between iterations, as they are never
+        # saved after they have been edited.
+        folder = 'wa-{}'.format(self.test_images.index(asset) + 1)
+        return self._path_on_device(asset, self.device.path.join(self.device.working_directory, folder))
 
     def setup(self, context):
         super(Googlephotos, self).setup(context)
-        # Create a subfolder for each test_image named ``wa-[1-4]``
-        # Move each image into its subfolder
-        # This is to guarantee ordering and allows the workload to select a specific
-        # image by subfolder, as filenames are not shown easily within the app
-        d = self.device.working_directory
-        file_list = []
-        for i, f in enumerate(self.test_images):
-            self.device.execute('mkdir -p {0}/wa-{1}'.format(d, i + 1))
-            self.device.execute('mv {0}/{2} {0}/wa-{1}/{2}'.format(d, i + 1, f))
-            file_list.append('{0}/wa-{1}/{2}'.format(d, i + 1, f))
-        # Force rescan
-        self.device.refresh_device_files(file_list)
+        if self.gallery_size:
+            self._deploy_gallery()
 
     def teardown(self, context):
         super(Googlephotos, self).teardown(context)
-        # Remove the subfolders and its content
-        d = self.device.working_directory
-        file_list = []
-        for i in xrange(len(self.test_images)):
-            f = '{0}/wa-{1}'.format(d, i + 1)
-            self.device.execute('rm -rf {}'.format(f))
-            file_list.append(f)
-        # Force rescan
-        self.device.refresh_device_files(file_list)
+        if self.clean_assets:
+            # Remove the subfolders as well as the images deleted from them
+            d = self.device.working_directory
+            file_list = []
+            for i in xrange(len(self.test_images)):
+                f = '{0}/wa-{1}'.format(d, i + 1)
+                self.device.execute('rm -rf {}'.format(f))
+                file_list.append(f)
+            if self.gallery_size:
+                self.device.execute('rm -rf {}'.format(self.gallery_directory))
+                # Each removed image is rescanned so that the media provider
+                # drops it from its index
+                file_list.extend(self._gallery_files())
+            # Force rescan
+            self.device.refresh_device_files(file_list)
@@ -21,6 +21,7 @@ import android.os.Bundle;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiObjectNotFoundException;
+import android.support.test.uiautomator.UiScrollable;
 import android.support.test.uiautomator.UiSelector;
 
 import com.arm.wlauto.uiauto.ApplaunchInterface;
@@ -47,15 +48,27 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
 
     private long viewTimeout =  TimeUnit.SECONDS.toMillis(10);
 
+    // Upper bound on the flings needed to reach either end of the gallery
+    private static final int GALLERY_MAX_FLINGS = 100;
+
 @Test
 public void runUiAutomation() throws Exception {
         initialize_instrumentation();
         parameters = getParams();
 
+        int gallerySize = parameters.getInt("gallery_size");
+
         sleep(5); // Pause while splash screen loads
         setScreenOrientation(ScreenOrientation.NATURAL);
         runApplicationInitialization();
 
+        if (gallerySize > 0) {
+            selectGalleryFolder(parameters.getString("gallery_folder"));
+            galleryScrollTest();
+            openGalleryPhoto();
+            navigateUp();
+        }
+
         selectGalleryFolder("wa-1");
         selectFirstImage();
         gesturesTest();
@@ -274,6 +287,41 @@ public void runUiAutomation() throws Exception {
         }
     }
 
+    // Fling the gallery grid to the bottom and back to the top, so that
+    // thumbnails have to be loaded as they scroll into view
+    private void galleryScrollTest() throws Exception {
+        UiScrollable grid =
+            new UiScrollable(new UiSelector().resourceId(packageID + "recycler_view"));
+        if (!grid.waitForExists(viewTimeout)) {
+            throw new UiObjectNotFoundException("Could not find \"gallery grid\".");
+        }
+
+        ActionLogger logger = new ActionLogger("gallery_scroll_down", parameters);
+        logger.start();
+        grid.flingToEnd(GALLERY_MAX_FLINGS);
+        logger.stop();
+
+        logger = new ActionLogger("gallery_scroll_up", parameters);
+        logger.start();
+        grid.flingToBeginning(GALLERY_MAX_FLINGS);
+        logger.stop();
+    }
+
+    private void openGalleryPhoto() throws Exception {
+        String testTag = "gallery_open_photo";
+        ActionLogger logger = new ActionLogger(testTag, parameters);
+
+        UiObject editButton =
+            mDevice.findObject(new UiSelector().resourceId(packageID + "edit"));
+
+        logger.start();
+        selectFirstImage();
+        if (!editButton.waitForExists(viewTimeout)) {
+            throw new UiObjectNotFoundException("Could not find \"photo view\".");
+        }
+        logger.stop();
+    }
+
     public enum Position { LEFT, RIGHT, CENTRE };
 
     private class PositionPair {
@@ -46,6 +46,20 @@ class Googleplaybooks(AndroidUxPerfWorkload):
     12. Switches page styles from 'Day' to 'Night' to 'Sepia' and back to 'Day'
     13. Uses the 'About this book' facility on the currently selected book
 
+    If ``reading_session_pages`` is set, a reading session is performed after
+    step 7: the given number of pages are turned, one every
+    ``reading_session_interval`` seconds, and each turn is timed from the start
+    of the swipe until the page has finished rendering (the reader has raised
+    no accessibility events for 150 ms). The distribution of these latencies
+    is reported as ``reading_session_page_turn_latency_50percentile``,
+    ``_95percentile``, ``_99percentile`` and ``_max`` metrics, along with the
+    number of turns that could not start on time. To expose throttling over
+    long sessions, the change in median latency between the first and last
+    quarters of the session is reported as ``reading_session_latency_drift``
+    and, when ``sampler_period`` is set, the change in peak temperature during
+    page turns as ``reading_session_temperature_rise``. The book must have at
+    least as many pages after the selected chapter as are to be turned.
+
     NOTE: This workload requires a network connection (ideally, wifi) to run,
           a Google account to be setup on the device, and payment details for the account.
           Free books require payment details to have been setup otherwise it fails.
@@ -77,6 +91,18 @@ class Googleplaybooks(AndroidUxPerfWorkload):
                   The word to search for within a selected book.
                   Note: Accepts single words only.
                   """),
+        Parameter('reading_session_pages', kind=int, default=0,
+                  constraint=lambda x: x >= 0,
+                  description="""
+                  The number of pages to turn in the reading session. If 0, no reading
+                  session is performed.
+                  """),
+        Parameter('reading_session_interval', kind=float, default=2.0,
+                  constraint=lambda x: x > 0,
+                  description="""
+                  The time, in seconds, between the start of successive page turns in the
+                  reading session.
+                  """),
         Parameter('account', kind=str, mandatory=False,
                   description="""
                   If you are running this workload on a device which has more than one
@@ -101,4 +127,6 @@ class Googleplaybooks(AndroidUxPerfWorkload):
         self.uiauto_params['library_book_title'] = self.library_book_title
         self.uiauto_params['chapter_page_number'] = self.select_chapter_page_number
         self.uiauto_params['search_word'] = self.search_word
+        self.uiauto_params['reading_session_pages'] = self.reading_session_pages
+        self.uiauto_params['reading_session_interval'] = int(self.reading_session_interval * 1000)
         self.uiauto_params['account'] = self.account
@@ -16,6 +16,7 @@
 package com.arm.wlauto.uiauto.googleplaybooks;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiObject2;
@@ -26,17 +27,20 @@ import android.support.test.uiautomator.By;
 import android.util.Log;
 
 import com.arm.wlauto.uiauto.ApplaunchInterface;
+import com.arm.wlauto.uiauto.SystemSampler;
 import com.arm.wlauto.uiauto.UiAutoUtils;
 import com.arm.wlauto.uiauto.UxPerfUiAutomation;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.arm.wlauto.uiauto.BaseUiAutomation.FindByCriteria.BY_DESC;
 import static com.arm.wlauto.uiauto.BaseUiAutomation.FindByCriteria.BY_ID;
@@ -50,6 +54,11 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
     private int viewTimeoutSecs = 10;
     private long viewTimeout =  TimeUnit.SECONDS.toMillis(viewTimeoutSecs);
 
+    // A page is considered rendered once the reader has raised no
+    // accessibility events for this long
+    private static final long PAGE_QUIET_MILLIS = 150;
+    private static final long PAGE_RENDER_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
 @Test
 public void runUiAutomation() throws Exception {
         // Override superclass value
@@ -62,6 +71,8 @@ public void runUiAutomation() throws Exception {
         String libraryBookTitle = parameters.getString("library_book_title");
         int chapterPageNumber = parameters.getInt("chapter_page_number");
         String searchWord = parameters.getString("search_word");
+        int readingSessionPages = parameters.getInt("reading_session_pages");
+        int readingSessionInterval = parameters.getInt("reading_session_interval");
         String noteText = "This is a test note";
 
         setScreenOrientation(ScreenOrientation.NATURAL);
@@ -78,6 +89,9 @@ public void runUiAutomation() throws Exception {
 
         selectChapter(chapterPageNumber);
         gesturesTest();
+        if (readingSessionPages > 0) {
+            readingSession(readingSessionPages, readingSessionInterval);
+        }
         addNote(noteText);
         removeNote();
         searchForWord(searchWord);
@@ -415,6 +429,93 @@ public void runUiAutomation() throws Exception {
         waitForPage();
     }
 
+    // Turn the given number of pages, one every intervalMillis, timing each
+    // turn from the start of the swipe until the rendered page is stable.
+    // Turns are scheduled against absolute deadlines so that a slow page does
+    // not delay the rest of the session; turns that could not start on time
+    // are counted as overruns.
+    private void readingSession(final int pages, final int intervalMillis) throws Exception {
+        String testTag = "reading_session";
+
+        double[] latencies = new double[pages];
+        // Peak temperature during each turn. The sampler only keeps its most
+        // recent samples, so each turn is summarised as soon as it completes
+        // rather than once the whole session is over.
+        double[] temperatures = new double[pages];
+        Arrays.fill(temperatures, Double.NaN);
+        SystemSampler sampler = SystemSampler.getInstance();
+        int overruns = 0;
+
+        hideDropDownMenu();
+        waitForPage();
+
+        long sessionStart = SystemClock.uptimeMillis();
+        for (int i = 0; i < pages; i++) {
+            long delay = sessionStart + (long) i * intervalMillis - SystemClock.uptimeMillis();
+            if (delay > 0) {
+                SystemClock.sleep(delay);
+            } else if (i > 0) {
+                overruns++;
+            }
+
+            ActionLogger logger = new ActionLogger(testTag + "_page_" + (i + 1), parameters);
+            logger.start();
+            long startTime = System.nanoTime();
+            uiDeviceSwipe(Direction.LEFT, 20);
+            waitForPageRendered();
+            long endTime = System.nanoTime();
+            logger.stop();
+
+            // The quiet period that confirmed the page was stable is not
+            // part of the latency
+            latencies[i] = Math.max(0, TimeUnit.NANOSECONDS.toMillis(endTime - startTime)
+                                       - PAGE_QUIET_MILLIS);
+            if (sampler != null) {
+                temperatures[i] = sampler.summarize(startTime, endTime).peakTemperature;
+            }
+        }
+
+        reportDistribution(testTag + "_page_turn_latency", latencies, "ms");
+        reportResult(testTag + "_overruns", overruns, null, true);
+        reportDrift(testTag, latencies, temperatures);
+
+        waitForPage();
+    }
+
+    // Compare the first and last quarters of a reading session, to expose
+    // slowdowns caused by thermal throttling over a long session
+    private void reportDrift(String testTag, double[] latencies, double[] temperatures) {
+        int quarter = latencies.length / 4;
+        if (quarter == 0) {
+            return;
+        }
+        int last = latencies.length - quarter;
+        double[] firstQuarter = Arrays.copyOfRange(latencies, 0, quarter);
+        double[] lastQuarter = Arrays.copyOfRange(latencies, last, latencies.length);
+        Arrays.sort(firstQuarter);
+        Arrays.sort(lastQuarter);
+        reportResult(testTag + "_latency_drift",
+                     percentile(lastQuarter, 50) - percentile(firstQuarter, 50), "ms", true);
+
+        double startTemperature = peak(temperatures, 0, quarter);
+        double endTemperature = peak(temperatures, last, temperatures.length);
+        if (!Double.isNaN(startTemperature) && !Double.isNaN(endTemperature)) {
+            reportResult(testTag + "_temperature_rise",
+                         endTemperature - startTemperature, "C", true);
+        }
+    }
+
+    // Highest of the given values in [from, to), ignoring missing (NaN) ones
+    private static double peak(double[] values, int from, int to) {
+        double peak = Double.NaN;
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(values[i]) && (Double.isNaN(peak) || values[i] > peak)) {
+                peak = values[i];
+            }
+        }
+        return peak;
+    }
+
     private void addNote(final String text) throws Exception {
         String testTag = "note_add";
         ActionLogger logger = new ActionLogger(testTag, parameters);
@@ -593,6 +694,17 @@ public void runUiAutomation() throws Exception {
         return activityReader;
     }
 
+    // Wait until the reader stops updating the page after a page turn
+    private void waitForPageRendered() throws Exception {
+        try {
+            mInstrumentation.getUiAutomation().waitForIdle(PAGE_QUIET_MILLIS,
+                                                           PAGE_RENDER_TIMEOUT_MILLIS);
+        } catch (TimeoutException e) {
+            throw new UiObjectNotFoundException("Page did not finish rendering within "
+                                                + PAGE_RENDER_TIMEOUT_MILLIS + " ms");
+        }
+    }
+
     // Helper for accessing the drop down menu
     private void getDropdownMenu() throws Exception {
         UiObject actionBar =
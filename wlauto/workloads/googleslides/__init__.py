@@ -17,6 +17,7 @@ import os
 
 from wlauto import AndroidUxPerfWorkload, Parameter
 from wlauto.exceptions import ValidationError
+from wlauto.utils.assets import parse_image_size, write_pptx
 
 
 class GoogleSlides(AndroidUxPerfWorkload):
@@ -75,6 +76,14 @@ class GoogleSlides(AndroidUxPerfWorkload):
     6. Finally, repeat the previous step in the reverse direction while still in presentation
        mode, navigating back to the first slide.
 
+    Each navigation step is also logged as its own action (e.g. ``slideshow_playforward_3``
+    for the third swipe of step 5), so a single slow slide shows up in its own timing and,
+    with the ``fps`` instrument, its own frame statistics.
+
+    To see how navigation scales with the size of the presentation, set ``generate_deck``
+    to have a deck of ``slide_count`` slides, each holding an image of ``deck_image_size``,
+    generated on the host and used instead of ``test_file``.
+
     NOTE: There are known issues with the reliability of this workload on some targets.
     It MAY NOT ALWAYS WORK on your device. If you do run into problems, it might help to
     set ``do_text_entry`` parameter to ``False``.
@@ -96,7 +105,20 @@ class GoogleSlides(AndroidUxPerfWorkload):
         Parameter('slide_count', kind=int, default=5,
                   description='''
                   Number of slides in aforementioned local file. Determines number of
-                  swipe actions when playing slide show.
+                  swipe actions when playing slide show. Also the number of slides in
+                  the generated deck if ``generate_deck`` is set.
+                  '''),
+        Parameter('generate_deck', kind=bool, default=False,
+                  description='''
+                  If ``True``, a PowerPoint file with ``slide_count`` slides, each showing
+                  an image of ``deck_image_size``, is generated and used for the load test
+                  instead of ``test_file``.
+                  '''),
+        Parameter('deck_image_size', kind=str, default='1600x1200',
+                  description='''
+                  Size, as ``<width>x<height>`` in pixels, of the image on each slide of the
+                  generated deck. The images are incompressible, so this also controls the
+                  size of the file. Ignored unless ``generate_deck`` is set.
                   '''),
         Parameter('do_text_entry', kind=bool, default=True,
                   description='''
@@ -114,9 +136,18 @@ class GoogleSlides(AndroidUxPerfWorkload):
         self.run_timeout = 600
         self.deployable_assets = [self.test_image, self.test_file]
         self.clean_assets = True
+        self.deck_dimensions = None
 
     def validate(self):
         super(GoogleSlides, self).validate()
+        if self.generate_deck:
+            try:
+                self.deck_dimensions = parse_image_size(self.deck_image_size)
+            except ValueError as e:
+                raise ValidationError(str(e))
+            self.test_file = 'uxperf_generated_{}_slides_{}x{}.pptx'.format(self.slide_count,
+                                                                            *self.deck_dimensions)
+            self.deployable_assets = [self.test_image, self.test_file]
         self.uiauto_params['workdir_name'] = self.device.path.basename(self.device.working_directory)
         self.uiauto_params['test_file'] = self.test_file
         self.uiauto_params['slide_count'] = self.slide_count
@@ -129,6 +160,18 @@ class GoogleSlides(AndroidUxPerfWorkload):
         if os.path.splitext(self.test_file.lower())[1] not in ['.pptx']:
             raise ValidationError('{} must be a PPTX file'.format(self.test_file))
 
+    def initialize(self, context):
+        super(GoogleSlides, self).initialize(context)
+        if self.generate_deck:
+            # Generated into the dependencies directory, where it will be
+            # picked up by the resource resolver when assets are pushed.
+            if not os.path.isdir(self.dependencies_directory):
+                os.makedirs(self.dependencies_directory)
+            deck_path = os.path.join(self.dependencies_directory, self.test_file)
+            if not os.path.isfile(deck_path):
+                self.logger.debug('Generating {}'.format(self.test_file))
+                write_pptx(deck_path, self.slide_count, self.deck_dimensions)
+
     def teardown(self, context):
         super(GoogleSlides, self).teardown(context)
         # Remove the newly created file
@@ -398,8 +398,7 @@ public class UiAutomation extends UxPerfUiAutomation {
         ActionLogger logger = new ActionLogger(testTag + "_editforward", parameters);
         logger.start();
         while (slideIndex++ < slideCount) {
-            uiDeviceSwipeHorizontal(rightEdge, leftEdge, yCoordinate, DEFAULT_SWIPE_STEPS);
-            waitForProgress(WAIT_TIMEOUT_1SEC*5);
+            swipeSlide(testTag + "_editforward_" + slideIndex, rightEdge, leftEdge, yCoordinate);
         }
         logger.stop();
         sleep(1);
@@ -408,8 +407,7 @@ public class UiAutomation extends UxPerfUiAutomation {
         logger = new ActionLogger(testTag + "_editbackward", parameters);
         logger.start();
         while (slideIndex-- > 0) {
-            uiDeviceSwipeHorizontal(leftEdge, rightEdge, yCoordinate, DEFAULT_SWIPE_STEPS);
-            waitForProgress(WAIT_TIMEOUT_1SEC*5);
+            swipeSlide(testTag + "_editbackward_" + slideIndex, leftEdge, rightEdge, yCoordinate);
         }
         logger.stop();
         sleep(1);
@@ -436,8 +434,7 @@ public class UiAutomation extends UxPerfUiAutomation {
         logger = new ActionLogger(testTag + "_playforward", parameters);
         logger.start();
         while (slideIndex++ < slideCount) {
-            uiDeviceSwipeHorizontal(rightEdge, leftEdge, yCoordinate, DEFAULT_SWIPE_STEPS);
-            waitForProgress(WAIT_TIMEOUT_1SEC*5);
+            swipeSlide(testTag + "_playforward_" + slideIndex, rightEdge, leftEdge, yCoordinate);
         }
         logger.stop();
         sleep(1);
@@ -446,8 +443,7 @@ public class UiAutomation extends UxPerfUiAutomation {
         logger = new ActionLogger(testTag + "_playbackward", parameters);
         logger.start();
         while (slideIndex-- > 0) {
-            uiDeviceSwipeHorizontal(leftEdge, rightEdge, yCoordinate, DEFAULT_SWIPE_STEPS);
-            waitForProgress(WAIT_TIMEOUT_1SEC*5);
+            swipeSlide(testTag + "_playbackward_" + slideIndex, leftEdge, rightEdge, yCoordinate);
         }
         logger.stop();
         sleep(1);
@@ -456,6 +452,16 @@ public class UiAutomation extends UxPerfUiAutomation {
         mDevice.pressBack();
     }
 
+    // Navigate one slide, logging it as an action of its own so that the
+    // timing and frame statistics of each slide can be told apart
+    protected void swipeSlide(String testTag, int startX, int endX, int y) throws Exception {
+        ActionLogger logger = new ActionLogger(testTag, parameters);
+        logger.start();
+        uiDeviceSwipeHorizontal(startX, endX, y, DEFAULT_SWIPE_STEPS);
+        waitForProgress(WAIT_TIMEOUT_1SEC*5);
+        logger.stop();
+    }
+
     protected boolean waitForProgress(int timeout) throws Exception {
         UiObject progress = mDevice.findObject(new UiSelector().className("android.widget.ProgressBar"));
         if (progress.waitForExists(WAIT_TIMEOUT_1SEC)) {
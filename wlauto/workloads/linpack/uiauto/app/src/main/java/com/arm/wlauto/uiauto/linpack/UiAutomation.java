@@ -21,7 +21,6 @@ import android.os.Bundle;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiSelector;
-import android.util.Log;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
 
@@ -48,14 +47,14 @@ public void runUiAutomation() throws Exception{
         runSingleButton.waitForExists(TimeUnit.SECONDS.toMillis(30));
 
         UiObject mflops = mDevice.findObject(new UiSelector().className("android.widget.TextView").instance(2));
-        Log.v(TAG, String.format("LINPACK RESULT: ST %s", mflops.getText()));
+        reportResult("Linpack ST", Double.parseDouble(mflops.getText()), "MFLOPS");
 
         UiObject runMultiButton = mDevice.findObject(selector.text("Run Multi-Thread"));
         runMultiButton.click();
         runMultiButton.waitUntilGone(500);
         runMultiButton.waitForExists(TimeUnit.SECONDS.toMillis(30));
 
-        Log.v(TAG, String.format("LINPACK RESULT: MT %s", mflops.getText()));
+        reportResult("Linpack MT", Double.parseDouble(mflops.getText()), "MFLOPS");
 
         Bundle status = new Bundle();
         mInstrumentation.sendStatus(Activity.RESULT_OK, status);
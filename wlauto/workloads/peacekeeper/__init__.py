@@ -16,10 +16,12 @@
 # pylint: disable=E1101,W0201,E0203
 import os
 import urllib2
+import urlparse
 from HTMLParser import HTMLParser
 
 from wlauto import AndroidUiAutoBenchmark, Parameter
 from wlauto.exceptions import WorkloadError
+from wlauto.utils.httpserver import LocalContentServer
 
 
 BROWSER_MAP = {
@@ -46,6 +48,23 @@ class Peacekeeper(AndroidUiAutoBenchmark):
        one of the two currently-supported browsers. Moreover, TC2 has
        compatibility issue with chrome
 
+    To run without a network connection, and without the variance it
+    introduces, a mirror of the benchmark's pages may be served from the host
+    by specifying ``local_content``. The mirror must contain the pages of the
+    host in ``peacekeeper_url``, including the results page the benchmark
+    navigates to on completion, e.g. as ``wget --mirror --page-requisites``
+    saves them. The browser is pointed at the local copy through a port
+    reversed with ``adb reverse``, which requires Android 5.0 or later.
+
+    .. note::
+
+       The score is computed by the benchmark's server and is only shown in
+       the results page, so a mirror can only hold whatever score was
+       mirrored with it; the results the benchmark submits are discarded.
+       ``peacekeeper_score`` is therefore not reported when ``local_content``
+       is used, only the ``local_content_*`` metrics and those reported by
+       the UI automation.
+
     """
     run_timeout = 15 * 60
 
@@ -59,16 +78,53 @@ class Peacekeeper(AndroidUiAutoBenchmark):
                   """),
         Parameter('peacekeeper_url', default='http://peacekeeper.futuremark.com/run.action',
                   description='The URL to run the peacekeeper benchmark.'),
+        Parameter('local_content', default=None,
+                  description="""The (on-host) directory of a mirror of the benchmark's pages to serve
+                                 in place of ``peacekeeper_url``. It should contain a sub-directory
+                                 named after the URL's host, as ``wget --mirror`` creates.
+                                 If not specified, the pages are loaded from the network.
+                  """),
+        Parameter('server_port', kind=int, default=8080,
+                  description='The port ``local_content`` is served on, on both the host and the device.'),
+        Parameter('server_latency', kind=int, default=0,
+                  description='Delay, in milliseconds, added to each response served from ``local_content``.'),
+        Parameter('server_bandwidth', kind=int, default=0,
+                  description="""Rate, in kB/s, responses served from ``local_content`` are limited to.
+                                 ``0`` means unlimited."""),
     ]
 
     def __init__(self, device, **kwargs):
         super(Peacekeeper, self).__init__(device, **kwargs)
         self.variant_name = self.browser
+        self.server = None
+
+    def initialize(self, context):
+        super(Peacekeeper, self).initialize(context)
+        if self.local_content:
+            host = urlparse.urlparse(self.peacekeeper_url).netloc.split(':')[0]
+            self.server = LocalContentServer(self.local_content, self.server_port, default_host=host,
+                                             latency=self.server_latency, bandwidth=self.server_bandwidth)
+            self.server.start()
+            self.uiauto_params['peacekeeper_url'] = self.server.url_for(self.peacekeeper_url)
+
+    def setup(self, context):
+        super(Peacekeeper, self).setup(context)
+        if self.server:
+            # Re-created for each iteration, as it does not survive a reboot
+            self.device.reverse_port('tcp:{}'.format(self.server_port), 'tcp:{}'.format(self.server_port))
+            self.server.reset_stats()
 
     def update_result(self, context):
         super(Peacekeeper, self).update_result(context)
         url = None
 
+        if self.server:
+            context.result.add_metric('local_content_requests', self.server.requests)
+            context.result.add_metric('local_content_transferred', self.server.bytes_sent / 1024.0, 'kB')
+            # The results page in the mirror does not hold this run's score
+            self.logger.info('Not reporting peacekeeper_score, as local_content is used.')
+            return
+
         # Pull the result page url, which contains the results, from the
         # peacekeeper.txt file and process it
         self.device.pull_file(self.output_file, context.output_directory)
@@ -96,11 +152,26 @@ class Peacekeeper(AndroidUiAutoBenchmark):
         # Add peacekeeper_score into results file
         context.result.add_metric('peacekeeper_score', parser.peacekeeper_score)
 
+    def teardown(self, context):
+        super(Peacekeeper, self).teardown(context)
+        if self.server:
+            self.device.remove_reverse_port('tcp:{}'.format(self.server_port))
+
+    def finalize(self, context):
+        super(Peacekeeper, self).finalize(context)
+        if self.server:
+            self.server.stop()
+            self.server = None
+
     def validate(self):
         if self.output_file is None:
             self.output_file = os.path.join(self.device.working_directory, 'peacekeeper.txt')
         if self.browser == 'chrome' and self.device == 'TC2':
             raise WorkloadError('Chrome not supported on TC2')
+        if self.local_content:
+            host = urlparse.urlparse(self.peacekeeper_url).netloc.split(':')[0]
+            if not os.path.isdir(os.path.join(self.local_content, host)):
+                raise WorkloadError('local_content does not contain a mirror of {}'.format(host))
 
         self.uiauto_params['output_file'] = self.output_file
         self.uiauto_params['browser'] = self.browser
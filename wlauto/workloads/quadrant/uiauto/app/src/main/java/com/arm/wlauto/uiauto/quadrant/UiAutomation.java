@@ -23,11 +23,13 @@ import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiSelector;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
+import com.arm.wlauto.uiauto.CompletionDetector;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 // Import the uiautomator libraries
 
@@ -49,9 +51,12 @@ public void runUiAutomation() throws Exception {
         handleFtuInfoDialogIfNecessary();
         goToRunCustomBenchmark();
         selectTestsToRun(hasGpu);
+        CompletionDetector detector = new CompletionDetector(mInstrumentation);
+        detector.addLogcatTrigger("benchmark aggregate score is");
+        detector.start();
         hitStart();
         handleWarningIfNecessary();
-        waitForResults();
+        waitForResults(detector);
 
         mInstrumentation.sendStatus(Activity.RESULT_OK, status);
     }
@@ -119,7 +124,12 @@ public void runUiAutomation() throws Exception {
         }
     }
 
-    public void waitForResults() throws Exception {
-        waitForLogcatText("benchmark aggregate score is", TimeUnit.SECONDS.toMillis(200));
+    public void waitForResults(CompletionDetector detector) throws Exception {
+        CompletionDetector.Completion completion = detector.waitForCompletion(TimeUnit.SECONDS.toMillis(200));
+        detector.stop();
+        if (completion == null) {
+            throw new TimeoutException("Timed out waiting for Logcat text \"benchmark aggregate score is\"");
+        }
+        reportCompletion("benchmark", completion);
     }
 }
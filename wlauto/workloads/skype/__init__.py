@@ -42,6 +42,14 @@ class Skype(AndroidUxPerfWorkload):
        Note: The actual duration of the call may not match exactly the intended duration
        due to the uiautomation overhead.
 
+    While the call is in progress, the CPU frequency and utilisation of each
+    frequency domain, the temperature and the memory footprint of Skype are
+    sampled every ``call_sample_interval`` seconds and summarised as
+    ``<voice|video>_profile_*`` metrics, so that the cost of voice and video
+    calls can be compared. For video calls, the frames rendered by the call
+    screen are reported as well; video composited directly from a surface is
+    not counted by these.
+
     **Skype Setup**
 
        - You must have a Skype account set up and its credentials passed
@@ -76,6 +84,11 @@ class Skype(AndroidUxPerfWorkload):
                   description='This is the target duration of the call in seconds'),
         Parameter('action', kind=str, allowed_values=['voice', 'video'], default='voice',
                   description='Action to take - either voice call (default) or video'),
+        Parameter('call_sample_interval', kind=int, default=1,
+                  description='''
+                  Interval, in seconds, at which the call is profiled. ``0`` disables
+                  call profiling.
+                  '''),
     ]
 
     # This workload relies on the internet so check that there is a working
@@ -93,6 +106,7 @@ class Skype(AndroidUxPerfWorkload):
         self.uiauto_params['name'] = self.contact_name
         self.uiauto_params['duration'] = self.duration
         self.uiauto_params['action'] = self.action
+        self.uiauto_params['call_sample_interval'] = self.call_sample_interval
 
     def setup(self, context):
         super(Skype, self).setup(context)
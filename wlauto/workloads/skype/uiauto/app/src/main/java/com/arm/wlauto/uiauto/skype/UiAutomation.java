@@ -16,6 +16,7 @@ package com.arm.wlauto.uiauto.skype;
  */
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
 import android.support.test.uiautomator.UiObjectNotFoundException;
@@ -23,6 +24,9 @@ import android.support.test.uiautomator.UiSelector;
 import android.support.test.uiautomator.UiWatcher;
 
 import com.arm.wlauto.uiauto.ApplaunchInterface;
+import com.arm.wlauto.uiauto.FrameProbe;
+import com.arm.wlauto.uiauto.MemoryProbe;
+import com.arm.wlauto.uiauto.SystemSampler;
 import com.arm.wlauto.uiauto.UxPerfUiAutomation;
 
 import org.junit.Test;
@@ -40,6 +44,9 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
     public static final String ACTION_VOICE = "voice";
     public static final String ACTION_VIDEO = "video";
 
+    // Used for call profiling if the sampler has not been started by the workload
+    public static final int CALL_SAMPLER_PERIOD = 10;
+
     @Test
     public void runUiAutomation() throws Exception {
 
@@ -51,6 +58,7 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
 
         String contactName = parameters.getString("name");
         int callDuration = parameters.getInt("duration");
+        int sampleInterval = parameters.getInt("call_sample_interval");
         String callType = parameters.getString("action");
         String resultsFile = parameters.getString("results_file");
 
@@ -60,9 +68,9 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
         searchForContact(contactName);
 
         if (ACTION_VOICE.equalsIgnoreCase(callType)) {
-            makeCall(callDuration, false);
+            makeCall(callDuration, sampleInterval, false);
         } else if (ACTION_VIDEO.equalsIgnoreCase(callType)) {
-            makeCall(callDuration, true);
+            makeCall(callDuration, sampleInterval, true);
         }
 
         removeWatcher("infoPopUpWatcher");
@@ -223,7 +231,7 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
         return nextPopUpWatcher;
     }
 
-    private void makeCall(int duration, boolean video) throws Exception {
+    private void makeCall(int duration, int sampleInterval, boolean video) throws Exception {
         String testTag = video ? "video" : "voice";
         String description = video ? "Video call" : "Call options";
 
@@ -241,18 +249,44 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
         callButton.clickAndWaitForNewWindow();
         logger.stop();
 
-        // Wait for 'duration' seconds - attempt to mute while waiting
+        // Wait for 'duration' seconds - attempt to mute while waiting and
+        // profile the call every 'sampleInterval' seconds. The logger is
+        // created first so that it does not use a sampler the profiler starts.
         logger = new ActionLogger(testTag + "_call", parameters);
+        CallProfiler profiler = null;
+        if (sampleInterval > 0) {
+            profiler = new CallProfiler(testTag + "_profile", sampleInterval, video);
+        }
         logger.start();
-        boolean muted = false;
-        while (System.currentTimeMillis() < target) {
-            if (muted == true) {
-                sleep(1);
-            } else {
-                muted = tryButton(muteButton, 500);
+        if (profiler != null) {
+            profiler.start();
+        }
+        try {
+            boolean muted = false;
+            long now;
+            while ((now = System.currentTimeMillis()) < target) {
+                if (muted == true) {
+                    long wake = now + 1000;
+                    if (profiler != null) {
+                        wake = Math.min(wake, now + profiler.millisUntilSample());
+                    }
+                    SystemClock.sleep(Math.max(0, Math.min(wake, target) - now));
+                } else {
+                    muted = tryButton(muteButton, 500);
+                }
+                if (profiler != null && profiler.millisUntilSample() <= 0) {
+                    profiler.sample();
+                }
+            }
+        } finally {
+            if (profiler != null) {
+                profiler.releaseSampler();
             }
         }
         logger.stop();
+        if (profiler != null) {
+            profiler.stop();
+        }
 
         // Hang up the call and log how long that takes
         logger = new ActionLogger(testTag + "_stop", parameters);
@@ -263,6 +297,167 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
         logger.stop();
     }
 
+    /**
+     * Samples CPU frequency and utilisation per frequency domain, temperature
+     * and the memory footprint of Skype at a fixed interval during a call,
+     * and reports a summary of them, along with the frame statistics of the
+     * call screen for video calls, when the call ends.
+     *
+     * Metrics are prefixed with the call type so that voice and video calls
+     * can be compared directly.
+     */
+    private class CallProfiler {
+
+        private String prefix;
+        private long intervalMillis;
+        private SystemSampler sampler;
+        private boolean startedSampler;
+        private MemoryProbe memory;
+        private FrameProbe frames;
+
+        private long startTime;
+        private long lastSampleTime;
+        private long nextSampleMillis;
+
+        // Sums of the per-window means, weighted by the number of samples
+        // in each window as the last one is usually shorter
+        private long samples;
+        private int[] cpus;
+        private double[] frequencySums;
+        private double[] busySums;
+        private long[] busyWeights;
+        private double cpuBusySum;
+        private long cpuBusyWeight;
+        private double peakTemperature = Double.NaN;
+        private long pssSum;
+        private long pssMax = -1;
+        private int pssSamples;
+
+        public CallProfiler(String prefix, int intervalSeconds, boolean video) {
+            this.prefix = prefix;
+            this.intervalMillis = TimeUnit.SECONDS.toMillis(intervalSeconds);
+            this.sampler = SystemSampler.getInstance();
+            if (sampler == null) {
+                sampler = SystemSampler.start(CALL_SAMPLER_PERIOD);
+                startedSampler = true;
+            }
+            String packageName = parameters.getString("package_name");
+            this.memory = new MemoryProbe(mInstrumentation, packageName);
+            if (video) {
+                this.frames = new FrameProbe(mInstrumentation, packageName);
+            }
+        }
+
+        public void start() {
+            if (frames != null) {
+                frames.reset();
+            }
+            startTime = System.nanoTime();
+            lastSampleTime = startTime;
+            nextSampleMillis = SystemClock.uptimeMillis() + intervalMillis;
+        }
+
+        public long millisUntilSample() {
+            return nextSampleMillis - SystemClock.uptimeMillis();
+        }
+
+        public void sample() {
+            // Windows are contiguous, so nothing is lost to the time taken
+            // to read the memory footprint
+            long now = System.nanoTime();
+            addWindow(sampler.summarize(lastSampleTime, now));
+            lastSampleTime = now;
+
+            MemoryProbe.Footprint footprint = memory.readFootprint();
+            if (footprint.pss >= 0) {
+                pssSum += footprint.pss;
+                pssMax = Math.max(pssMax, footprint.pss);
+                pssSamples++;
+            }
+            nextSampleMillis += intervalMillis;
+        }
+
+        // Stop the sampler if the profiler started it; the samples already
+        // taken can still be summarised
+        public void releaseSampler() {
+            if (startedSampler) {
+                SystemSampler.stop();
+                startedSampler = false;
+            }
+        }
+
+        public void stop() throws Exception {
+            long endTime = System.nanoTime();
+            // Account for the part of the call since the last full interval
+            addWindow(sampler.summarize(lastSampleTime, endTime));
+
+            for (int i = 0; cpus != null && i < cpus.length; i++) {
+                reportResult(prefix + "_cpu" + cpus[i] + "_frequency",
+                             frequencySums[i] / samples / 1000, "MHz");
+                if (busyWeights[i] > 0) {
+                    reportResult(prefix + "_cpu" + cpus[i] + "_busy",
+                                 busySums[i] / busyWeights[i], "%");
+                }
+            }
+            if (cpuBusyWeight > 0) {
+                reportResult(prefix + "_cpu_busy", cpuBusySum / cpuBusyWeight, "%");
+            }
+            if (!Double.isNaN(peakTemperature)) {
+                reportResult(prefix + "_peak_temperature", peakTemperature, "C", true);
+            }
+            if (pssSamples > 0) {
+                reportResult(prefix + "_pss_mean", (double) pssSum / pssSamples, "kB", true);
+                reportResult(prefix + "_pss_max", pssMax, "kB", true);
+            }
+
+            if (frames != null) {
+                FrameProbe.FrameStats stats = frames.read();
+                double seconds = (endTime - startTime) / 1e9;
+                if (stats.totalFrames >= 0) {
+                    reportResult(prefix + "_frames", stats.totalFrames, null);
+                    reportResult(prefix + "_frame_rate", stats.totalFrames / seconds, "fps");
+                }
+                if (stats.jankyFrames >= 0) {
+                    reportResult(prefix + "_janky_frames", stats.jankyFrames, null, true);
+                }
+                if (stats.percentile90 >= 0) {
+                    reportResult(prefix + "_frame_time_90percentile", stats.percentile90, "ms", true);
+                    reportResult(prefix + "_frame_time_95percentile", stats.percentile95, "ms", true);
+                    reportResult(prefix + "_frame_time_99percentile", stats.percentile99, "ms", true);
+                }
+            }
+        }
+
+        private void addWindow(SystemSampler.Summary summary) {
+            if (summary.sampleCount == 0) {
+                return;
+            }
+            if (cpus == null) {
+                cpus = summary.cpus;
+                frequencySums = new double[cpus.length];
+                busySums = new double[cpus.length];
+                busyWeights = new long[cpus.length];
+            }
+            int weight = summary.sampleCount;
+            samples += weight;
+            for (int i = 0; i < cpus.length; i++) {
+                frequencySums[i] += summary.meanFrequencies[i] * weight;
+                if (!Double.isNaN(summary.busyPercents[i])) {
+                    busySums[i] += summary.busyPercents[i] * weight;
+                    busyWeights[i] += weight;
+                }
+            }
+            if (!Double.isNaN(summary.busyPercent)) {
+                cpuBusySum += summary.busyPercent * weight;
+                cpuBusyWeight += weight;
+            }
+            if (!Double.isNaN(summary.peakTemperature)
+                    && (Double.isNaN(peakTemperature) || summary.peakTemperature > peakTemperature)) {
+                peakTemperature = summary.peakTemperature;
+            }
+        }
+    }
+
     private boolean tryButton(UiObject button) throws Exception {
         return tryButton(button, uiAutoTimeout);
     }
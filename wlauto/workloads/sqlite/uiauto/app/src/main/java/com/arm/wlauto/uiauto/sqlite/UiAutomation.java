@@ -19,16 +19,20 @@ package com.arm.wlauto.uiauto.sqlite;
 import android.os.Bundle;
 import android.support.test.runner.AndroidJUnit4;
 import android.support.test.uiautomator.UiObject;
-import android.support.test.uiautomator.UiObjectNotFoundException;
 import android.support.test.uiautomator.UiScrollable;
 import android.support.test.uiautomator.UiSelector;
 import android.util.Log;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
+import com.arm.wlauto.uiauto.CompletionDetector;
+import com.arm.wlauto.uiauto.ResultScraper;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 // Import the uiautomator libraries
 
 @RunWith(AndroidJUnit4.class)
@@ -50,7 +54,17 @@ public void runUiAutomation() throws Exception {
         try {
             UiObject stop_text = mDevice.findObject(selector.textContains("Stop")
                                                       .className("android.widget.Button"));
-            waitUntilNoObject(stop_text, 600);
+            // The run is over when the Stop button goes, once it has appeared
+            stop_text.waitForExists(TimeUnit.SECONDS.toMillis(5));
+            CompletionDetector detector = new CompletionDetector(mInstrumentation);
+            detector.addUiGoneTrigger(stop_text);
+            detector.start();
+            CompletionDetector.Completion completion =
+                detector.waitForCompletion(TimeUnit.SECONDS.toMillis(600));
+            detector.stop();
+            if (completion != null) {
+                reportCompletion("benchmark", completion);
+            }
 
             sleep(2);
             this.extractResults();
@@ -58,50 +72,20 @@ public void runUiAutomation() throws Exception {
         }
     }
 
-    public void extractResults() throws UiObjectNotFoundException{
-        UiSelector selector = new UiSelector();
-        UiScrollable resultList = new UiScrollable(selector.className("android.widget.ScrollView"));
+    public void extractResults() throws Exception {
+        UiScrollable resultList = new UiScrollable(new UiSelector().className("android.widget.ScrollView"));
         resultList.scrollToBeginning(5);
-        selector = resultList.getSelector();
-        int index = 0;
-        while (true){
-            UiObject lastEntry = mDevice.findObject(selector.childSelector(new UiSelector()
-                                                                    .className("android.widget.LinearLayout")
-                                                                    .childSelector(new UiSelector()
-                                                                    .index(index)
-                                                                    .childSelector(new UiSelector()
-                                                                    .className("android.widget.LinearLayout")))));
-            if (lastEntry.exists()){
-                UiObject value = mDevice.findObject(selector.childSelector(new UiSelector()
-                                                                    .className("android.widget.LinearLayout")
-                                                                    .childSelector(new UiSelector()
-                                                                    .index(index)
-                                                                    .childSelector(new UiSelector()
-                                                                    .resourceIdMatches(".*test_result.*")))));
-                Log.v("sqlite", "Overall = " + value.getText().replace("\n", " "));
-                break;
-            }
 
-            UiObject label = mDevice.findObject(selector.childSelector(new UiSelector()
-                                                                .className("android.widget.LinearLayout")
-                                                                .childSelector(new UiSelector()
-                                                                .index(index)
-                                                                .childSelector(new UiSelector()
-                                                                .index(0)))));
-            UiObject value = mDevice.findObject(selector.childSelector(new UiSelector()
-                                                                .className("android.widget.LinearLayout")
-                                                                .childSelector(new UiSelector()
-                                                                .index(index)
-                                                                .childSelector(new UiSelector()
-                                                                .index(1)))));
-            index++;
-            if (!label.exists()){
-                resultList.scrollForward();
-                index--;
-                sleep(1);
-                continue;
-            }
-            Log.v("sqlite", label.getText() + " = " + value.getText().replace("\n", " "));
+        // Each row of the results list is a label/value pair except for the
+        // last one, which holds the overall result.
+        ResultScraper scraper = new ResultScraper(mDevice);
+        scraper.addRule(ResultScraper.listRowPairs("android.widget.ScrollView", "android.widget.LinearLayout",
+                                                   ".*test_result.*"));
+        scraper.addRule(ResultScraper.resourceId("Overall", ".*test_result.*"));
+
+        Map<String, String> results = scraper.scrape(resultList, 20);
+        for (Map.Entry<String, String> result : results.entrySet()) {
+            Log.v("sqlite", result.getKey() + " = " + result.getValue());
         }
     }
 }
@@ -25,6 +25,7 @@ from distutils.version import StrictVersion
 from wlauto import AndroidUiAutoBenchmark, Parameter
 from wlauto.utils.types import list_of_strs, numeric
 from wlauto.exceptions import WorkloadError
+from wlauto.utils.httpserver import LocalContentServer
 
 
 #pylint: disable=no-member
@@ -44,6 +45,14 @@ class Vellamo(AndroidUiAutoBenchmark):
 
     Note: Vellamo v3.0 fails to run on Juno
 
+    The remote content the browser tests load may be served from a mirror on
+    the host instead, by specifying ``local_content``, so that they run
+    without a network connection and without the variance it introduces. The
+    device's global HTTP proxy is pointed at the host while each iteration
+    runs, through a port reversed with ``adb reverse``, which requires Android
+    5.0 or later. Content that is not in the mirror, including any requested
+    over HTTPS, fails to load rather than being fetched from the network.
+
     """
     package = 'com.quicinc.vellamo'
     run_timeout = 15 * 60
@@ -66,7 +75,18 @@ class Vellamo(AndroidUiAutoBenchmark):
         Parameter('browser', kind=int, default=1,
                   description=('Specify which of the installed browsers will be used for the tests. The number refers to '
                                'the order in which browsers are listed by Vellamo. E.g. ``1`` will select the first browser '
-                               'listed, ``2`` -- the second, etc. Only valid for version ``3.0``.'))
+                               'listed, ``2`` -- the second, etc. Only valid for version ``3.0``.')),
+        Parameter('local_content', default=None,
+                  description=('The (on-host) directory of a mirror of the content the browser tests load, '
+                               'with a sub-directory per host, as ``wget --mirror`` creates. If not specified, '
+                               'the content is loaded from the network.')),
+        Parameter('server_port', kind=int, default=8080,
+                  description='The port ``local_content`` is served on, on both the host and the device.'),
+        Parameter('server_latency', kind=int, default=0,
+                  description='Delay, in milliseconds, added to each response served from ``local_content``.'),
+        Parameter('server_bandwidth', kind=int, default=0,
+                  description=('Rate, in kB/s, responses served from ``local_content`` are limited to. '
+                               '``0`` means unlimited.')),
     ]
 
     def __init__(self, device, **kwargs):
@@ -75,6 +95,15 @@ class Vellamo(AndroidUiAutoBenchmark):
             self.activity = 'com.quicinc.vellamo.main.MainActivity'
         if StrictVersion(self.version) == StrictVersion('2.0.3'):
             self.activity = 'com.quicinc.vellamo.VellamoActivity'
+        self.server = None
+        self.previous_proxy = None
+
+    def initialize(self, context):
+        super(Vellamo, self).initialize(context)
+        if self.local_content:
+            self.server = LocalContentServer(self.local_content, self.server_port,
+                                             latency=self.server_latency, bandwidth=self.server_bandwidth)
+            self.server.start()
 
     def setup(self, context):
         self.uiauto_params['version'] = self.version
@@ -83,6 +112,14 @@ class Vellamo(AndroidUiAutoBenchmark):
         self.uiauto_params['browser'] = 'Browser' in self.benchmarks
         self.uiauto_params['multicore'] = 'Multi' in self.benchmarks
         super(Vellamo, self).setup(context)
+        if self.server:
+            # The proxy is only set while vellamo runs, so that other workloads
+            # are not served from the mirror; the reverse is re-created as it
+            # does not survive a reboot of the device
+            self.device.reverse_port('tcp:{}'.format(self.server_port), 'tcp:{}'.format(self.server_port))
+            self.previous_proxy = self.device.execute('settings get global http_proxy').strip()
+            self.device.execute('settings put global http_proxy localhost:{}'.format(self.server_port))
+            self.server.reset_stats()
 
     def validate(self):
         super(Vellamo, self).validate()
@@ -92,10 +129,16 @@ class Vellamo(AndroidUiAutoBenchmark):
             for benchmark in self.benchmarks:
                 if benchmark not in self.benchmark_types[self.version]:
                     raise WorkloadError('Version {} does not support {} benchmarks'.format(self.version, benchmark))
+        if self.local_content and not os.path.isdir(self.local_content):
+            raise WorkloadError('local_content directory does not exist: {}'.format(self.local_content))
 
     def update_result(self, context):
         super(Vellamo, self).update_result(context)
 
+        if self.server:
+            context.result.add_metric('local_content_requests', self.server.requests)
+            context.result.add_metric('local_content_transferred', self.server.bytes_sent / 1024.0, 'kB')
+
         # Get total scores from logcat
         self.non_root_update_result(context)
 
@@ -106,6 +149,21 @@ class Vellamo(AndroidUiAutoBenchmark):
         elif self.version == '3.2.4':
             self.update_result_v3_2(context)
 
+    def teardown(self, context):
+        super(Vellamo, self).teardown(context)
+        if self.server:
+            if self.previous_proxy and self.previous_proxy != 'null':
+                self.device.execute('settings put global http_proxy {}'.format(self.previous_proxy))
+            else:
+                self.device.execute('settings delete global http_proxy')
+            self.device.remove_reverse_port('tcp:{}'.format(self.server_port))
+
+    def finalize(self, context):
+        super(Vellamo, self).finalize(context)
+        if self.server:
+            self.server.stop()
+            self.server = None
+
     def update_result_v3(self, context):
         for test in self.benchmarks:  # Get all scores from HTML files
             filename = None
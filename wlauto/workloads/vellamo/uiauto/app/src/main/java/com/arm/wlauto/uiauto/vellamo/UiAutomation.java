@@ -26,6 +26,7 @@ import android.support.test.uiautomator.UiWatcher;
 import android.util.Log;
 
 import com.arm.wlauto.uiauto.BaseUiAutomation;
+import com.arm.wlauto.uiauto.CompletionDetector;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -59,7 +60,7 @@ public void runUiAutomation() throws Exception {
             startTest();
             dismissNetworkConnectionDialogIfNecessary();
             dismissExplanationDialogIfNecessary();
-            waitForTestCompletion(15 * 60, "com.quicinc.vellamo:id/act_ba_results_btn_no");
+            waitForTestCompletion(15 * 60, "com.quicinc.vellamo:id/act_ba_results_btn_no", "benchmark");
             getScore("html5", "com.quicinc.vellamo:id/act_ba_results_img_0");
             getScore("metal", "com.quicinc.vellamo:id/act_ba_results_img_1");
         }
@@ -191,7 +192,7 @@ public void runUiAutomation() throws Exception {
     }
 
     public void proccessTest(String metric) throws Exception{
-        waitForTestCompletion(15 * 60, "com.quicinc.vellamo:id/button_no");
+        waitForTestCompletion(15 * 60, "com.quicinc.vellamo:id/button_no", metric);
 
         //Remove watcher
         mDevice.removeWatcher("stoppedWorkingDialogWatcher");
@@ -213,13 +214,19 @@ public void runUiAutomation() throws Exception {
         scores.add(metric + " " + score.getText().trim());
     }
 
-    public void waitForTestCompletion(int timeout, String resourceID) throws Exception {
+    public void waitForTestCompletion(int timeout, String resourceID, String name) throws Exception {
         UiSelector selector = new UiSelector();
         UiObject resultsNoButton = mDevice.findObject(selector.resourceId(resourceID));
-        if (!resultsNoButton.waitForExists(TimeUnit.SECONDS.toMillis(timeout))) {
+        CompletionDetector detector = new CompletionDetector(mInstrumentation);
+        detector.addUiTrigger(resultsNoButton);
+        detector.start();
+        CompletionDetector.Completion completion =
+            detector.waitForCompletion(TimeUnit.SECONDS.toMillis(timeout));
+        detector.stop();
+        if (completion == null) {
             throw new UiObjectNotFoundException("Did not see results screen.");
         }
-
+        reportCompletion(name, completion);
     }
 
     public void dismissEULA() throws Exception {
@@ -20,6 +20,13 @@ from wlauto import AndroidUiAutoBenchmark, Parameter
 from wlauto.common.android.resources import ApkFile
 import wlauto.common.android.resources
 
+# Sampling interval and tolerance, in seconds, used by uiauto APKs built before
+# the playback sampler was added; they read these instead of sample_period and
+# stall_threshold, and divide by the interval, so it must always be passed.
+# The deprecated sampling_interval and tolerance parameters override them.
+LEGACY_SAMPLING_INTERVAL = 20
+LEGACY_TOLERANCE = 3
+
 
 class Videostreaming(AndroidUiAutoBenchmark):
     name = 'videostreaming'
@@ -27,10 +34,24 @@ class Videostreaming(AndroidUiAutoBenchmark):
     Uses the FREEdi video player to search, stream and play the specified
     video content from YouTube.
 
+    Playback smoothness is measured by sampling the elapsed time of the video
+    at a high rate. The following metrics are reported:
+
+        - playback_lag: how far, in milliseconds, playback has fallen behind the
+          wall clock by the end of the video.
+        - playback_max_lag: the largest lag observed during playback.
+        - stall_count: the number of times playback fell behind by more than
+          ``stall_threshold``.
+        - stall_total_duration, stall_max_duration: the total and longest time
+          spent stalled.
+
+    The full time series is saved in ``playback_samples.csv``.
+
     """
     name = 'videostreaming'
     package = 'tw.com.freedi.youtube.player'
     activity = '.MainActivity'
+    samples_file = 'playback_samples.csv'
 
     parameters = [
         Parameter('video_name', kind=str,
@@ -38,30 +59,49 @@ class Videostreaming(AndroidUiAutoBenchmark):
         Parameter('resolution', kind=str, default='320p', allowed_values=['320p', '720p', '1080p'],
                   description='Resolution of the video to be played. If video_name is set'
                   'this setting will be ignored'),
-        Parameter('sampling_interval', kind=int, default=20,
+        Parameter('sample_period', kind=int, default=50,
                   description="""
-                  Time interval, in seconds, after which the status of the video playback to
-                  be monitoreThe elapsed time of the video playback is
-                  monitored after after every ``sampling_interval`` seconds and
-                  compared against the actual time elapsed and the previous
-                  sampling point. If the video elapsed time is less that
-                  (sampling time - ``tolerance``) , then the playback is aborted as
-                  the video has not been playing continuously.
+                  Time interval, in milliseconds, at which the elapsed time of the video
+                  playback is sampled. Each time the elapsed time advances, the playback
+                  lag (wall clock time minus video time since playback started) is recorded
+                  in ``playback_samples.csv``.
                   """),
-        Parameter('tolerance', kind=int, default=3,
+        Parameter('stall_threshold', kind=int, default=500,
                   description="""
-                  Specifies the amount, in seconds, by which sampling time is
-                  allowed to deviate from elapsed video playback time. If the delta
-                  is greater than this value (which could happen due to poor network
-                  connection), workload result will be invalidated.
+                  Amount, in milliseconds, by which the elapsed video time may fall behind
+                  the wall clock between two consecutive updates before this is counted as
+                  a stall. Stalls do not abort the playback; they are reported through the
+                  ``stall_count``, ``stall_total_duration`` and ``stall_max_duration``
+                  metrics.
                   """),
         Parameter('run_timeout', kind=int, default=200,
                   description='The duration in second for which to play the video'),
+        Parameter('sampling_interval', kind=int, default=None,
+                  description="""
+                  Deprecated; use ``sample_period``. If specified, ``sample_period`` is
+                  set to this interval, in seconds.
+                  """),
+        Parameter('tolerance', kind=int, default=None,
+                  description="""
+                  Deprecated; use ``stall_threshold``. If specified, ``stall_threshold``
+                  is set to this amount, in seconds.
+                  """),
     ]
 
+    def validate(self):
+        super(Videostreaming, self).validate()
+        if self.sampling_interval is not None:
+            self.logger.warning('"sampling_interval" is deprecated; use "sample_period" instead.')
+            self.sample_period = self.sampling_interval * 1000
+        if self.tolerance is not None:
+            self.logger.warning('"tolerance" is deprecated; use "stall_threshold" instead.')
+            self.stall_threshold = self.tolerance * 1000
+
     def init_resources(self, context):
-        self.uiauto_params['tolerance'] = self.tolerance
-        self.uiauto_params['sampling_interval'] = self.sampling_interval
+        self.uiauto_params['sample_period'] = self.sample_period
+        self.uiauto_params['stall_threshold'] = self.stall_threshold
+        self.uiauto_params['sampling_interval'] = self.sampling_interval or LEGACY_SAMPLING_INTERVAL
+        self.uiauto_params['tolerance'] = LEGACY_TOLERANCE if self.tolerance is None else self.tolerance
         if self.video_name and self.video_name != "":
             self.uiauto_params['video_name'] = self.video_name
         else:
@@ -72,3 +112,13 @@ class Videostreaming(AndroidUiAutoBenchmark):
                                                         os.path.basename(self.uiauto_file))
         if not self.uiauto_package:
             self.uiauto_package = os.path.splitext(os.path.basename(self.uiauto_file))[0]
+
+    def update_result(self, context):
+        super(Videostreaming, self).update_result(context)
+        device_file = self.device.path.join(self.device.working_directory, self.samples_file)
+        if self.device.file_exists(device_file):
+            self.device.pull_file(device_file, os.path.join(context.output_directory, self.samples_file))
+            context.add_iteration_artifact(name='playback_samples',
+                                           path=self.samples_file,
+                                           kind='data',
+                                           description='Elapsed video time and playback lag.')
@@ -18,8 +18,12 @@ package com.arm.wlauto.uiauto.videostreaming;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.test.runner.AndroidJUnit4;
+import android.support.test.uiautomator.By;
+import android.support.test.uiautomator.StaleObjectException;
 import android.support.test.uiautomator.UiObject;
+import android.support.test.uiautomator.UiObject2;
 import android.support.test.uiautomator.UiObjectNotFoundException;
 import android.support.test.uiautomator.UiSelector;
 
@@ -28,8 +32,13 @@ import com.arm.wlauto.uiauto.BaseUiAutomation;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
-import java.util.Date;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 // Import the uiautomator libraries
 
@@ -37,6 +46,9 @@ import java.util.concurrent.TimeUnit;
 public class UiAutomation extends BaseUiAutomation {
 
     public static String TAG = "videostreaming";
+    public static final String PLAYBACK_SAMPLES_FILE = "playback_samples.csv";
+    public static final Pattern TIME_PATTERN = Pattern.compile("\\d+(:\\d+)+");
+    public static final long STALL_TIMEOUT_MILLIS = 30000;
 
     /*function to convert time in string to sec*/
     public int computeTimeInSec(String time) {
@@ -57,8 +69,7 @@ public class UiAutomation extends BaseUiAutomation {
 @Test
 public void runUiAutomation() throws Exception {
         final int timeout = 5;
-        int currentTime = 0, timeAfter20Sec = 0, videoTime = 0;
-        long timeBeforeGetText = 0, timeAfterGetText = 0, timeForGetText = 0;
+        int videoTime = 0;
         Bundle status = new Bundle();
 
         initialize_instrumentation();
@@ -66,8 +77,8 @@ public void runUiAutomation() throws Exception {
         if (parameters.size() <= 0)
            return;
 
-        int tolerance = parameters.getInt("tolerance");
-        int samplingInterval = parameters.getInt("sampling_interval");
+        int samplePeriod = parameters.getInt("sample_period");
+        int stallThreshold = parameters.getInt("stall_threshold");
         String videoName = parameters.getString("video_name");
 
         UiObject search =mDevice.findObject(new UiSelector()
@@ -114,47 +125,132 @@ public void runUiAutomation() throws Exception {
         rewind.click();
 
         videoTime = computeTimeInSec(totalVideoTime.getText());
+        samplePlayback(videoTime, samplePeriod, stallThreshold);
 
-        /**
-         * Measure the video elapsed time between sampling intervals and
-         * compare it against the actual time elapsed minus tolerance.If the
-         * video elapsed time is less than the (actual time elapsed -
-         * tolerance), raise the message.
-         */
-        if (videoTime > samplingInterval) {
-           for (int i = 0; i < (videoTime / samplingInterval); i++) {
-              UiObject videoCurrentTime =mDevice.findObject(new UiSelector()
-                 .className("android.widget.TextView").index(0));
-
-              sleep(samplingInterval);
-
-              // Handle the time taken by the getText function
-              timeBeforeGetText = new Date().getTime() / 1000;
-              timeAfter20Sec = computeTimeInSec(videoCurrentTime.getText());
-              timeAfterGetText = new Date().getTime() / 1000;
-              timeForGetText = timeAfterGetText - timeBeforeGetText;
-
-              if (timeAfter20Sec == -1) {
-                 mDevice.pressHome();
-                 return;
-              }
-
-              if ((timeAfter20Sec - (currentTime + timeForGetText)) <
-                         (samplingInterval - tolerance)) {
-                 mDevice.pressHome();
-
-                 mInstrumentation.sendStatus(Activity.RESULT_CANCELED,
-                      status);
-                 return;
-              }
-              currentTime = timeAfter20Sec;
-
-         }
-       } else {
-            sleep(videoTime);
-       }
-       mDevice.pressBack();
-       mDevice.pressHome();
-       mInstrumentation.sendStatus(Activity.RESULT_OK, status);
+        mDevice.pressBack();
+        mDevice.pressHome();
+        mInstrumentation.sendStatus(Activity.RESULT_OK, status);
+    }
+
+    // The elapsed time label is the left-most time stamp on the player
+    // controls; the total video time is on the right.
+    public UiObject2 findElapsedTimeText() {
+        UiObject2 elapsed = null;
+        for (UiObject2 text : mDevice.findObjects(By.clazz("android.widget.TextView")
+                                                    .text(TIME_PATTERN))) {
+            if (elapsed == null
+                || text.getVisibleBounds().left < elapsed.getVisibleBounds().left) {
+                elapsed = text;
+            }
+        }
+        return elapsed;
+    }
+
+    /**
+     * Monitor playback by polling the elapsed time label every samplePeriod
+     * milliseconds until the end of the video is reached.
+     *
+     * The label is only resolved once and re-read in place, which keeps the
+     * cost of each sample low enough to poll at a high rate. As the label
+     * has a resolution of one second, each time it ticks over the playback
+     * lag (wall clock time elapsed minus video time elapsed since the first
+     * tick) is recorded. Any tick that arrives more than stallThreshold
+     * milliseconds late is counted as a stall. Playback continues through
+     * stalls; it is only abandoned if there is no progress at all for
+     * STALL_TIMEOUT_MILLIS.
+     */
+    public void samplePlayback(int videoTime, int samplePeriod, int stallThreshold) throws Exception {
+        UiObject2 elapsedText = findElapsedTimeText();
+        if (elapsedText == null) {
+            throw new UiObjectNotFoundException("Could not find elapsed video time.");
+        }
+
+        List<long[]> ticks = new ArrayList<long[]>();
+        int stallCount = 0;
+        long stallTotal = 0, stallMax = 0, lag = 0, lagMax = 0;
+
+        int firstPosition = -1, lastPosition = -1;
+        long firstTick = 0, lastTick = 0;
+        long lastChange = SystemClock.elapsedRealtime();
+
+        while (lastPosition < videoTime) {
+            SystemClock.sleep(samplePeriod);
+            long now = SystemClock.elapsedRealtime();
+
+            String text;
+            try {
+                text = elapsedText.getText();
+            } catch (StaleObjectException e) {
+                elapsedText = findElapsedTimeText();
+                if (elapsedText == null) {
+                    break;
+                }
+                continue;
+            }
+            int position = (text == null) ? -1 : computeTimeInSec(text);
+            if (position == -1) {
+                break;
+            }
+
+            if (position == lastPosition) {
+                if (now - lastChange > STALL_TIMEOUT_MILLIS) {
+                    // Playback has stopped altogether; account for the
+                    // stall in progress and give up.
+                    stallCount++;
+                    stallTotal += now - lastChange;
+                    stallMax = Math.max(stallMax, now - lastChange);
+                    break;
+                }
+                continue;
+            }
+            lastChange = now;
+
+            // Anchor to the first observed tick so that the lag is not
+            // skewed by starting part way through a second.
+            if (firstPosition == -1) {
+                if (lastPosition != -1) {
+                    firstPosition = position;
+                    firstTick = now;
+                    lastTick = now;
+                    ticks.add(new long[] {0, position, 0});
+                }
+                lastPosition = position;
+                continue;
+            }
+
+            long late = (now - lastTick) - (position - lastPosition) * 1000L;
+            if (late > stallThreshold) {
+                stallCount++;
+                stallTotal += late;
+                stallMax = Math.max(stallMax, late);
+            }
+
+            lag = (now - firstTick) - (position - firstPosition) * 1000L;
+            lagMax = Math.max(lagMax, lag);
+            ticks.add(new long[] {now - firstTick, position, lag});
+
+            lastPosition = position;
+            lastTick = now;
+        }
+
+        writePlaybackSamples(ticks);
+        reportResult("playback_lag", lag, "ms", true);
+        reportResult("playback_max_lag", lagMax, "ms", true);
+        reportResult("stall_count", stallCount, null, true);
+        reportResult("stall_total_duration", stallTotal, "ms", true);
+        reportResult("stall_max_duration", stallMax, "ms", true);
+    }
+
+    public void writePlaybackSamples(List<long[]> ticks) throws Exception {
+        File file = new File(getParams().getString("workdir"), PLAYBACK_SAMPLES_FILE);
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write("time_ms,position_s,lag_ms\n");
+            for (long[] tick : ticks) {
+                writer.write(String.format("%d,%d,%d\n", tick[0], tick[1], tick[2]));
+            }
+        } finally {
+            writer.close();
+        }
     }
 }
@@ -57,6 +57,24 @@ class Youtube(AndroidUxPerfWorkload):
     5.  Scroll down to the end of related videos and comments under the info card, and then
         back up to the start. A maximum of 5 swipe actions is performed in either direction.
 
+    Playback metrics:
+    In addition to the per-action timings, the following metrics are reported:
+
+    - ``video_start_latency``: time from selecting the video until the player's loading
+      spinner is dismissed, i.e. until the first frame is shown.
+    - ``advert_duration``: time spent on a pre-roll advert, from its appearance until the
+      actual video starts playing. Only reported if an advert was shown.
+    - ``buffering_count`` and ``buffering_duration``: number and total length of the
+      rebuffering events observed while the video was playing.
+    - ``pause_taps_requested_rate``, ``pause_taps_achieved_rate`` and
+      ``pause_taps_max_interval``: the rate of the taps that pause the video in step 3,
+      as requested and as achieved, and the longest interval between them.
+
+    When markers are enabled, the start latency, advert and each rebuffering event
+    (``buffering_1``, ``buffering_2``, ...) are also logged as separate actions, so with
+    the ``fps`` instrument and the ``uxperf`` result processor's ``add_frames`` option the
+    frame count and janks (dropped frames) of each of them are reported as well.
+
     Known working APK version: 11.19.56
     '''
 
@@ -29,6 +29,8 @@ import com.arm.wlauto.uiauto.UxPerfUiAutomation;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.concurrent.TimeUnit;
+
 import static com.arm.wlauto.uiauto.BaseUiAutomation.FindByCriteria.BY_DESC;
 import static com.arm.wlauto.uiauto.BaseUiAutomation.FindByCriteria.BY_ID;
 import static com.arm.wlauto.uiauto.BaseUiAutomation.FindByCriteria.BY_TEXT;
@@ -45,6 +47,11 @@ public class UiAutomation extends UxPerfUiAutomation implements ApplaunchInterfa
     public static final int WAIT_TIMEOUT_1SEC = 1000;
     public static final int VIDEO_SLEEP_SECONDS = 3;
     public static final int LIST_SWIPE_COUNT = 5;
+    public static final int VIDEO_START_TIMEOUT_SECONDS = 30;
+    public static final int BUFFERING_POLL_MILLIS = 100;
+
+    private int bufferingCount = 0;
+    private long bufferingMillis = 0;
 
 @Test
 public void runUiAutomation() throws Exception {
@@ -64,6 +71,9 @@ public void runUiAutomation() throws Exception {
         checkVideoInfo();
         scrollRelated();
 
+        reportResult("buffering_count", bufferingCount, null, true);
+        reportResult("buffering_duration", bufferingMillis, "ms", true);
+
         unsetScreenOrientation();
     }
 
@@ -149,6 +159,8 @@ public void runUiAutomation() throws Exception {
     public void testPlayVideo(String source, String searchTerm) throws Exception {
         String testTag = "play";
         ActionLogger logger = new ActionLogger(testTag + "_" + source, parameters);
+        // Spans from the tap on the thumbnail to the first frame being shown
+        ActionLogger startLogger = new ActionLogger("video_start", parameters);
 
         if (SOURCE_SEARCH.equalsIgnoreCase(source)) {
             clickUiObject(BY_DESC, "Search");
@@ -163,6 +175,7 @@ public void runUiAutomation() throws Exception {
                 thumbnail.getFromParent(new UiSelector().textContains(searchTerm));
 
             logger.start();
+            startLogger.start();
             if (matchedVideo.exists()) {
                 matchedVideo.clickAndWaitForNewWindow();
             } else {
@@ -175,6 +188,7 @@ public void runUiAutomation() throws Exception {
             clickUiObject(BY_TEXT, "My Videos", true);
 
             logger.start();
+            startLogger.start();
             clickUiObject(BY_ID, packageID + "thumbnail", true);
             logger.stop();
 
@@ -182,6 +196,7 @@ public void runUiAutomation() throws Exception {
             clickUiObject(BY_DESC, "Trending");
 
             logger.start();
+            startLogger.start();
             clickUiObject(BY_ID, packageID + "thumbnail", true);
             logger.stop();
 
@@ -193,22 +208,77 @@ public void runUiAutomation() throws Exception {
             }
 
             logger.start();
+            startLogger.start();
             clickUiObject(BY_ID, packageID + "thumbnail", true);
             logger.stop();
 
         }
+
+        waitForVideoStart();
+        startLogger.stop();
+        reportResult("video_start_latency", startLogger.getDurationMillis(), "ms", true);
+    }
+
+    // The spinner shown over the player while the video (or advert) is loading
+    public UiObject getBufferingIndicator() {
+        return mDevice.findObject(new UiSelector().resourceId(packageID + "player_fragment_container")
+                                                  .childSelector(new UiSelector()
+                                                  .className("android.widget.ProgressBar")));
+    }
+
+    public void waitForVideoStart() throws Exception {
+        // Fails if the player was never shown
+        getUiObjectByResourceId(packageID + "player_fragment_container");
+        if (!getBufferingIndicator().waitUntilGone(TimeUnit.SECONDS.toMillis(VIDEO_START_TIMEOUT_SECONDS))) {
+            throw new RuntimeException("Video did not start playing within "
+                                       + VIDEO_START_TIMEOUT_SECONDS + " seconds.");
+        }
+    }
+
+    // Let the video play for the given time. Each interval during which the
+    // buffering indicator is shown is recorded as a separate action so that
+    // its frame statistics can be attributed to it.
+    public void watchVideo(int seconds) throws Exception {
+        UiObject buffering = getBufferingIndicator();
+        ActionLogger logger = null;
+        long endTime = SystemClock.uptimeMillis() + TimeUnit.SECONDS.toMillis(seconds);
+
+        while (SystemClock.uptimeMillis() < endTime) {
+            boolean isBuffering = buffering.exists();
+            if (isBuffering && logger == null) {
+                bufferingCount++;
+                logger = new ActionLogger("buffering_" + bufferingCount, parameters);
+                logger.start();
+            } else if (!isBuffering && logger != null) {
+                logger.stop();
+                bufferingMillis += logger.getDurationMillis();
+                logger = null;
+            }
+            SystemClock.sleep(BUFFERING_POLL_MILLIS);
+        }
+
+        if (logger != null) {
+            logger.stop();
+            bufferingMillis += logger.getDurationMillis();
+        }
     }
 
     public void dismissAdvert() throws Exception {
         UiObject advert =
            mDevice.findObject(new UiSelector().textContains("Visit advertiser"));
         if (advert.exists()) {
+            ActionLogger logger = new ActionLogger("advert", parameters);
+            logger.start();
             UiObject skip =
                mDevice.findObject(new UiSelector().textContains("Skip ad"));
             if (skip.waitForExists(WAIT_TIMEOUT_1SEC*5)) {
                 skip.click();
-                sleep(VIDEO_SLEEP_SECONDS);
             }
+            // Unskippable adverts are left to play out
+            advert.waitUntilGone(TimeUnit.SECONDS.toMillis(VIDEO_START_TIMEOUT_SECONDS));
+            waitForVideoStart();
+            logger.stop();
+            reportResult("advert_duration", logger.getDurationMillis(), "ms", true);
         }
     }
 
@@ -224,11 +294,11 @@ public void runUiAutomation() throws Exception {
 
     public void pausePlayVideo() throws Exception {
         UiObject player = getUiObjectByResourceId(packageID + "player_fragment_container");
-        sleep(VIDEO_SLEEP_SECONDS);
-        repeatClickUiObject(player, 2, 100);
+        watchVideo(VIDEO_SLEEP_SECONDS);
+        repeatClickUiObject(player, 2, 100, "pause_taps");
         sleep(1); // pause the video momentarily
         player.click();
-        sleep(VIDEO_SLEEP_SECONDS);
+        watchVideo(VIDEO_SLEEP_SECONDS);
     }
 
     public void checkVideoInfo() throws Exception {